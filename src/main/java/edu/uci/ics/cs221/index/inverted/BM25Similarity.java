@@ -0,0 +1,83 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Okapi BM25: a term adds `idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * docLength / averageLength))` to the score,
+ * once per occurrence in the query, with `idf = ln(1 + (numDocuments - df + 0.5) / (df + 0.5))`.
+ * <p>
+ * k1 controls how fast term frequency saturates, b how much long documents are penalized.
+ * Document lengths come from segment norms, documents of segments without norms get the average length.
+ */
+public class BM25Similarity implements Similarity {
+
+    /**
+     * The default term frequency saturation.
+     */
+    public static double DEFAULT_K1 = 1.2;
+
+    /**
+     * The default length normalization.
+     */
+    public static double DEFAULT_B = 0.75;
+
+    private final double k1;
+    private final double b;
+
+    private static class BM25Scorer implements TermScorer {
+        // idf * (k1 + 1) times query frequency
+        private final double weight;
+        // Denominator is tf + constantNorm + lengthNorm * docLength
+        private final double constantNorm;
+        private final double lengthNorm;
+
+        private BM25Scorer(double weight, double constantNorm, double lengthNorm) {
+            this.weight = weight;
+            this.constantNorm = constantNorm;
+            this.lengthNorm = lengthNorm;
+        }
+
+        @Override
+        public double score(int freq, int docLength) {
+            return this.weight * freq / (freq + this.constantNorm + this.lengthNorm * docLength);
+        }
+
+        @Override
+        public double maxScore() {
+            // Score approaches weight as tf grows
+            return this.weight;
+        }
+    }
+
+    public BM25Similarity() {
+        this(DEFAULT_K1, DEFAULT_B);
+    }
+
+    public BM25Similarity(double k1, double b) {
+        Preconditions.checkArgument(k1 >= 0, "k1 must not be negative");
+        Preconditions.checkArgument(b >= 0 && b <= 1, "b must be between 0 and 1");
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    @Override
+    public TermScorer scorer(int queryFrequency, int documentFrequency, int numDocuments, double averageLength) {
+        double idf = Math.log(1 + (numDocuments - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        double weight = queryFrequency * idf * (this.k1 + 1);
+        // No length normalization if all documents are empty
+        if (averageLength <= 0) {
+            return new BM25Scorer(weight, this.k1, 0);
+        }
+        return new BM25Scorer(weight, this.k1 * (1 - this.b), this.k1 * this.b / averageLength);
+    }
+
+    @Override
+    public double combine(double scoreSum, double documentNorm) {
+        return scoreSum;
+    }
+
+    @Override
+    public double bound(double maxScoreSum) {
+        return maxScoreSum;
+    }
+}
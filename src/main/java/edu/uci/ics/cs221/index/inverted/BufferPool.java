@@ -0,0 +1,253 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Size-bounded cache of file pages in front of PageFileChannel.
+ * <p>
+ * Pages are keyed by (file, page num). A pinned page stays in the pool until it is unpinned,
+ * unpinned pages are evicted with the CLOCK algorithm.
+ * Every pin() must be paired with an unpin() of the returned page once the caller is done with its buffer.
+ * Large pools are split into stripes by page, each with its own lock and clock.
+ */
+public class BufferPool {
+
+    /**
+     * The default capacity of a buffer pool, in number of pages.
+     */
+    public static int DEFAULT_CAPACITY = 256;
+
+    private static class PageKey {
+        private final Path path;
+        private final int pageNum;
+
+        private PageKey(Path path, int pageNum) {
+            this.path = path;
+            this.pageNum = pageNum;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) {
+                return true;
+            }
+            if (!(object instanceof PageKey)) {
+                return false;
+            }
+            PageKey pageKey = (PageKey) object;
+            return this.pageNum == pageKey.pageNum && this.path.equals(pageKey.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.path, this.pageNum);
+        }
+    }
+
+    private static class Frame {
+        private PageKey key = null;
+        private ByteBuffer page = null;
+        private int pinCount = 0;
+        private boolean referenced = false;
+        // Bumped whenever the frame drops its page, so that pins of the page it held can't unpin another one
+        private int generation = 0;
+    }
+
+    /**
+     * Page got from pin(), given back to unpin() once the caller is done with its buffer
+     */
+    public static class Page {
+        // Private view positioned at 0, its content must not be modified
+        public final ByteBuffer buffer;
+        // Frame pinned for the page and its generation then, null if the page was read without caching
+        private final Stripe stripe;
+        private final Frame frame;
+        private final int generation;
+
+        /**
+         * Page read without caching, unpinning it does nothing
+         */
+        public Page(ByteBuffer buffer) {
+            this(buffer, null, null);
+        }
+
+        private Page(ByteBuffer buffer, Stripe stripe, Frame frame) {
+            this.buffer = buffer;
+            this.stripe = stripe;
+            this.frame = frame;
+            this.generation = frame == null ? 0 : frame.generation;
+        }
+
+        /**
+         * Whether the page is held by the pool until it is unpinned
+         */
+        public boolean isCached() {
+            return this.frame != null;
+        }
+    }
+
+    /**
+     * Part of the pool with its own frames and lock, so that threads pinning pages of different stripes don't wait
+     */
+    private static class Stripe {
+        private final Frame[] frames;
+        private final Map<PageKey, Frame> pageTable = new HashMap<>();
+        private int clockHand = 0;
+
+        private Stripe(int capacity) {
+            this.frames = new Frame[Math.max(capacity, 1)];
+            for (int i = 0; i < this.frames.length; i++) {
+                this.frames[i] = new Frame();
+            }
+        }
+
+        private synchronized Page pin(PageFileChannel channel, PageKey key) {
+            Frame frame = this.pageTable.get(key);
+            if (frame != null) {
+                PageFileChannel.countHit();
+            } else {
+                PageFileChannel.countMiss();
+                frame = this.findVictim();
+                // Every page is pinned, read without caching
+                if (frame == null) {
+                    return new Page(channel.readPage(key.pageNum));
+                }
+                if (frame.key != null) {
+                    this.pageTable.remove(frame.key);
+                    frame.generation++;
+                }
+                // Page size could be changed between tests
+                if (frame.page == null || frame.page.capacity() != PageFileChannel.PAGE_SIZE) {
+                    frame.page = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+                }
+                channel.readPage(key.pageNum, frame.page);
+                frame.key = key;
+                this.pageTable.put(key, frame);
+            }
+            frame.pinCount++;
+            frame.referenced = true;
+
+            ByteBuffer view = frame.page.duplicate();
+            view.clear();
+            return new Page(view, this, frame);
+        }
+
+        private synchronized void unpin(Frame frame, int generation) {
+            // Frame was invalidated since the pin, its pin count is no longer the page's
+            if (frame.generation == generation && frame.pinCount > 0) {
+                frame.pinCount--;
+            }
+        }
+
+        private synchronized void invalidate(Path normalizedPath) {
+            Iterator<Map.Entry<PageKey, Frame>> iterator = this.pageTable.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<PageKey, Frame> entry = iterator.next();
+                if (entry.getKey().path.equals(normalizedPath)) {
+                    Frame frame = entry.getValue();
+                    frame.key = null;
+                    frame.pinCount = 0;
+                    frame.referenced = false;
+                    frame.generation++;
+                    iterator.remove();
+                }
+            }
+        }
+
+        private synchronized int size() {
+            return this.pageTable.size();
+        }
+
+        /**
+         * CLOCK: sweep frames, clearing reference bits, until an unpinned frame without reference bit is found
+         *
+         * @return victim frame, null if every frame is pinned
+         */
+        private Frame findVictim() {
+            // Two full sweeps clear every reference bit
+            for (int i = 0; i < this.frames.length * 2; i++) {
+                Frame frame = this.frames[this.clockHand];
+                this.clockHand = (this.clockHand + 1) % this.frames.length;
+                if (frame.pinCount > 0) {
+                    continue;
+                }
+                if (frame.referenced) {
+                    frame.referenced = false;
+                    continue;
+                }
+                return frame;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Most stripes of a pool, and least pages of a stripe, so that small pools keep a single exact CLOCK
+     */
+    private static final int MAX_STRIPES = 16;
+    private static final int MIN_STRIPE_CAPACITY = 64;
+
+    private final Stripe[] stripes;
+
+    public BufferPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BufferPool(int capacity) {
+        int numStripes = Math.max(1, Math.min(MAX_STRIPES, capacity / MIN_STRIPE_CAPACITY));
+        this.stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            // Spread the remainder so that stripes add up to the capacity
+            this.stripes[i] = new Stripe(capacity / numStripes + (i < capacity % numStripes ? 1 : 0));
+        }
+    }
+
+    private Stripe getStripe(PageKey key) {
+        return this.stripes[Math.floorMod(key.hashCode(), this.stripes.length)];
+    }
+
+    /**
+     * Pin a page, reading it from the channel if it is not in the pool.
+     * If every frame is pinned the page is read without caching.
+     */
+    public Page pin(PageFileChannel channel, int pageNum) {
+        PageKey key = new PageKey(channel.getPath(), pageNum);
+        return this.getStripe(key).pin(channel, key);
+    }
+
+    /**
+     * Unpin a page so that it could be evicted.
+     * Unpinning a page that was read without caching, or whose file was invalidated since, does nothing.
+     */
+    public void unpin(Page page) {
+        if (page.frame != null) {
+            page.stripe.unpin(page.frame, page.generation);
+        }
+    }
+
+    /**
+     * Drop all pages of a file, used when the file is deleted or rewritten.
+     */
+    public void invalidate(Path path) {
+        Path normalizedPath = path.toAbsolutePath().normalize();
+        for (Stripe stripe : this.stripes) {
+            stripe.invalidate(normalizedPath);
+        }
+    }
+
+    /**
+     * Number of pages in the pool
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : this.stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,141 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs merges in background threads, so that flush returns as soon as its segment is committed.
+ * <p>
+ * At most maxConcurrentMerges merges run at a time, others wait in a queue.
+ * Once maxPendingMerges merges are running or waiting, flush blocks until one of them is done,
+ * so that indexing can't get arbitrarily far ahead of merging.
+ * <p>
+ * A merge that fails is rethrown by the next call to merge() or sync().
+ * <p>
+ * Once a merge is committed, the thread that ran it asks the index for further merges and runs them too, so that
+ * merges cascade without waiting for the next flush.
+ */
+public class ConcurrentMergeScheduler implements MergeScheduler {
+
+    /**
+     * The default number of merges running at the same time.
+     */
+    public static int DEFAULT_MAX_CONCURRENT_MERGES = 2;
+
+    /**
+     * The default number of merges running or waiting before flush blocks.
+     */
+    public static int DEFAULT_MAX_PENDING_MERGES = 4;
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+    // One permit per merge running or waiting
+    private final Semaphore pendingPermits;
+    private int numPendingMerges = 0;
+    // First failure of a merge, not yet rethrown
+    private Throwable failure = null;
+
+    public ConcurrentMergeScheduler() {
+        this(DEFAULT_MAX_CONCURRENT_MERGES, DEFAULT_MAX_PENDING_MERGES);
+    }
+
+    public ConcurrentMergeScheduler(int maxConcurrentMerges, int maxPendingMerges) {
+        Preconditions.checkArgument(maxConcurrentMerges > 0, "maxConcurrentMerges must be positive");
+        Preconditions.checkArgument(maxPendingMerges >= maxConcurrentMerges, "maxPendingMerges must be at least maxConcurrentMerges");
+        this.executor = new ThreadPoolExecutor(maxConcurrentMerges, maxConcurrentMerges, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "merge-thread-" + threadCounter.incrementAndGet());
+            // Merge threads never keep the process alive
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Idle threads stop, an index that is no longer used leaves no thread behind
+        this.executor.allowCoreThreadTimeOut(true);
+        this.pendingPermits = new Semaphore(maxPendingMerges);
+    }
+
+    @Override
+    public void merge(InvertedIndexManager manager) {
+        this.throwFailure();
+        for (List<SegmentInfo> segments : manager.findMerges()) {
+            // Back-pressure: wait for a running merge to be done
+            this.pendingPermits.acquireUninterruptibly();
+            synchronized (this) {
+                this.numPendingMerges++;
+            }
+            this.executor.execute(() -> {
+                try {
+                    manager.executeMerge(segments);
+                    // Run merges the new segment made possible in this thread: waiting here for a permit, while
+                    // queued merges hold the permits and wait for a thread, could deadlock
+                    for (List<List<SegmentInfo>> merges = manager.findMerges(); !merges.isEmpty(); merges = manager.findMerges()) {
+                        for (List<SegmentInfo> cascaded : merges) {
+                            manager.executeMerge(cascaded);
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (this) {
+                        if (this.failure == null) {
+                            this.failure = e;
+                        }
+                    }
+                } finally {
+                    synchronized (this) {
+                        this.numPendingMerges--;
+                        this.notifyAll();
+                    }
+                    this.pendingPermits.release();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void sync() {
+        synchronized (this) {
+            boolean interrupted = false;
+            while (this.numPendingMerges > 0) {
+                try {
+                    this.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.throwFailure();
+    }
+
+    /**
+     * Number of merges running or waiting
+     */
+    public synchronized int getNumPendingMerges() {
+        return this.numPendingMerges;
+    }
+
+    private void throwFailure() {
+        Throwable failure;
+        synchronized (this) {
+            failure = this.failure;
+            this.failure = null;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new IllegalStateException("merge failed", failure);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sparse in-memory index of a segment's words file.
+ * It keeps the first word of every words page. Since words are written in sorted order,
+ * looking up a word only needs a binary search here and a single words page read.
+ */
+public class DictionaryIndex {
+    private final List<String> firstWords;
+
+    public DictionaryIndex(List<String> firstWords) {
+        this.firstWords = new ArrayList<>(firstWords);
+    }
+
+    /**
+     * Find the only words page that could contain the given word
+     *
+     * @return page num, -1 if the word is smaller than every word in the segment
+     */
+    public int findPage(String word) {
+        int left = 0, right = this.firstWords.size() - 1;
+        int page = -1;
+        while (left <= right) {
+            int mid = (left + right) / 2;
+            if (this.firstWords.get(mid).compareTo(word) <= 0) {
+                // Candidate page, keep searching on the right side
+                page = mid;
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+
+        return page;
+    }
+
+    public int getNumPages() {
+        return this.firstWords.size();
+    }
+}
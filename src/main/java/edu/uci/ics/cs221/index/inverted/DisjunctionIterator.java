@@ -0,0 +1,71 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import java.util.List;
+
+/**
+ * Union of inverted lists in doc id order, each doc id once.
+ * <p>
+ * Iterators are kept in a min-heap by their current doc id, so that moving to the next doc id costs
+ * O(log k) per list on it, with k lists. Nothing is decoded ahead of the lists' own blocks.
+ */
+public class DisjunctionIterator {
+    private final PostingsIterator[] heap;
+    private int size = 0;
+    private int docId = -1;
+
+    public DisjunctionIterator(List<PostingsIterator> postings) {
+        this.heap = new PostingsIterator[postings.size()];
+        for (PostingsIterator postingsIterator : postings) {
+            if (postingsIterator.nextDoc() != PostingsIterator.NO_MORE_DOCS) {
+                this.heap[this.size++] = postingsIterator;
+            }
+        }
+        for (int i = this.size / 2 - 1; i >= 0; i--) {
+            this.siftDown(i);
+        }
+    }
+
+    /**
+     * Current doc id, -1 before the first nextDoc(), NO_MORE_DOCS once exhausted
+     */
+    public int docId() {
+        return this.docId;
+    }
+
+    /**
+     * Move to the next doc id in any of the lists
+     *
+     * @return the doc id, NO_MORE_DOCS if there is none
+     */
+    public int nextDoc() {
+        // Move lists on the current doc id past it
+        while (this.size > 0 && this.heap[0].docId() == this.docId) {
+            if (this.heap[0].nextDoc() == PostingsIterator.NO_MORE_DOCS) {
+                this.heap[0] = this.heap[--this.size];
+                this.heap[this.size] = null;
+            }
+            this.siftDown(0);
+        }
+        this.docId = this.size == 0 ? PostingsIterator.NO_MORE_DOCS : this.heap[0].docId();
+        return this.docId;
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= this.size) {
+                break;
+            }
+            if (child + 1 < this.size && this.heap[child + 1].docId() < this.heap[child].docId()) {
+                child++;
+            }
+            if (this.heap[index].docId() <= this.heap[child].docId()) {
+                break;
+            }
+            PostingsIterator swap = this.heap[index];
+            this.heap[index] = this.heap[child];
+            this.heap[child] = swap;
+            index = child;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import com.google.common.base.Preconditions;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Point-in-time view of the live segments of an index.
+ * <p>
+ * Queries acquire the current reader and release it once done.
+ * Flush and merge publish a new reader, the old one is closed after its last query releases it.
+ * A reader never changes once opened, so that any number of threads can query it without locking.
+ */
+public class IndexReader {
+    // Live segments, in manifest order
+    public List<SegmentReader> segments = null;
+    private Map<Integer, SegmentReader> segmentsById = new HashMap<>();
+    // Deleted documents of each segment when the reader was opened, by segment id
+    private Map<Integer, LiveDocs> liveDocsById = new HashMap<>();
+    // Documents in all segments, from segment metadata
+    private int numDocuments = 0;
+    // Tokens and documents of segments having norms
+    private long totalLength = 0;
+    private int numDocumentsWithNorms = 0;
+    // Held by the index manager while it is current, and by each running query
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    /**
+     * Takes over one reference of each segment reader
+     *
+     * @param liveDocs deleted documents of each segment at its current delete generation, by segment id
+     */
+    public IndexReader(List<SegmentReader> segments, Map<Integer, LiveDocs> liveDocs) {
+        this.segments = segments;
+        for (SegmentReader segment : segments) {
+            this.segmentsById.put(segment.info.id, segment);
+            this.liveDocsById.put(segment.info.id, liveDocs.get(segment.info.id));
+            this.numDocuments += segment.info.numDocuments;
+            if (segment.norms != null) {
+                this.totalLength += segment.norms.getTotalLength();
+                this.numDocumentsWithNorms += segment.norms.getNumDocuments();
+            }
+        }
+    }
+
+    /**
+     * Get segment reader by segment id, null if the segment is not in this reader
+     */
+    public SegmentReader getSegment(int segmentId) {
+        return this.segmentsById.get(segmentId);
+    }
+
+    /**
+     * Get deleted documents of a segment as seen by this reader
+     */
+    public LiveDocs getLiveDocs(int segmentId) {
+        return this.liveDocsById.get(segmentId);
+    }
+
+    /**
+     * Number of documents in all segments of this reader.
+     * Deleted documents count until they are merged away, like their postings count in document frequencies.
+     */
+    public int getNumDocuments() {
+        return this.numDocuments;
+    }
+
+    /**
+     * Average number of tokens of documents, over segments having norms. 0 if there are none.
+     */
+    public double getAverageLength() {
+        return this.numDocumentsWithNorms == 0 ? 0 : this.totalLength / (double) this.numDocumentsWithNorms;
+    }
+
+    /**
+     * Get document frequency of a term over all segments.
+     * It is not cached: each segment's frequency is in the dictionary entry of the term, whose page is in the buffer
+     * pool once the term was looked up.
+     *
+     * @param compute counts documents of a term in a segment
+     */
+    public int getDocumentFrequency(String term, ToIntBiFunction<SegmentReader, String> compute) {
+        int documentFrequency = 0;
+        for (SegmentReader segment : this.segments) {
+            documentFrequency += compute.applyAsInt(segment, term);
+        }
+        return documentFrequency;
+    }
+
+    public void incRef() {
+        Preconditions.checkState(this.tryIncRef(), "index reader is already closed");
+    }
+
+    /**
+     * Take a reference unless the reader is already closed
+     *
+     * @return false if it is closed
+     */
+    public boolean tryIncRef() {
+        while (true) {
+            int refCount = this.refCount.get();
+            if (refCount <= 0) {
+                return false;
+            }
+            if (this.refCount.compareAndSet(refCount, refCount + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void decRef() {
+        int refCount = this.refCount.decrementAndGet();
+        Preconditions.checkState(refCount >= 0, "index reader is already closed");
+        if (refCount == 0) {
+            for (SegmentReader segment : this.segments) {
+                segment.decRef();
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@ import edu.uci.ics.cs221.analysis.ComposableAnalyzer;
 import edu.uci.ics.cs221.analysis.NaiveAnalyzer;
 import edu.uci.ics.cs221.index.positional.Compressor;
 import edu.uci.ics.cs221.index.positional.DeltaVarLenCompressor;
+import edu.uci.ics.cs221.index.positional.IntList;
 import edu.uci.ics.cs221.index.positional.NaiveCompressor;
 import edu.uci.ics.cs221.index.positional.PositionalIndexSegmentForTest;
 import edu.uci.ics.cs221.storage.Document;
@@ -20,12 +21,21 @@ import javax.print.Doc;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiFunction;
+import java.util.function.IntSupplier;
+import java.util.function.ToIntBiFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -50,28 +60,33 @@ public class InvertedIndexManager {
      * In test cases, the default merge threshold could possibly be set to any number.
      */
     public static int DEFAULT_MERGE_THRESHOLD = 8;
+
+    /**
+     * Target false positive rate of the per-segment term filter, used to skip segments that miss a query term.
+     */
+    public static double DEFAULT_TERM_FILTER_FPP = 0.01;
+
+    /**
+     * A list with at least one document in this many of its segment is dense.
+     * Counting queries decode dense lists into bitmaps rather than walking them one doc id at a time.
+     */
+    public static int DENSE_LIST_RATIO = 8;
     // Native analyzer
     private Analyzer analyzer = null;
     // In-memory data structure for storing inverted index
-    private Map<String, List<Integer>> invertedLists = null;
+    private Map<String, IntList> invertedLists = null;
     // Base directory
     private Path basePath = null;
-    // Segment num
-    private int numSegments = 0;
+    // Live segments, persisted in the manifest. The segment list is replaced, never modified, on commit
+    private SegmentManifest manifest = null;
     // Local document store
     private DocumentStore documentStore = null;
     // Flush variables
     private ByteBuffer flushWordsBuffer = null;
     private ByteBuffer flushListsBuffer = null;
     private ByteBuffer flushPosBuffer = null;
-    // Merge variables
-    private ByteBuffer mergeWordsBuffer = null;
-    private ByteBuffer mergeListsBuffer = null;
-    private ByteBuffer mergePosBuffer = null;
     // In memory documents
     private Map<Integer, Document> documents = null;
-    // Deleted documents
-    private List<String> deletedWords = null;
     // Compressor
     private Compressor compressor = null;
     // Support
@@ -79,6 +94,51 @@ public class InvertedIndexManager {
     private Compressor naiveCompressor = new NaiveCompressor();
     // Counting
     private Map<Integer, Map<String, Integer>> tokenCounting = new HashMap<>();
+    // Positions of each token in each document, only kept for positional index
+    private Map<Integer, Map<String, IntList>> tokenPositions = new HashMap<>();
+    // Reusable buffers for encoding and decoding lists, one per thread since merges may run in background
+    private ThreadLocal<ByteBuffer> encodeBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocate(PageFileChannel.PAGE_SIZE));
+    private ThreadLocal<byte[]> decodeBytes = ThreadLocal.withInitial(() -> new byte[PageFileChannel.PAGE_SIZE]);
+    // Reusable ranking state, per thread since queries may run concurrently
+    private ThreadLocal<ScoreHeap> scoreHeap = ThreadLocal.withInitial(ScoreHeap::new);
+    private ThreadLocal<ScoreBuffers> scoreBuffers = ThreadLocal.withInitial(ScoreBuffers::new);
+    private IntList writeGlobalOffsets = new IntList();
+    private IntList writeSizeList = new IntList();
+    private IntList writePositionList = new IntList();
+    // Cached pages of segment files
+    private BufferPool bufferPool = new BufferPool();
+    // Sparse dictionary index of each segment, by segment id
+    private Map<Integer, DictionaryIndex> dictionaryIndexes = new ConcurrentHashMap<>();
+    // Read segment files through memory mapping instead of the buffer pool
+    private boolean memoryMapped = false;
+    // Mapped segment files, by path
+    private Map<Path, ByteBuffer> mappedFiles = new ConcurrentHashMap<>();
+    // Open files of live segments, by segment id
+    private Map<Integer, SegmentReader> segmentReaders = new HashMap<>();
+    // Deleted documents of live segments at their current delete generation, by segment id. Read when a reader first
+    // opens the segment, replaced by delete
+    private Map<Integer, LiveDocs> liveDocs = new HashMap<>();
+    // Reader over current live segments, opened by the first query after a flush or merge. Read without lock by queries
+    private volatile IndexReader indexReader = null;
+    // Number of queries that skipped a segment by its term filter, by segment id
+    private Map<Integer, Integer> segmentSkips = new ConcurrentHashMap<>();
+    // Chooses segments to merge after flush
+    private MergePolicy mergePolicy = new PairwiseMergePolicy();
+    // Runs merges chosen by the merge policy
+    private MergeScheduler mergeScheduler = new SerialMergeScheduler();
+    // Scoring model of ranked search
+    private volatile Similarity similarity = new TfIdfSimilarity();
+    // Ids of segments being merged by the merge scheduler
+    private Set<Integer> mergingSegments = new HashSet<>();
+    // Held while adding, flushing, deleting or merging by hand: the index has a single writer at a time, queries and
+    // background merges never take it
+    private final Object writeLock = new Object();
+    // Query results not yet exhausted or closed, each holding an index reader
+    private Set<ResultReference> openResults = ConcurrentHashMap.newKeySet();
+    // Gets results of openResults dropped by callers without being closed
+    private ReferenceQueue<ResultIterator> droppedResults = new ReferenceQueue<>();
+    // Runs per segment work of a query in parallel, null to run it in the calling thread
+    private volatile ForkJoinPool queryPool = null;
 
 
     private InvertedIndexManager(String indexFolder, Analyzer analyzer) {
@@ -86,17 +146,20 @@ public class InvertedIndexManager {
         this.basePath = Paths.get(indexFolder);
         this.invertedLists = new HashMap<>();
         this.documents = new HashMap<>();
-        this.deletedWords = new ArrayList<>();
+        // Load live segments, an index without manifest is empty
+        this.manifest = SegmentManifest.read(this.basePath);
+        if (this.manifest == null) {
+            // Segments of an index written before manifests existed would be overwritten by the first flush
+            if (SegmentManifest.hasSegmentFiles(this.basePath)) {
+                throw new IllegalStateException(this.basePath + " has segment files but no manifest, it was written by an older version");
+            }
+            this.manifest = new SegmentManifest();
+        }
         // Flush variables init
         this.flushListsBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
         this.flushWordsBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
         this.flushPosBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
         this.flushWordsBuffer.putInt(0);
-        // Merge variables init
-        this.mergeListsBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
-        this.mergeWordsBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
-        this.mergePosBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
-        this.mergeWordsBuffer.putInt(0);
     }
 
     /**
@@ -140,17 +203,221 @@ public class InvertedIndexManager {
     }
 
     /**
-     * Get segment channel by given keyword
+     * Read segment files through memory mapping.
+     * Lists and positions are then decoded in place, without copying pages or counting page reads.
      */
-    private PageFileChannel getSegmentChannel(int segmentNum, String keyword) {
-        return PageFileChannel.createOrOpen(basePath.resolve("segment" + segmentNum + "_" + keyword));
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+        if (!memoryMapped) {
+            this.mappedFiles.clear();
+        }
+    }
+
+    /**
+     * Get segment channel by given segment id and keyword
+     */
+    private PageFileChannel getSegmentChannel(int segmentId, String keyword) {
+        return PageFileChannel.createOrOpen(basePath.resolve("segment" + segmentId + "_" + keyword));
     }
 
     /**
      * Get Document Store instance
      */
-    private DocumentStore getDocumentStore(int segmentNum, String suffix) {
-        return MapdbDocStore.createOrOpen(this.basePath.resolve("store" + segmentNum + "_" + suffix).toString());
+    private DocumentStore getDocumentStore(int segmentId, String suffix) {
+        return MapdbDocStore.createOrOpen(this.basePath.resolve("store" + segmentId + "_" + suffix).toString());
+    }
+
+    /**
+     * Get document store of a committed segment for reading
+     */
+    private DocumentStore getReadOnlyDocumentStore(int segmentId) {
+        return MapdbDocStore.createOrOpenReadOnly(this.basePath.resolve("store" + segmentId + "_").toString());
+    }
+
+    /**
+     * Get reader over current live segments, it must be released by decRef() once the query is done
+     */
+    private IndexReader acquireReader() {
+        // The published reader needs no lock, unless it was closed by a publish meanwhile
+        IndexReader reader = this.indexReader;
+        if (reader != null && reader.tryIncRef()) {
+            return reader;
+        }
+        return this.openReader();
+    }
+
+    /**
+     * Get reader over current live segments, opening one if live segments changed since the last one
+     */
+    private synchronized IndexReader openReader() {
+        if (this.indexReader == null) {
+            List<SegmentReader> segments = new ArrayList<>();
+            for (SegmentInfo segmentInfo : this.manifest.segments) {
+                // Segments still live since last reader are not opened again
+                SegmentReader segmentReader = this.segmentReaders.get(segmentInfo.id);
+                if (segmentReader == null) {
+                    segmentReader = new SegmentReader(this.basePath, segmentInfo, this.supportPosition);
+                    this.segmentReaders.put(segmentInfo.id, segmentReader);
+                }
+                if (!this.liveDocs.containsKey(segmentInfo.id)) {
+                    this.liveDocs.put(segmentInfo.id, LiveDocs.read(this.basePath, segmentInfo));
+                }
+                segmentReader.incRef();
+                segments.add(segmentReader);
+            }
+            this.indexReader = new IndexReader(segments, this.liveDocs);
+        }
+        this.indexReader.incRef();
+        return this.indexReader;
+    }
+
+    /**
+     * Open a lazy result over current live segments
+     *
+     * @param matcherFactory gives doc ids matched in a segment, null if the segment surely has no match
+     */
+    private ResultIterator openResult(ResultIterator.MatcherFactory matcherFactory) {
+        this.releaseDroppedResults();
+        ResultIterator result = new ResultIterator(this.acquireReader(), matcherFactory);
+        ResultReference reference = new ResultReference(result, this.droppedResults);
+        this.openResults.add(reference);
+        result.onRelease(() -> this.openResults.remove(reference));
+        if (this.queryPool != null) {
+            result.prefetch(this.queryPool);
+        }
+        return result;
+    }
+
+    /**
+     * Open result, weakly referenced so that a result dropped by the caller without being closed doesn't keep its
+     * reader until the index is closed
+     */
+    private static class ResultReference extends WeakReference<ResultIterator> {
+        private final ResultIterator.ReaderRelease readerRelease;
+
+        private ResultReference(ResultIterator result, ReferenceQueue<ResultIterator> queue) {
+            super(result, queue);
+            this.readerRelease = result.getReaderRelease();
+        }
+    }
+
+    /**
+     * Release readers of results that became unreachable before being exhausted or closed
+     */
+    private void releaseDroppedResults() {
+        for (Reference<? extends ResultIterator> reference = this.droppedResults.poll(); reference != null; reference = this.droppedResults.poll()) {
+            ((ResultReference) reference).readerRelease.run();
+        }
+    }
+
+    /**
+     * Drop current reader after live segments changed, next query opens a new one
+     */
+    private synchronized void publishSegments() {
+        // Unpublish before releasing, so that queries from now on can't take the old reader
+        IndexReader reader = this.indexReader;
+        this.indexReader = null;
+        if (reader != null) {
+            reader.decRef();
+        }
+    }
+
+    /**
+     * Delete files of a segment that is no longer live, once no reader uses it
+     */
+    private synchronized void dropSegment(int segmentId) {
+        SegmentReader segmentReader = this.segmentReaders.remove(segmentId);
+        this.liveDocs.remove(segmentId);
+        if (segmentReader == null) {
+            this.deleteSegmentFiles(segmentId);
+            return;
+        }
+        segmentReader.deleteOnClose(() -> this.deleteSegmentFiles(segmentId));
+        segmentReader.decRef();
+    }
+
+    /**
+     * Waits for running merges, closes results not read to the end, then closes all open segment files.
+     * Queries after close reopen them.
+     */
+    public void close() {
+        synchronized (this.writeLock) {
+            this.mergeScheduler.sync();
+            for (ResultReference reference : this.openResults) {
+                ResultIterator result = reference.get();
+                if (result != null) {
+                    result.close();
+                } else {
+                    reference.readerRelease.run();
+                }
+            }
+            this.releaseDroppedResults();
+            synchronized (this) {
+                this.publishSegments();
+                for (SegmentReader segmentReader : this.segmentReaders.values()) {
+                    segmentReader.decRef();
+                }
+                this.segmentReaders.clear();
+                this.liveDocs.clear();
+            }
+        }
+    }
+
+    /**
+     * Get id of the n-th live segment
+     */
+    private int getSegmentId(int segmentNum) {
+        return this.manifest.segments.get(segmentNum).id;
+    }
+
+    /**
+     * Delete all files of a segment
+     */
+    private void deleteSegmentFiles(int segmentId) {
+        for (String keyword : Arrays.asList("words", "lists", "positions")) {
+            (new File(this.basePath.resolve("segment" + segmentId + "_" + keyword).toString())).delete();
+        }
+        (new File(this.basePath.resolve("store" + segmentId + "_").toString())).delete();
+        (new File(SegmentMeta.getPath(this.basePath, segmentId).toString())).delete();
+        (new File(Norms.getPath(this.basePath, segmentId).toString())).delete();
+        File[] deletesFiles = this.basePath.toFile().listFiles(file -> LiveDocs.isPathOf(file.toPath(), segmentId));
+        if (deletesFiles != null) {
+            for (File file : deletesFiles) {
+                file.delete();
+            }
+        }
+        for (String keyword : Arrays.asList("words", "lists", "positions")) {
+            Path path = this.basePath.resolve("segment" + segmentId + "_" + keyword);
+            this.bufferPool.invalidate(path);
+            this.mappedFiles.remove(path.toAbsolutePath().normalize());
+        }
+        this.dictionaryIndexes.remove(segmentId);
+        this.segmentSkips.remove(segmentId);
+    }
+
+    /**
+     * Check the term filter of a segment before reading its dictionary.
+     * A segment that surely misses one of the terms is counted as skipped.
+     *
+     * @return true if the segment could contain all terms
+     */
+    private boolean mightContainAll(SegmentReader segment, Collection<String> terms) {
+        for (String term : terms) {
+            if (!segment.meta.mightContain(term)) {
+                this.segmentSkips.merge(segment.info.id, 1, Integer::sum);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Record file sizes of a written segment
+     */
+    private void updateFileSizes(SegmentInfo segmentInfo) {
+        segmentInfo.wordsFileSize = this.basePath.resolve("segment" + segmentInfo.id + "_words").toFile().length();
+        segmentInfo.listsFileSize = this.basePath.resolve("segment" + segmentInfo.id + "_lists").toFile().length();
+        segmentInfo.positionsFileSize = this.basePath.resolve("segment" + segmentInfo.id + "_positions").toFile().length();
     }
 
     /**
@@ -160,33 +427,40 @@ public class InvertedIndexManager {
      * @param document
      */
     public void addDocument(Document document) {
-        // Get new document ID
-        int newDocId = this.documents.size();
-        // Add new document to store
-        this.documents.put(newDocId, document);
-
-        // Use Analyzer to extract words from a document
-        List<String> words = this.analyzer.analyze(document.getText());
-        // Count words
-        this.countTokens(newDocId, words);
-        // Transfer to set
-        Set<String> wordsSet = new HashSet<>(words);
-        for (String word : wordsSet) {
-            // Get documents that contain that word and store its ID
-            List<Integer> documentIds = this.invertedLists.get(word);
-            if (documentIds == null) {
-                // Create a new list
-                this.invertedLists.put(word, new ArrayList<>(Collections.singletonList(newDocId)));
-            } else {
-                // Add to exist list
-                if (!documentIds.contains(newDocId))
+        synchronized (this.writeLock) {
+            // Get new document ID
+            int newDocId = this.documents.size();
+            // Add new document to store
+            this.documents.put(newDocId, document);
+
+            // Use Analyzer to extract words from a document
+            List<String> words = this.analyzer.analyze(document.getText());
+            // Count words
+            this.countTokens(newDocId, words);
+            // Record positions
+            if (this.supportPosition) {
+                this.recordPositions(newDocId, words);
+            }
+            // Transfer to set
+            Set<String> wordsSet = new HashSet<>(words);
+            for (String word : wordsSet) {
+                // Get documents that contain that word and store its ID
+                IntList documentIds = this.invertedLists.get(word);
+                if (documentIds == null) {
+                    // Create a new list
+                    documentIds = new IntList(2);
+                    this.invertedLists.put(word, documentIds);
+                }
+                // Add to list, document IDs are increasing so only the last one could be the same
+                if (documentIds.isEmpty() || documentIds.get(documentIds.size() - 1) != newDocId) {
                     documentIds.add(newDocId);
+                }
             }
-        }
 
-        // Auto flush
-        if (newDocId + 1 >= DEFAULT_FLUSH_THRESHOLD) {
-            this.flush();
+            // Auto flush
+            if (newDocId + 1 >= DEFAULT_FLUSH_THRESHOLD) {
+                this.flush();
+            }
         }
     }
 
@@ -208,6 +482,24 @@ public class InvertedIndexManager {
         this.tokenCounting.put(docId, counting);
     }
 
+    /**
+     * Record positions of tokens for a given document
+     */
+    private void recordPositions(Integer docId, List<String> tokens) {
+        Map<String, IntList> positions = new HashMap<>();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            // Empty token has no position
+            if (token.equals("")) {
+                continue;
+            }
+            positions.computeIfAbsent(token, k -> new IntList(2)).add(i);
+        }
+
+        this.tokenPositions.put(docId, positions);
+    }
+
     private boolean isFlushValid() {
         return this.invertedLists.size() != 0 || this.documents.size() != 0;
     }
@@ -215,9 +507,9 @@ public class InvertedIndexManager {
     /**
      * Flush documents from memory to disk
      */
-    private void flushDocuments() {
+    private void flushDocuments(int segmentId) {
         // Add documents from memory to disk
-        this.documentStore = this.getDocumentStore(this.numSegments, "");
+        this.documentStore = this.getDocumentStore(segmentId, "");
         for (int id = 0; id < this.documents.size(); id++) {
             this.documentStore.addDocument(id, this.documents.get(id));
         }
@@ -228,28 +520,57 @@ public class InvertedIndexManager {
      * flush() writes the segment to disk containing the posting list and the corresponding document store.
      */
     public void flush() {
+        synchronized (this.writeLock) {
+            this.writeSegment();
+        }
+    }
+
+    /**
+     * Write buffered documents as a new segment, called by the writer holding the write lock
+     */
+    private void writeSegment() {
         // Check if it is empty memory
         if (!this.isFlushValid()) {
             return;
         }
 
-        this.flushDocuments();
+        // New segment never reuses a live segment's files, clean up leftovers of an unfinished write
+        int segmentId = this.allocateSegmentId();
+        this.deleteSegmentFiles(segmentId);
+        SegmentInfo segmentInfo = new SegmentInfo(segmentId, this.documents.size(), this.invertedLists.size());
+
+        this.flushDocuments(segmentId);
 
-        PageFileChannel listsChannel = this.getSegmentChannel(this.numSegments, "lists");
-        PageFileChannel wordsChannel = this.getSegmentChannel(this.numSegments, "words");
-        PageFileChannel posChannel = this.supportPosition ? this.getSegmentChannel(this.numSegments, "positions") : null;
+        PageFileChannel listsChannel = this.getSegmentChannel(segmentId, "lists");
+        PageFileChannel wordsChannel = this.getSegmentChannel(segmentId, "words");
+        PageFileChannel posChannel = this.supportPosition ? this.getSegmentChannel(segmentId, "positions") : null;
         WriteMeta meta = new WriteMeta();
 
-        for (String word : this.invertedLists.keySet()) {
+        // Norms: number of tokens of each document, and sum of squared frequencies of its words
+        int[] lengths = new int[this.documents.size()];
+        int[] squaredNorms = new int[this.documents.size()];
+        for (int id = 0; id < this.documents.size(); id++) {
+            for (Map.Entry<String, Integer> count : this.tokenCounting.get(id).entrySet()) {
+                if (!count.getKey().equals("")) {
+                    lengths[id] += count.getValue();
+                    squaredNorms[id] += count.getValue() * count.getValue();
+                }
+            }
+        }
+
+        // Write words in sorted order so that they can be binary searched
+        List<String> sortedWords = new ArrayList<>(this.invertedLists.keySet());
+        Collections.sort(sortedWords);
+        for (String word : sortedWords) {
             // Get document IDs by given word
-            List<Integer> documentIds = this.invertedLists.get(word);
+            IntList documentIds = this.invertedLists.get(word);
 
             // Check words segment capacity
             WordBlock wordBlock = new WordBlock(
                     word.getBytes().length, // Word length
                     word,                   // Word
                     meta.listsPageNum,           // Lists page num
-                    meta.listsPageOffset, // List offset
+                    this.flushListsBuffer.position(), // List offset
                     documentIds.size(),      // List length
                     meta.listsPageNum * PageFileChannel.PAGE_SIZE + this.flushListsBuffer.position(),
                     0
@@ -257,7 +578,6 @@ public class InvertedIndexManager {
 
             // Flush word and list
             this.flushWordAndList(
-                    this.documentStore,
                     listsChannel, wordsChannel, posChannel,
                     this.flushListsBuffer, this.flushWordsBuffer, this.flushPosBuffer,
                     documentIds, wordBlock,
@@ -283,18 +603,42 @@ public class InvertedIndexManager {
         this.invertedLists.clear();
         this.documents.clear();
         this.tokenCounting.clear();
+        this.tokenPositions.clear();
 
         // Close document store
         this.documentStore.close();
         this.documentStore = null;
 
-        // Increment segment number
-        this.numSegments += 1;
+        // Keep dictionary index of the new segment in memory
+        this.dictionaryIndexes.put(segmentId, new DictionaryIndex(meta.firstWords));
+        SegmentMeta.create(sortedWords, DEFAULT_TERM_FILTER_FPP).write(this.basePath, segmentId);
+        new Norms(lengths, squaredNorms).write(this.basePath, segmentId);
 
-        // Check if it needs to merge
-        if (this.getNumSegments() >= DEFAULT_MERGE_THRESHOLD) {
-            this.mergeAllSegments();
-        }
+        // Commit the new segment once its files are on disk
+        this.updateFileSizes(segmentInfo);
+        SegmentManifest.syncSegmentFiles(this.basePath, segmentId);
+        this.commitFlush(segmentInfo);
+
+        // Let the merge scheduler run merges chosen by the merge policy
+        this.mergeScheduler.merge(this);
+    }
+
+    /**
+     * Add a flushed segment to the end of live segments
+     */
+    private synchronized void commitFlush(SegmentInfo segmentInfo) {
+        List<SegmentInfo> newSegments = new ArrayList<>(this.manifest.segments);
+        newSegments.add(segmentInfo);
+        this.manifest.segments = newSegments;
+        this.manifest.write(this.basePath);
+        this.publishSegments();
+    }
+
+    /**
+     * Get an unused segment id
+     */
+    private synchronized int allocateSegmentId() {
+        return this.manifest.nextSegmentId++;
     }
 
     /**
@@ -309,392 +653,764 @@ public class InvertedIndexManager {
         this.flushWordsBuffer.putInt(0);
     }
 
-    /**
-     * Reset buffers before merge
-     */
-    private void resetMergeBuffers() {
-        // Reset buffers
-        this.mergeListsBuffer.clear();
-        this.mergeWordsBuffer.clear();
-        this.mergePosBuffer.clear();
-        // Initialize words page num
-        this.mergeWordsBuffer.putInt(0);
-    }
-
     /**
      * Merges all the disk segments of the inverted index pair-wise.
+     * Merges running in background are waited for first, merging takes the write lock like flush().
      */
     public void mergeAllSegments() {
-        // New segment page num
-        WriteMeta meta = new WriteMeta();
+        synchronized (this.writeLock) {
+            // No flush can start a merge until all segments are registered
+            this.mergeScheduler.sync();
 
-        // Merge all segments
-        for (int leftIndex = 0, rightIndex = 1; rightIndex < this.getNumSegments(); leftIndex += 2, rightIndex += 2) {
-            int newIndex = leftIndex / 2;
-            // New segment channels
-            PageFileChannel newSegWordsChannel = this.getSegmentChannel(newIndex, "words_new");
-            PageFileChannel newSegListsChannel = this.getSegmentChannel(newIndex, "lists_new");
-            PageFileChannel newSegPosChannel = this.supportPosition ? this.getSegmentChannel(newIndex, "positions_new") : null;
-            // Original channels
-            PageFileChannel leftSegWordsChannel = this.getSegmentChannel(leftIndex, "words");
-            PageFileChannel leftSegListsChannel = this.getSegmentChannel(leftIndex, "lists");
-            PageFileChannel leftSegPosChannel = this.supportPosition ? this.getSegmentChannel(leftIndex, "positions") : null;
-            PageFileChannel rightSegWordsChannel = this.getSegmentChannel(rightIndex, "words");
-            PageFileChannel rightSegListsChannel = this.getSegmentChannel(rightIndex, "lists");
-            PageFileChannel rightSegPosChannel = this.supportPosition ? this.getSegmentChannel(rightIndex, "positions") : null;
-            // Document store
-            DocumentStore leftDocStore = this.getDocumentStore(leftIndex, "");
-            DocumentStore rightDocStore = this.getDocumentStore(rightIndex, "");
-            DocumentStore newDocStore = this.getDocumentStore(newIndex, "new");
-
-            // Get word blocks from left and right segment
-            List<WordBlock> leftWordBlocks = this.getWordBlocksFromSegment(leftSegWordsChannel, leftIndex);
-            List<WordBlock> rightWordBlocks = this.getWordBlocksFromSegment(rightSegWordsChannel, rightIndex);
-
-            // Merge word blocks
-            List<MergedWordBlock> mergedWordBlocks = Utils.mergeWordBlocks(leftWordBlocks, rightWordBlocks, this.deletedWords);
-
-            // Document store
-            int baseDocSize = this.mergeDocStores(leftDocStore, rightDocStore, newDocStore);
-
-            for (MergedWordBlock mergedWordBlock : mergedWordBlocks) {
-                WordBlock leftWordBlock = mergedWordBlock.leftWordBlock;
-                WordBlock rightWordBlock = mergedWordBlock.rightWordBlock;
-                ListBlock leftListBlock = this.getListBlockFromSegment(
-                        leftSegListsChannel,
-                        leftWordBlock
-                );
-                ListBlock rightListBlock = this.getListBlockFromSegment(
-                        rightSegListsChannel,
-                        rightWordBlock
-                );
-                Utils.increaseDocId(baseDocSize, rightListBlock.invertedList);
-
-                // Compute merge flag
-                int flag = this.computeMergeFlag(mergedWordBlock, leftWordBlock);
-
-                // Start to merge
-                this.mergeWordAndList(newSegListsChannel, newSegWordsChannel, newSegPosChannel,
-                        leftSegPosChannel, rightSegPosChannel,
-                        this.mergeListsBuffer, this.mergeWordsBuffer, this.mergePosBuffer,
-                        leftListBlock, rightListBlock,
-                        flag == 1 ? rightWordBlock : leftWordBlock, meta, flag);
-            }
-
-            // Write remaining content from buffer
-            this.mergeWordsBuffer.putInt(0, this.mergeWordsBuffer.position());
-            newSegWordsChannel.writePage(meta.wordsPageNum, this.mergeWordsBuffer);
-            newSegListsChannel.writePage(meta.listsPageNum, this.mergeListsBuffer);
-            if (newSegPosChannel != null) {
-                newSegPosChannel.writePage(meta.posPageNum, this.mergePosBuffer);
-            }
-
-            // Close channels
-            newSegListsChannel.close();
-            newSegWordsChannel.close();
-            if (newSegPosChannel != null) {
-                newSegPosChannel.close();
-            }
-            leftSegListsChannel.close();
-            leftSegWordsChannel.close();
-            if (leftSegPosChannel != null) {
-                leftSegPosChannel.close();
-            }
-            rightSegListsChannel.close();
-            rightSegWordsChannel.close();
-            if (rightSegPosChannel != null) {
-                rightSegPosChannel.close();
-            }
-            // Close document stores
-            leftDocStore.close();
-            rightDocStore.close();
-            newDocStore.close();
-
-            // Delete origin files
-            (new File(this.basePath.resolve("segment" + leftIndex + "_words").toString())).delete();
-            (new File(this.basePath.resolve("segment" + leftIndex + "_lists").toString())).delete();
-            (new File(this.basePath.resolve("segment" + rightIndex + "_words").toString())).delete();
-            (new File(this.basePath.resolve("segment" + rightIndex + "_lists").toString())).delete();
-            if (this.supportPosition) {
-                (new File(this.basePath.resolve("segment" + leftIndex + "_positions").toString())).delete();
-                (new File(this.basePath.resolve("segment" + rightIndex + "_positions").toString())).delete();
-            }
-            // Delete origin document store files
-            (new File(this.basePath.resolve("store" + leftIndex + "_").toString())).delete();
-            (new File(this.basePath.resolve("store" + rightIndex + "_").toString())).delete();
-            // Rename current 2 segments
-            Utils.renameSegment(this.basePath, newIndex, "words_new", "words");
-            Utils.renameSegment(this.basePath, newIndex, "lists_new", "lists");
-            if (this.supportPosition) {
-                Utils.renameSegment(this.basePath, newIndex, "positions_new", "positions");
+            List<List<SegmentInfo>> merges;
+            synchronized (this) {
+                merges = this.registerMerges(PairwiseMergePolicy.pairUp(this.manifest.segments));
+            }
+            for (List<SegmentInfo> segments : merges) {
+                this.executeMerge(segments);
             }
-            Utils.renameStore(this.basePath, newIndex, "new", "");
-
-            // Reset buffers
-            this.resetMergeBuffers();
         }
-
-        this.deletedWords.clear();
-
-        this.numSegments = this.numSegments / 2;
     }
 
     /**
-     * Compute merge flag
-     * 0: only left side
-     * 1: only right side
-     * 2: both sides
+     * Merges segments until there are at most maxNumSegments of them, as chosen by the merge policy.
+     * Used to turn an index that is no longer written into fewer, larger segments that are faster to query.
+     * Merges running in background are waited for first, merging takes the write lock like flush().
      */
-    private int computeMergeFlag(MergedWordBlock mergedWordBlock, WordBlock leftWordBlock) {
-        if (mergedWordBlock.isSingle) {
-            if (leftWordBlock != null) {
-                return 0;
-            } else {
-                return 1;
+    public void forceMerge(int maxNumSegments) {
+        Preconditions.checkArgument(maxNumSegments > 0, "maxNumSegments must be positive");
+        synchronized (this.writeLock) {
+            this.mergeScheduler.sync();
+
+            while (true) {
+                List<List<SegmentInfo>> merges;
+                synchronized (this) {
+                    merges = this.registerMerges(this.mergePolicy.findForcedMerges(this.manifest.segments, maxNumSegments));
+                }
+                if (merges.isEmpty()) {
+                    break;
+                }
+                for (List<SegmentInfo> segments : merges) {
+                    this.executeMerge(segments);
+                }
             }
-        } else {
-            return 2;
         }
     }
 
     /**
-     * Merge: word block and list block
+     * Set the scoring model of ranked search, TF-IDF by default
      */
-    private void mergeWordAndList(PageFileChannel listsChannel, PageFileChannel wordsChannel, PageFileChannel posChannel,
-                                  PageFileChannel leftPosChannel, PageFileChannel rightPosChannel,
-                                  ByteBuffer listsBuffer, ByteBuffer wordsBuffer, ByteBuffer posBuffer,
-                                  ListBlock leftListBlock, ListBlock rightListBlock,
-                                  WordBlock wordBlock, WriteMeta meta, int flag) {
-        // Update word block
-        wordBlock.listsPageNum = meta.listsPageNum;
-        wordBlock.listOffset = listsBuffer.position();
-
-        // Global offsets
-        // Start to extract position lists and merge them
-        List<Integer> globalOffsets = this.mergePositionList(posChannel, posBuffer,
-                leftPosChannel, rightPosChannel,
-                leftListBlock, rightListBlock,
-                meta, flag);
-
-        // Encode invertedList
-        List<Integer> invertedList = null;
-        List<Integer> sizeList = null;
-        switch (flag) {
-            // Only left side
-            case 0:
-                invertedList = leftListBlock.invertedList;
-                sizeList = leftListBlock.sizeList;
-                break;
-            case 1:
-                invertedList = rightListBlock.invertedList;
-                sizeList = rightListBlock.sizeList;
-                break;
-            case 2:
-                invertedList = new ArrayList<>();
-                invertedList.addAll(leftListBlock.invertedList);
-                invertedList.addAll(rightListBlock.invertedList);
-                sizeList = new ArrayList<>();
-                sizeList.addAll(leftListBlock.sizeList);
-                sizeList.addAll(rightListBlock.sizeList);
-                break;
-        }
-        byte[] encodedInvertedList = this.compressor.encode(invertedList);
-        // Encode global offset
-        byte[] encodedGlobalOffsets = this.compressor.encode(globalOffsets);
-        // Encode size list
-        byte[] encodedSizeList = this.naiveCompressor.encode(sizeList);
-
-        // Markdown lengths
-        wordBlock.listLength = encodedInvertedList.length;
-        wordBlock.globalOffsetLength = encodedGlobalOffsets.length;
-        wordBlock.sizeLength = encodedSizeList.length;
+    public void setSimilarity(Similarity similarity) {
+        this.similarity = Preconditions.checkNotNull(similarity);
+    }
 
-        // Flush list block
-        this.flushListBlock(listsChannel, listsBuffer, encodedInvertedList, encodedGlobalOffsets, encodedSizeList, meta);
+    /**
+     * Run the per segment work of queries in parallel on a pool, null (the default) to run it in the calling thread.
+     * Results are merged in segment order, so they don't depend on scheduling. Boolean and phrase results
+     * then match all segments up front, keeping doc ids of matches in memory; documents are still read lazily.
+     */
+    public void setQueryPool(ForkJoinPool queryPool) {
+        this.queryPool = queryPool;
+    }
 
-        // Flush word block
-        this.flushWordBlock(wordsChannel, wordsBuffer, wordBlock, meta);
+    /**
+     * Set the policy choosing segments to merge after flush
+     */
+    public void setMergePolicy(MergePolicy mergePolicy) {
+        this.mergePolicy = Preconditions.checkNotNull(mergePolicy);
     }
 
     /**
-     * Merge: flush position list
+     * Set the scheduler running merges after flush, merges of the former scheduler are waited for first.
+     * Takes the write lock, so that no flush hands merges to the former scheduler meanwhile.
      */
-    private List<Integer> mergePositionList(PageFileChannel posChannel, ByteBuffer posBuffer,
-                                            PageFileChannel leftPosChannel, PageFileChannel rightPosChannel,
-                                            ListBlock leftListBlock, ListBlock rightListBlock,
-                                            WriteMeta meta, int flag) {
-        // Merged global offsets
-        List<Integer> globalOffsets = new ArrayList<>();
-        if (!this.supportPosition) {
-            return globalOffsets;
+    public void setMergeScheduler(MergeScheduler mergeScheduler) {
+        Preconditions.checkNotNull(mergeScheduler);
+        synchronized (this.writeLock) {
+            this.mergeScheduler.sync();
+            this.mergeScheduler = mergeScheduler;
         }
+    }
 
-        switch (flag) {
-            // Only left side
-            case 0:
-                // Compute global offsets on left side
-                this.assembleGlobalOffsets(leftPosChannel, posChannel, posBuffer, leftListBlock, globalOffsets, meta);
-                break;
-            // Only right side
-            case 1:
-                // Compute global offsets on right side
-                this.assembleGlobalOffsets(rightPosChannel, posChannel, posBuffer, rightListBlock, globalOffsets, meta);
-                break;
-            // Both sides
-            case 2:
-                // Compute global offsets on left side
-                this.assembleGlobalOffsets(leftPosChannel, posChannel, posBuffer, leftListBlock, globalOffsets, meta);
-                // Remove the last one
-                globalOffsets.remove(globalOffsets.size() - 1);
-                // Compute global offsets on right side
-                this.assembleGlobalOffsets(rightPosChannel, posChannel, posBuffer, rightListBlock, globalOffsets, meta);
-                break;
+    /**
+     * Ask the merge policy for merges among live segments not being merged.
+     * Segments being merged split the others into runs of neighbours, the policy is asked about each run.
+     * Segments of the returned merges are marked as merging until executeMerge() commits them.
+     * Called by merge schedulers.
+     *
+     * @return segments of each merge, in live order
+     */
+    public synchronized List<List<SegmentInfo>> findMerges() {
+        List<List<SegmentInfo>> merges = new ArrayList<>();
+        List<SegmentInfo> segments = new ArrayList<>();
+        for (SegmentInfo segmentInfo : this.manifest.segments) {
+            if (!this.mergingSegments.contains(segmentInfo.id)) {
+                segments.add(segmentInfo);
+            } else if (!segments.isEmpty()) {
+                merges.addAll(this.registerMerges(this.mergePolicy.findMerges(segments)));
+                segments = new ArrayList<>();
+            }
         }
-
-        return globalOffsets;
+        if (!segments.isEmpty()) {
+            merges.addAll(this.registerMerges(this.mergePolicy.findMerges(segments)));
+        }
+        return merges;
     }
 
     /**
-     * Assemble global offsets on left side or right side
+     * Mark segments of merges as merging, merges of a single segment are dropped
      */
-    private void assembleGlobalOffsets(PageFileChannel readPosChannel, PageFileChannel writePosChannel,
-                                       ByteBuffer posBuffer, ListBlock listBlock, List<Integer> globalOffsets,
-                                       WriteMeta meta) {
-        for (int i = 0; i < listBlock.invertedList.size(); i++) {
-            // Get position list
-            List<Integer> positionList = this.getPositionList(readPosChannel, listBlock.globalOffsets, i);
-            // Encode position list
-            byte[] encodedPositionList = this.compressor.encode(positionList);
-            // Mark down global offset
-            globalOffsets.add(meta.posPageNum * PageFileChannel.PAGE_SIZE + posBuffer.position());
+    private List<List<SegmentInfo>> registerMerges(List<List<SegmentInfo>> merges) {
+        List<List<SegmentInfo>> registered = new ArrayList<>();
+        for (List<SegmentInfo> segments : merges) {
+            if (segments.size() < 2) {
+                continue;
+            }
+            // The merged segment takes the place of the first one, documents stay in order only if they are neighbours
+            int start = this.manifest.segments.indexOf(segments.get(0));
+            Preconditions.checkState(start >= 0 && start + segments.size() <= this.manifest.segments.size()
+                    && this.manifest.segments.subList(start, start + segments.size()).equals(segments),
+                    "segments of a merge must be neighbouring live segments");
+            for (SegmentInfo segmentInfo : segments) {
+                Preconditions.checkState(this.mergingSegments.add(segmentInfo.id), "segment %s is already merging", segmentInfo.id);
+            }
+            registered.add(segments);
+        }
+        return registered;
+    }
 
-            // Flush encoded position list
-            for (byte encodedPosition : encodedPositionList) {
-                if (posBuffer.position() >= posBuffer.capacity()) {
-                    writePosChannel.writePage(meta.posPageNum, posBuffer);
-                    meta.posPageNum += 1;
-                    posBuffer.clear();
+    /**
+     * Merge segments got from findMerges() into a new segment, then swap it in for them.
+     * Indexing and queries go on while the new segment is written, it replaces the merged segments atomically.
+     * Called by merge schedulers, possibly from background threads.
+     */
+    public void executeMerge(List<SegmentInfo> segments) {
+        SegmentInfo newSegment;
+        try {
+            newSegment = this.mergeSegments(segments);
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                for (SegmentInfo segmentInfo : segments) {
+                    this.mergingSegments.remove(segmentInfo.id);
                 }
-                posBuffer.put(encodedPosition);
             }
+            throw e;
         }
-        // Add end offset
-        globalOffsets.add(meta.posPageNum * PageFileChannel.PAGE_SIZE + posBuffer.position());
+        this.commitMerge(segments, newSegment);
     }
 
     /**
-     * Flush word block and list
+     * Replace merged segments by the new segment at the place of the first of them,
+     * then delete origin files once running queries are done
      */
-    private void flushWordAndList(DocumentStore documentStore,
-                                  PageFileChannel listsChannel, PageFileChannel wordsChannel, PageFileChannel posChannel,
-                                  ByteBuffer listsBuffer, ByteBuffer wordsBuffer, ByteBuffer posBuffer,
-                                  List<Integer> invertedList, WordBlock wordBlock, WriteMeta meta) {
-        // Update word block
-        wordBlock.listsPageNum = meta.listsPageNum;
-        wordBlock.listOffset = listsBuffer.position();
+    private synchronized void commitMerge(List<SegmentInfo> segments, SegmentInfo newSegment) {
+        Set<Integer> mergedIds = new HashSet<>();
+        for (SegmentInfo segmentInfo : segments) {
+            mergedIds.add(segmentInfo.id);
+        }
+        List<SegmentInfo> newSegments = new ArrayList<>();
+        for (SegmentInfo segmentInfo : this.manifest.segments) {
+            if (segmentInfo.id == segments.get(0).id) {
+                newSegments.add(newSegment);
+            } else if (!mergedIds.contains(segmentInfo.id)) {
+                newSegments.add(segmentInfo);
+            }
+        }
+        this.manifest.segments = newSegments;
+        this.manifest.write(this.basePath);
+        this.publishSegments();
+        for (SegmentInfo segmentInfo : segments) {
+            this.dropSegment(segmentInfo.id);
+            this.mergingSegments.remove(segmentInfo.id);
+        }
+    }
 
-        // Global offsets
-        List<Integer> globalOffsets = new ArrayList<>();
-        // Get size list
-        List<Integer> sizeList = this.flushPositionList(documentStore, posChannel, posBuffer, invertedList, globalOffsets, wordBlock, meta);
+    /**
+     * Merge any number of segments into a new segment in one sequential pass.
+     * Dictionaries of all segments are walked side by side with a heap, so only one words page per segment
+     * and the postings of one word are in memory at a time.
+     * Documents of later segments follow those of earlier ones. The new segment is written but not committed.
+     * Deleted documents are dropped with their postings, and words left without documents with them.
+     *
+     * @return description of the new segment
+     */
+    private SegmentInfo mergeSegments(List<SegmentInfo> segments) {
+        int newId = this.allocateSegmentId();
+        this.deleteSegmentFiles(newId);
+        // New segment page num
+        WriteMeta meta = new WriteMeta();
+        // New segment channels
+        PageFileChannel newSegWordsChannel = this.getSegmentChannel(newId, "words");
+        PageFileChannel newSegListsChannel = this.getSegmentChannel(newId, "lists");
+        PageFileChannel newSegPosChannel = this.supportPosition ? this.getSegmentChannel(newId, "positions") : null;
+        DocumentStore newDocStore = this.getDocumentStore(newId, "");
+        // Page buffers of the new segment, merges running at the same time have their own
+        ByteBuffer wordsBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+        ByteBuffer listsBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+        ByteBuffer posBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+        wordsBuffer.putInt(0);
+        ListBlock listBlock = new ListBlock();
+        ListBlock mergedListBlock = new ListBlock();
+
+        // Copy documents and open a cursor on each segment
+        PriorityQueue<WordCursor> cursors = new PriorityQueue<>(
+                Comparator.comparing((WordCursor cursor) -> cursor.current.word).thenComparingInt(cursor -> cursor.docBase));
+        List<WordCursor> allCursors = new ArrayList<>();
+        // Norms of live documents by new doc id, vector norms are dropped if a segment has none
+        IntList lengths = new IntList();
+        IntList squaredNorms = new IntList();
+        boolean vectorNorms = true;
+        int docBase = 0;
+        int numTerms = 0;
+        for (SegmentInfo segment : segments) {
+            // Live documents are numbered in order after those of former segments
+            LiveDocs liveDocs = LiveDocs.read(this.basePath, segment);
+            Norms norms = Norms.read(this.basePath, segment.id);
+            vectorNorms &= norms != null && norms.hasVectorNorms();
+            for (int id = 0; id < segment.numDocuments; id++) {
+                if (liveDocs.isLive(id)) {
+                    lengths.add(norms == null ? 0 : norms.getLength(id));
+                    squaredNorms.add(vectorNorms ? norms.getSquaredNorm(id) : 0);
+                }
+            }
+            int[] docMap = null;
+            if (liveDocs.hasDeletions()) {
+                docMap = new int[segment.numDocuments];
+                for (int id = 0, nextDocId = docBase; id < segment.numDocuments; id++) {
+                    docMap[id] = liveDocs.isLive(id) ? nextDocId++ : -1;
+                }
+            }
+
+            DocumentStore docStore = this.getReadOnlyDocumentStore(segment.id);
+            Iterator<Map.Entry<Integer, Document>> iterator = docStore.iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Integer, Document> entry = iterator.next();
+                if (docMap == null) {
+                    newDocStore.addDocument(docBase + entry.getKey(), entry.getValue());
+                } else if (docMap[entry.getKey()] >= 0) {
+                    newDocStore.addDocument(docMap[entry.getKey()], entry.getValue());
+                }
+            }
+            docStore.close();
+
+            WordCursor cursor = new WordCursor(segment.id, docBase,
+                    this.getSegmentChannel(segment.id, "words"),
+                    this.getSegmentChannel(segment.id, "lists"),
+                    this.supportPosition ? this.getSegmentChannel(segment.id, "positions") : null);
+            cursor.docMap = docMap;
+            allCursors.add(cursor);
+            if (cursor.next()) {
+                cursors.add(cursor);
+            }
+            docBase += liveDocs.getNumLive();
+            numTerms += segment.numTerms;
+        }
+        newDocStore.close();
+
+        // Term filter is sized by the most terms the merged segment could have
+        SegmentMeta segmentMeta = SegmentMeta.create(numTerms, DEFAULT_TERM_FILTER_FPP);
+        List<WordCursor> sameWordCursors = new ArrayList<>();
+        numTerms = 0;
+        while (!cursors.isEmpty()) {
+            // All cursors at the smallest word, in segment order
+            sameWordCursors.clear();
+            String word = cursors.peek().current.word;
+            while (!cursors.isEmpty() && cursors.peek().current.word.equals(word)) {
+                sameWordCursors.add(cursors.poll());
+            }
 
-        // Encode size list
-        byte[] encodedSizeList = this.naiveCompressor.encode(sizeList);
-        // Encode invertedList
-        byte[] encodedInvertedList = this.compressor.encode(invertedList);
-        // Encode global offset
-        byte[] encodedGlobalOffsets = this.compressor.encode(globalOffsets);
+            if (this.mergeWord(newSegListsChannel, newSegWordsChannel, newSegPosChannel,
+                    listsBuffer, wordsBuffer, posBuffer,
+                    sameWordCursors, listBlock, mergedListBlock, meta)) {
+                segmentMeta.addTerm(word);
+                numTerms += 1;
+            }
+
+            for (WordCursor cursor : sameWordCursors) {
+                if (cursor.next()) {
+                    cursors.add(cursor);
+                }
+            }
+        }
 
-        // Markdown global offset bytes length
-        wordBlock.listLength = encodedInvertedList.length;
-        wordBlock.globalOffsetLength = encodedGlobalOffsets.length;
-        wordBlock.sizeLength = encodedSizeList.length;
+        // Write remaining content from buffer
+        wordsBuffer.putInt(0, wordsBuffer.position());
+        newSegWordsChannel.writePage(meta.wordsPageNum, wordsBuffer);
+        newSegListsChannel.writePage(meta.listsPageNum, listsBuffer);
+        if (newSegPosChannel != null) {
+            newSegPosChannel.writePage(meta.posPageNum, posBuffer);
+        }
 
-        // Flush list block
-        this.flushListBlock(listsChannel, listsBuffer, encodedInvertedList, encodedGlobalOffsets, encodedSizeList, meta);
+        // Close channels
+        newSegListsChannel.close();
+        newSegWordsChannel.close();
+        if (newSegPosChannel != null) {
+            newSegPosChannel.close();
+        }
+        for (WordCursor cursor : allCursors) {
+            cursor.close();
+        }
 
-        // Flush word block
-        this.flushWordBlock(wordsChannel, wordsBuffer, wordBlock, meta);
+        // Describe merged segment
+        SegmentInfo newSegment = new SegmentInfo(newId, docBase, numTerms);
+        this.updateFileSizes(newSegment);
+        this.dictionaryIndexes.put(newId, new DictionaryIndex(meta.firstWords));
+        segmentMeta.write(this.basePath, newId);
+        new Norms(lengths.toArray(), vectorNorms ? squaredNorms.toArray() : null).write(this.basePath, newId);
+        // Files must be on disk before the merge is committed
+        SegmentManifest.syncSegmentFiles(this.basePath, newId);
+
+        return newSegment;
     }
 
     /**
-     * Init inverted list and position list
+     * Merge: concatenate postings of live documents of a word from all segments having it, then write word block and list
+     *
+     * @return false if no live document has the word, nothing is written then
      */
-    private List<Integer> flushPositionList(DocumentStore documentStore, PageFileChannel posChannel, ByteBuffer posBuffer,
-                                            List<Integer> invertedList, List<Integer> globalOffsets,
-                                            WordBlock wordBlock, WriteMeta meta) {
-        List<Integer> sizeList = new ArrayList<>();
-        // Flush all position lists
-        for (Integer id : invertedList) {
-            if (posChannel != null) {
-                // Get position list
-                List<Integer> positionList = Utils.getPositions(documentStore.getDocument(id), wordBlock.word, this.analyzer);
-                // Add size
-                sizeList.add(positionList.size());
-
-                // Encode position list
-                byte[] encodedPositionList = this.compressor.encode(positionList);
-                // Mark down global offset
-                globalOffsets.add(meta.posPageNum * PageFileChannel.PAGE_SIZE + posBuffer.position());
+    private boolean mergeWord(PageFileChannel listsChannel, PageFileChannel wordsChannel, PageFileChannel posChannel,
+                              ByteBuffer listsBuffer, ByteBuffer wordsBuffer, ByteBuffer posBuffer,
+                              List<WordCursor> cursors, ListBlock listBlock, ListBlock mergedListBlock, WriteMeta meta) {
+        // Word of a single segment without deleted documents doesn't need its postings decoded, unless they are in blocks
+        if (cursors.size() == 1 && cursors.get(0).docMap == null && cursors.get(0).current.skipLength == 0) {
+            this.copyWord(listsChannel, wordsChannel, posChannel, listsBuffer, wordsBuffer, posBuffer,
+                    cursors.get(0), listBlock, meta);
+            return true;
+        }
 
-                // Flush encoded position list
-                for (byte encodedPosition : encodedPositionList) {
-                    if (posBuffer.position() >= posBuffer.capacity()) {
-                        posChannel.writePage(meta.posPageNum, posBuffer);
-                        meta.posPageNum += 1;
-                        posBuffer.clear();
+        WordBlock firstWordBlock = cursors.get(0).current;
+        WordBlock wordBlock = new WordBlock(
+                firstWordBlock.wordLength,
+                firstWordBlock.word,
+                meta.listsPageNum,
+                listsBuffer.position(),
+                0, 0, 0
+        );
+
+        IntList invertedList = mergedListBlock.invertedList;
+        IntList globalOffsets = mergedListBlock.globalOffsets;
+        IntList sizeList = mergedListBlock.sizeList;
+        invertedList.clear();
+        globalOffsets.clear();
+        sizeList.clear();
+        for (WordCursor cursor : cursors) {
+            this.getListBlockFromSegment(cursor.listsChannel, cursor.current, listBlock, false);
+            int size = listBlock.invertedList.size();
+            int start = 0;
+            while (start < size) {
+                // Skip deleted documents
+                if (cursor.docMap != null && cursor.docMap[listBlock.invertedList.get(start)] < 0) {
+                    start++;
+                    continue;
+                }
+                // Move doc ids of a run of live documents after documents of former segments
+                int end = start;
+                while (end < size && (cursor.docMap == null || cursor.docMap[listBlock.invertedList.get(end)] >= 0)) {
+                    int docId = listBlock.invertedList.get(end);
+                    invertedList.add(cursor.docMap == null ? docId + cursor.docBase : cursor.docMap[docId]);
+                    sizeList.add(listBlock.sizeList.get(end));
+                    end++;
+                }
+                // Copy encoded position lists of the run as one byte range, moving their global offsets
+                if (posChannel != null) {
+                    int positionsStart = listBlock.globalOffsets.get(start);
+                    int positionsEnd = listBlock.globalOffsets.get(end);
+                    int shift = meta.posPageNum * PageFileChannel.PAGE_SIZE + posBuffer.position() - positionsStart;
+                    for (int i = start; i < end; i++) {
+                        globalOffsets.add(listBlock.globalOffsets.get(i) + shift);
                     }
-                    posBuffer.put(encodedPosition);
+                    this.copyBytes(cursor.positionsChannel, positionsStart, positionsEnd - positionsStart, posChannel, posBuffer, meta);
                 }
-            }
-            else {
-                // Just for counting size of position list
-                sizeList.add(this.tokenCounting.get(id).get(wordBlock.word));
+                start = end;
             }
         }
+        if (invertedList.isEmpty()) {
+            return false;
+        }
         if (posChannel != null) {
             // Add end offset
             globalOffsets.add(meta.posPageNum * PageFileChannel.PAGE_SIZE + posBuffer.position());
         }
 
-        return sizeList;
+        // Flush list block
+        this.flushListBlock(listsChannel, listsBuffer, invertedList, globalOffsets, sizeList, wordBlock, meta);
+
+        // Flush word block
+        this.flushWordBlock(wordsChannel, wordsBuffer, wordBlock, meta);
+        return true;
     }
 
     /**
-     * Flush inverted list and global offsets
+     * Merge: copy encoded postings of a word found in a single segment.
+     * Positions are copied as one byte range, only global offsets are decoded to be moved to the new file,
+     * and doc ids are re-encoded only if documents of former segments come before them.
      */
-    private void flushListBlock(PageFileChannel listsChannel, ByteBuffer listsBuffer, byte[] encodedInvertedList, byte[] encodedGlobalOffsets, byte[] encodedSizeList, WriteMeta meta) {
-        // Flush inverted list
-        for (byte encodedDocId : encodedInvertedList) {
-            if (listsBuffer.position() >= listsBuffer.capacity()) {
-                listsChannel.writePage(meta.listsPageNum, listsBuffer);
-                meta.listsPageNum += 1;
-                listsBuffer.clear();
+    private void copyWord(PageFileChannel listsChannel, PageFileChannel wordsChannel, PageFileChannel posChannel,
+                          ByteBuffer listsBuffer, ByteBuffer wordsBuffer, ByteBuffer posBuffer,
+                          WordCursor cursor, ListBlock listBlock, WriteMeta meta) {
+        WordBlock sourceWordBlock = cursor.current;
+        WordBlock wordBlock = new WordBlock(
+                sourceWordBlock.wordLength,
+                sourceWordBlock.word,
+                meta.listsPageNum,
+                listsBuffer.position(),
+                0, 0, 0
+        );
+
+        // Read encoded inverted list, global offsets and size list at once, a single block list has no skip table
+        int length = sourceWordBlock.getListBlockLength();
+        long listsOffset = (long) sourceWordBlock.listsPageNum * PageFileChannel.PAGE_SIZE + sourceWordBlock.listOffset;
+        ByteBuffer bytes = this.readSlice(cursor.listsChannel, listsOffset, length, false);
+        IntList globalOffsets = listBlock.globalOffsets;
+        this.compressor.decode(bytes, sourceWordBlock.listLength, sourceWordBlock.globalOffsetLength, globalOffsets);
+
+        ByteBuffer encodeBuffer = this.getEncodeBuffer(
+                this.compressor.maxEncodedLength(sourceWordBlock.listLength) +
+                this.compressor.maxEncodedLength(globalOffsets.size()) +
+                sourceWordBlock.sizeLength
+        );
+        // Inverted list
+        if (cursor.docBase == 0) {
+            wordBlock.listLength = this.copySlice(bytes, 0, sourceWordBlock.listLength, encodeBuffer);
+        } else {
+            IntList invertedList = listBlock.invertedList;
+            this.compressor.decode(bytes, 0, sourceWordBlock.listLength, invertedList);
+            for (int i = 0; i < invertedList.size(); i++) {
+                invertedList.set(i, invertedList.get(i) + cursor.docBase);
             }
-            listsBuffer.put(encodedDocId);
+            wordBlock.listLength = this.compressor.encode(invertedList.getValues(), invertedList.size(), encodeBuffer);
         }
-        // Flush global offsets
-        for (byte encodedGlobalOffset : encodedGlobalOffsets) {
-            if (listsBuffer.position() >= listsBuffer.capacity()) {
-                listsChannel.writePage(meta.listsPageNum, listsBuffer);
-                meta.listsPageNum += 1;
-                listsBuffer.clear();
+        // Global offsets move by the distance between old and new start of the position lists
+        long positionsStart = 0;
+        long positionsLength = 0;
+        if (posChannel != null && !globalOffsets.isEmpty()) {
+            positionsStart = globalOffsets.get(0);
+            positionsLength = globalOffsets.get(globalOffsets.size() - 1) - positionsStart;
+            int shift = meta.posPageNum * PageFileChannel.PAGE_SIZE + posBuffer.position() - (int) positionsStart;
+            if (shift != 0) {
+                for (int i = 0; i < globalOffsets.size(); i++) {
+                    globalOffsets.set(i, globalOffsets.get(i) + shift);
+                }
             }
-            listsBuffer.put(encodedGlobalOffset);
         }
-        // Flush size list
-        for (byte encodedSize : encodedSizeList) {
-            if (listsBuffer.position() >= listsBuffer.capacity()) {
-                listsChannel.writePage(meta.listsPageNum, listsBuffer);
-                meta.listsPageNum += 1;
-                listsBuffer.clear();
-            }
-            listsBuffer.put(encodedSize);
+        wordBlock.globalOffsetLength = this.compressor.encode(globalOffsets.getValues(), globalOffsets.size(), encodeBuffer);
+        // Size list
+        wordBlock.sizeLength = this.copySlice(bytes, sourceWordBlock.listLength + sourceWordBlock.globalOffsetLength,
+                sourceWordBlock.sizeLength, encodeBuffer);
+
+        // Position lists, read after lists bytes are used up since reads share one buffer
+        if (positionsLength > 0) {
+            this.copyBytes(cursor.positionsChannel, positionsStart, positionsLength, posChannel, posBuffer, meta);
         }
-    }
 
-    /**
-     * Flush word block to file
+        // Flush list block
+        encodeBuffer.flip();
+        meta.listsPageNum = this.writeBytes(listsChannel, listsBuffer, encodeBuffer, meta.listsPageNum);
+
+        // Flush word block
+        this.flushWordBlock(wordsChannel, wordsBuffer, wordBlock, meta);
+    }
+
+    /**
+     * Put part of a slice into a buffer
+     *
+     * @return number of bytes put
+     */
+    private int copySlice(ByteBuffer slice, int offset, int length, ByteBuffer dest) {
+        ByteBuffer part = slice.duplicate();
+        part.limit(offset + length);
+        part.position(offset);
+        dest.put(part);
+        return length;
+    }
+
+    /**
+     * Copy a byte range of a file to the positions file being written, a page at a time.
+     * Source pages are read without caching them, like every other read of a merge.
+     */
+    private void copyBytes(PageFileChannel sourceChannel, long offset, long length,
+                           PageFileChannel posChannel, ByteBuffer posBuffer, WriteMeta meta) {
+        long end = offset + length;
+        while (offset < end) {
+            // Read up to the end of the source page
+            int chunk = (int) Math.min(end - offset, PageFileChannel.PAGE_SIZE - offset % PageFileChannel.PAGE_SIZE);
+            ByteBuffer bytes = this.readSlice(sourceChannel, offset, chunk, false);
+            meta.posPageNum = this.writeBytes(posChannel, posBuffer, bytes, meta.posPageNum);
+            offset += chunk;
+        }
+    }
+
+    /**
+     * Flush word block and list
+     */
+    private void flushWordAndList(PageFileChannel listsChannel, PageFileChannel wordsChannel, PageFileChannel posChannel,
+                                  ByteBuffer listsBuffer, ByteBuffer wordsBuffer, ByteBuffer posBuffer,
+                                  IntList invertedList, WordBlock wordBlock, WriteMeta meta) {
+        // Update word block
+        wordBlock.listsPageNum = meta.listsPageNum;
+        wordBlock.listOffset = listsBuffer.position();
+
+        // Global offsets
+        IntList globalOffsets = this.writeGlobalOffsets;
+        globalOffsets.clear();
+        // Get size list
+        IntList sizeList = this.flushPositionList(posChannel, posBuffer, invertedList, globalOffsets, wordBlock, meta);
+
+        // Flush list block
+        this.flushListBlock(listsChannel, listsBuffer, invertedList, globalOffsets, sizeList, wordBlock, meta);
+
+        // Flush word block
+        this.flushWordBlock(wordsChannel, wordsBuffer, wordBlock, meta);
+    }
+
+    /**
+     * Init inverted list and position list
+     */
+    private IntList flushPositionList(PageFileChannel posChannel, ByteBuffer posBuffer,
+                                      IntList invertedList, IntList globalOffsets,
+                                      WordBlock wordBlock, WriteMeta meta) {
+        IntList sizeList = this.writeSizeList;
+        sizeList.clear();
+        // Flush all position lists
+        for (int i = 0; i < invertedList.size(); i++) {
+            int id = invertedList.get(i);
+            if (posChannel != null) {
+                // Get position list
+                IntList positionList = this.tokenPositions.get(id).get(wordBlock.word);
+                if (positionList == null) {
+                    positionList = this.writePositionList;
+                    positionList.clear();
+                }
+                // Add size
+                sizeList.add(positionList.size());
+
+                // Mark down global offset
+                globalOffsets.add(meta.posPageNum * PageFileChannel.PAGE_SIZE + posBuffer.position());
+
+                // Flush encoded position list
+                this.flushPositions(posChannel, posBuffer, positionList, meta);
+            }
+            else {
+                // Just for counting size of position list
+                sizeList.add(this.tokenCounting.get(id).get(wordBlock.word));
+            }
+        }
+        if (posChannel != null) {
+            // Add end offset
+            globalOffsets.add(meta.posPageNum * PageFileChannel.PAGE_SIZE + posBuffer.position());
+        }
+
+        return sizeList;
+    }
+
+    /**
+     * Encode a position list and write it to positions file
+     */
+    private void flushPositions(PageFileChannel posChannel, ByteBuffer posBuffer, IntList positionList, WriteMeta meta) {
+        ByteBuffer encodeBuffer = this.getEncodeBuffer(this.compressor.maxEncodedLength(positionList.size()));
+        this.compressor.encode(positionList.getValues(), positionList.size(), encodeBuffer);
+        encodeBuffer.flip();
+        meta.posPageNum = this.writeBytes(posChannel, posBuffer, encodeBuffer, meta.posPageNum);
+    }
+
+    /**
+     * Encode inverted list, global offsets and size list, then write them to lists file.
+     * Lists longer than a block are encoded block by block and followed by a skip table, see PostingsIterator.
+     * Encoded lengths are marked down in the word block. Sizes are never compressed, so that the length of
+     * the size list gives the document frequency.
+     */
+    private void flushListBlock(PageFileChannel listsChannel, ByteBuffer listsBuffer,
+                                IntList invertedList, IntList globalOffsets, IntList sizeList,
+                                WordBlock wordBlock, WriteMeta meta) {
+        int numBlocks = (invertedList.size() + PostingsIterator.BLOCK_SIZE - 1) / PostingsIterator.BLOCK_SIZE;
+        ByteBuffer encodeBuffer = this.getEncodeBuffer(
+                this.compressor.maxEncodedLength(invertedList.size()) +
+                this.compressor.maxEncodedLength(globalOffsets.size() + numBlocks) +
+                this.naiveCompressor.maxEncodedLength(sizeList.size()) +
+                this.naiveCompressor.maxEncodedLength(numBlocks * PostingsIterator.SKIP_ENTRY_INTS)
+        );
+        if (numBlocks <= 1) {
+            // Encode inverted list, global offsets and size list
+            wordBlock.listLength = this.compressor.encode(invertedList.getValues(), invertedList.size(), encodeBuffer);
+            wordBlock.globalOffsetLength = this.compressor.encode(globalOffsets.getValues(), globalOffsets.size(), encodeBuffer);
+            wordBlock.sizeLength = this.naiveCompressor.encode(sizeList.getValues(), sizeList.size(), encodeBuffer);
+            wordBlock.skipLength = 0;
+        } else {
+            int[] skipTable = new int[numBlocks * PostingsIterator.SKIP_ENTRY_INTS];
+            int[] block = new int[PostingsIterator.BLOCK_SIZE + 1];
+            // Inverted list blocks, each ending with the last doc id of the block
+            wordBlock.listLength = 0;
+            for (int i = 0; i < numBlocks; i++) {
+                int from = i * PostingsIterator.BLOCK_SIZE;
+                int to = Math.min(from + PostingsIterator.BLOCK_SIZE, invertedList.size());
+                System.arraycopy(invertedList.getValues(), from, block, 0, to - from);
+                wordBlock.listLength += this.compressor.encode(block, to - from, encodeBuffer);
+                skipTable[i * PostingsIterator.SKIP_ENTRY_INTS] = invertedList.get(to - 1);
+                skipTable[i * PostingsIterator.SKIP_ENTRY_INTS + 1] = wordBlock.listLength;
+            }
+            // Global offset blocks, each with the end offset of its last document
+            wordBlock.globalOffsetLength = 0;
+            for (int i = 0; i < numBlocks && !globalOffsets.isEmpty(); i++) {
+                int from = i * PostingsIterator.BLOCK_SIZE;
+                int to = Math.min(from + PostingsIterator.BLOCK_SIZE, invertedList.size());
+                System.arraycopy(globalOffsets.getValues(), from, block, 0, to - from + 1);
+                wordBlock.globalOffsetLength += this.compressor.encode(block, to - from + 1, encodeBuffer);
+                skipTable[i * PostingsIterator.SKIP_ENTRY_INTS + 2] = wordBlock.globalOffsetLength;
+            }
+            wordBlock.sizeLength = this.naiveCompressor.encode(sizeList.getValues(), sizeList.size(), encodeBuffer);
+            wordBlock.skipLength = this.naiveCompressor.encode(skipTable, skipTable.length, encodeBuffer);
+        }
+
+        encodeBuffer.flip();
+        meta.listsPageNum = this.writeBytes(listsChannel, listsBuffer, encodeBuffer, meta.listsPageNum);
+    }
+
+    /**
+     * Get reusable encode buffer with at least given capacity
+     */
+    private ByteBuffer getEncodeBuffer(int capacity) {
+        ByteBuffer encodeBuffer = this.encodeBuffer.get();
+        if (encodeBuffer.capacity() < capacity) {
+            encodeBuffer = ByteBuffer.allocate(Math.max(capacity, encodeBuffer.capacity() * 2));
+            this.encodeBuffer.set(encodeBuffer);
+        }
+        encodeBuffer.clear();
+        return encodeBuffer;
+    }
+
+    /**
+     * Get reusable decode byte array with at least given length
+     */
+    private byte[] getDecodeBytes(int length) {
+        byte[] decodeBytes = this.decodeBytes.get();
+        if (decodeBytes.length < length) {
+            decodeBytes = new byte[Math.max(length, decodeBytes.length * 2)];
+            this.decodeBytes.set(decodeBytes);
+        }
+        return decodeBytes;
+    }
+
+    /**
+     * Copy bytes into a page buffer, the page is written to file once it is full and more bytes come
+     *
+     * @return page num of the page buffer
+     */
+    private int writeBytes(PageFileChannel channel, ByteBuffer pageBuffer, ByteBuffer bytes, int pageNum) {
+        while (bytes.hasRemaining()) {
+            // Overflow -> span out pages
+            if (!pageBuffer.hasRemaining()) {
+                channel.writePage(pageNum, pageBuffer);
+                pageNum += 1;
+                pageBuffer.clear();
+            }
+            int length = Math.min(bytes.remaining(), pageBuffer.remaining());
+            int limit = bytes.limit();
+            bytes.limit(bytes.position() + length);
+            pageBuffer.put(bytes);
+            bytes.limit(limit);
+        }
+        return pageNum;
+    }
+
+    /**
+     * Read bytes from a file starting at given page and offset
+     *
+     * @param cached read pages through the buffer pool, otherwise straight from the file without caching them
+     */
+    private void readBytes(PageFileChannel channel, int pageNum, int offset, byte[] dest, int length, boolean cached) {
+        BufferPool.Page page = cached ? this.bufferPool.pin(channel, pageNum) : null;
+        ByteBuffer pageBuffer = cached ? page.buffer : channel.readPage(pageNum);
+        pageBuffer.position(offset);
+        int read = 0;
+        while (read < length) {
+            // Overflow -> span out pages
+            if (!pageBuffer.hasRemaining()) {
+                pageNum += 1;
+                if (cached) {
+                    this.bufferPool.unpin(page);
+                    page = this.bufferPool.pin(channel, pageNum);
+                    pageBuffer = page.buffer;
+                } else {
+                    // Uncached pages are read into the same buffer
+                    channel.readPage(pageNum, pageBuffer);
+                }
+            }
+            int size = Math.min(length - read, pageBuffer.remaining());
+            pageBuffer.get(dest, read, size);
+            read += size;
+        }
+        if (cached) {
+            this.bufferPool.unpin(page);
+        }
+    }
+
+    /**
+     * Get mapping of a segment file, segment files never change once written so it is mapped only once
+     */
+    private ByteBuffer getMappedFile(PageFileChannel channel) {
+        ByteBuffer mappedFile = this.mappedFiles.get(channel.getPath());
+        if (mappedFile == null) {
+            mappedFile = channel.map();
+            this.mappedFiles.put(channel.getPath(), mappedFile);
+        }
+        return mappedFile;
+    }
+
+    /**
+     * Read bytes starting at given offset of a file as one contiguous buffer, indexed from 0.
+     * With memory mapping it is a view of the mapped file, otherwise the bytes are copied from pages in the pool.
+     * The buffer is only valid until the next read.
+     */
+    private ByteBuffer readSlice(PageFileChannel channel, long globalOffset, int length) {
+        return this.readSlice(channel, globalOffset, length, true);
+    }
+
+    /**
+     * Read bytes like readSlice(), merges read each page of their inputs once so they don't pass them through the pool
+     *
+     * @param cached read pages through the buffer pool, otherwise straight from the file without caching them
+     */
+    private ByteBuffer readSlice(PageFileChannel channel, long globalOffset, int length, boolean cached) {
+        if (this.memoryMapped) {
+            ByteBuffer slice = this.getMappedFile(channel).duplicate();
+            slice.position((int) globalOffset);
+            slice.limit((int) globalOffset + length);
+            return slice.slice();
+        }
+        byte[] bytes = this.getDecodeBytes(length);
+        this.readBytes(channel, (int) (globalOffset / PageFileChannel.PAGE_SIZE), (int) (globalOffset % PageFileChannel.PAGE_SIZE), bytes, length, cached);
+        return ByteBuffer.wrap(bytes, 0, length);
+    }
+
+    /**
+     * Get a page of a file for reading, its buffer positioned at 0. It must be released by releasePage()
+     */
+    private BufferPool.Page acquirePage(PageFileChannel channel, int pageNum) {
+        if (this.memoryMapped) {
+            return new BufferPool.Page(this.readSlice(channel, (long) pageNum * PageFileChannel.PAGE_SIZE, PageFileChannel.PAGE_SIZE));
+        }
+        return this.bufferPool.pin(channel, pageNum);
+    }
+
+    /**
+     * Read a page once without caching it, used when scanning a whole file
+     */
+    private ByteBuffer readPageUncached(PageFileChannel channel, int pageNum) {
+        if (this.memoryMapped) {
+            return this.readSlice(channel, (long) pageNum * PageFileChannel.PAGE_SIZE, PageFileChannel.PAGE_SIZE);
+        }
+        return channel.readPage(pageNum);
+    }
+
+    /**
+     * Release a page got from acquirePage()
+     */
+    private void releasePage(BufferPool.Page page) {
+        this.bufferPool.unpin(page);
+    }
+
+    /**
+     * Flush word block to file
      */
     private void flushWordBlock(PageFileChannel wordsChannel, ByteBuffer wordsBuffer, WordBlock wordBlock, WriteMeta meta) {
         // Write word block to segment
@@ -713,6 +1429,11 @@ public class InvertedIndexManager {
             wordsBuffer.putInt(0);
         }
 
+        // First word of the page goes to dictionary index
+        if (wordsBuffer.position() == Integer.BYTES) {
+            meta.firstWords.add(wordBlock.word);
+        }
+
         // Word Block
         wordsBuffer.putInt(wordBlock.wordLength) // Word length
                 .put(wordBlock.word.getBytes(StandardCharsets.UTF_8)) // Word
@@ -720,49 +1441,8 @@ public class InvertedIndexManager {
                 .putInt(wordBlock.listOffset) // Offset
                 .putInt(wordBlock.listLength) // List length
                 .putInt(wordBlock.globalOffsetLength) // Global offset length
-                .putInt(wordBlock.sizeLength); // Size length
-    }
-
-    /**
-     * Method to merge right document store to left document store
-     */
-    private int mergeDocStores(DocumentStore leftDocStore, DocumentStore rightDocStore, DocumentStore newDocStore) {
-        // Rename document store file
-        // Get left doc store size
-        int baseDocSize = (int) leftDocStore.size();
-
-        Iterator<Map.Entry<Integer, Document>> leftIterator = leftDocStore.iterator();
-        Iterator<Map.Entry<Integer, Document>> rightIterator = rightDocStore.iterator();
-        // Add left document store
-        while (leftIterator.hasNext()) {
-            Map.Entry<Integer, Document> entry = leftIterator.next();
-
-            // Add origin left documents to new document store
-            newDocStore.addDocument(entry.getKey(), entry.getValue());
-        }
-        // Add right document store
-        while (rightIterator.hasNext()) {
-            Map.Entry<Integer, Document> entry = rightIterator.next();
-
-            // Update right documents ID and add it to left document store
-            newDocStore.addDocument(baseDocSize + entry.getKey(), entry.getValue());
-        }
-
-        return baseDocSize;
-    }
-
-    /**
-     * Search word block by given word block list and word list
-     */
-    private List<WordBlock> filterWordBlock(List<WordBlock> wordBlocks, List<String> wordList) {
-        List<WordBlock> results = new ArrayList<>();
-        for (WordBlock wordBlock : wordBlocks) {
-            if (wordList.contains(wordBlock.word)) { //&& !results.contains(wordBlock)
-                results.add(wordBlock);
-            }
-        }
-
-        return results;
+                .putInt(wordBlock.sizeLength) // Size length
+                .putInt(wordBlock.skipLength); // Skip table length
     }
 
     /**
@@ -778,22 +1458,11 @@ public class InvertedIndexManager {
         // Iterate all pages
         for (int page = 0; page < pagesNum; page++) {
             // Get a byte buffer by given page
-            ByteBuffer wordsBuffer = wordsFileChannel.readPage(page);
+            ByteBuffer wordsBuffer = this.readPageUncached(wordsFileChannel, page);
             // Get whole size
             int pageSize = wordsBuffer.getInt();
             while (wordsBuffer.position() < pageSize) {
-                int wordLength = wordsBuffer.getInt();
-                WordBlock wordBlock = new WordBlock(
-                        wordLength, // Word length
-                        Utils.sliceStringFromBuffer(wordsBuffer, wordsBuffer.position(), wordLength), // Word
-                        wordsBuffer.getInt(), // Lists page num
-                        wordsBuffer.getInt(),  // List offset
-                        wordsBuffer.getInt(),   // List length
-                        wordsBuffer.getInt(),   //  Global offset length
-                        wordsBuffer.getInt()   // Size list length
-                );
-                wordBlock.segment = segmentIndex;
-                wordBlocks.add(wordBlock);
+                wordBlocks.add(WordBlock.read(wordsBuffer, segmentIndex));
             }
         }
 
@@ -801,478 +1470,637 @@ public class InvertedIndexManager {
     }
 
     /**
-     * Get inverted list from segment
+     * Look up the given words in a segment.
+     * Only the words pages that could contain them are read, each at most once.
+     *
+     * @return word blocks in sorted word order, words not in the segment are skipped
      */
-    private ListBlock getListBlockFromSegment(PageFileChannel listsFileChannel, WordBlock wordBlock) {
-        if (wordBlock == null) {
-            return new ListBlock(0, 0, 0);
+    private List<WordBlock> getWordBlocksFromSegment(PageFileChannel wordsFileChannel, int segmentIndex, Collection<String> words) {
+        List<WordBlock> wordBlocks = new ArrayList<>();
+        DictionaryIndex dictionaryIndex = this.getDictionaryIndex(wordsFileChannel, segmentIndex);
+
+        int currentPage = -1;
+        BufferPool.Page wordsPage = null;
+        ByteBuffer wordsBuffer = null;
+        int pageSize = 0;
+        // Sorted words visit pages in increasing order
+        for (String word : new TreeSet<>(words)) {
+            int page = dictionaryIndex.findPage(word);
+            if (page < 0) {
+                continue;
+            }
+            // Read a new page and start from its beginning
+            if (page != currentPage) {
+                if (currentPage >= 0) {
+                    this.releasePage(wordsPage);
+                }
+                currentPage = page;
+                wordsPage = this.acquirePage(wordsFileChannel, page);
+                wordsBuffer = wordsPage.buffer;
+                pageSize = wordsBuffer.getInt();
+            }
+            // Scan forward, stop once passing the word
+            while (wordsBuffer.position() < pageSize) {
+                int blockStart = wordsBuffer.position();
+                WordBlock wordBlock = WordBlock.read(wordsBuffer, segmentIndex);
+                int compare = wordBlock.word.compareTo(word);
+                if (compare == 0) {
+                    wordBlocks.add(wordBlock);
+                    break;
+                } else if (compare > 0) {
+                    // Rewind so that the next word could match this block
+                    wordsBuffer.position(blockStart);
+                    break;
+                }
+            }
+        }
+        if (currentPage >= 0) {
+            this.releasePage(wordsPage);
         }
-        // Init a new list block
-        ListBlock listBlock = new ListBlock(wordBlock.listLength, wordBlock.globalOffsetLength, wordBlock.sizeLength);
 
-        // Get byte buffer
-        int page = wordBlock.listsPageNum;
-        ByteBuffer listsByteBuffer = listsFileChannel.readPage(page);
-        // Move pointer to the offset
-        listsByteBuffer.position(wordBlock.listOffset);
+        return wordBlocks;
+    }
 
-        // Extract the inverted list
-        for (int i = 0; i < wordBlock.listLength; i++) {
-            // Overflow -> span out pages
-            if (listsByteBuffer.position() >= listsByteBuffer.capacity()) {
-                page += 1;
-                listsByteBuffer = listsFileChannel.readPage(page);
-            }
-            listBlock.encodedInvertedList[i] = listsByteBuffer.get();
-        }
-        // Decode inverted list
-        listBlock.invertedList = this.compressor.decode(listBlock.encodedInvertedList);
+    /**
+     * Look up a single word in a segment
+     *
+     * @return word block, null if the word is not in the segment
+     */
+    private WordBlock getWordBlockFromSegment(PageFileChannel wordsFileChannel, int segmentIndex, String word) {
+        List<WordBlock> wordBlocks = this.getWordBlocksFromSegment(wordsFileChannel, segmentIndex, Collections.singletonList(word));
+        return wordBlocks.isEmpty() ? null : wordBlocks.get(0);
+    }
 
-        // Extract the global offset
-        for (int i = 0; i < wordBlock.globalOffsetLength; i++) {
-            // Overflow -> span out pages
-            if (listsByteBuffer.position() >= listsByteBuffer.capacity()) {
-                page += 1;
-                listsByteBuffer = listsFileChannel.readPage(page);
-            }
-            listBlock.encodedGlobalOffsets[i] = listsByteBuffer.get();
+    /**
+     * Get dictionary index of a segment, build it from the first word of each page if it is not in memory
+     */
+    private DictionaryIndex getDictionaryIndex(PageFileChannel wordsFileChannel, int segmentIndex) {
+        DictionaryIndex dictionaryIndex = this.dictionaryIndexes.get(segmentIndex);
+        if (dictionaryIndex != null) {
+            return dictionaryIndex;
         }
-        // Decode global offsets
-        listBlock.globalOffsets = this.compressor.decode(listBlock.encodedGlobalOffsets);
 
-        // Extract the size list
-        for (int i = 0; i < wordBlock.sizeLength; i++) {
-            // Overflow -> span out pages
-            if (listsByteBuffer.position() >= listsByteBuffer.capacity()) {
-                page += 1;
-                listsByteBuffer = listsFileChannel.readPage(page);
+        List<String> firstWords = new ArrayList<>();
+        int pagesNum = wordsFileChannel.getNumPages();
+        for (int page = 0; page < pagesNum; page++) {
+            ByteBuffer wordsBuffer = this.readPageUncached(wordsFileChannel, page);
+            int pageSize = wordsBuffer.getInt();
+            // Skip empty page
+            if (wordsBuffer.position() >= pageSize) {
+                continue;
             }
-            listBlock.encodedSizeList[i] = listsByteBuffer.get();
+            firstWords.add(WordBlock.read(wordsBuffer, segmentIndex).word);
         }
-        // Decode size list
-        listBlock.sizeList = this.naiveCompressor.decode(listBlock.encodedSizeList);
+        dictionaryIndex = new DictionaryIndex(firstWords);
+        this.dictionaryIndexes.put(segmentIndex, dictionaryIndex);
 
-        return listBlock;
+        return dictionaryIndex;
     }
 
     /**
-     * Filter deleted keywords inverted list when searching
+     * Get inverted list from segment
      */
-    private List<WordBlock> filterDeletedWordBlocks(List<WordBlock> wordBlocks) {
-        List<WordBlock> filteredWordsBlocks = new ArrayList<>();
-        for (WordBlock wordBlock : wordBlocks) {
-            if (!this.deletedWords.contains(wordBlock.word)) {
-                filteredWordsBlocks.add(wordBlock);
-            }
+    private ListBlock getListBlockFromSegment(PageFileChannel listsFileChannel, WordBlock wordBlock) {
+        return this.getListBlockFromSegment(listsFileChannel, wordBlock, new ListBlock(), true);
+    }
+
+    /**
+     * Get an iterator over the inverted list of a word, reading blocks of the list only when it lands in them
+     */
+    private PostingsIterator getPostings(PageFileChannel listsFileChannel, WordBlock wordBlock) {
+        return this.getPostings(listsFileChannel, null, wordBlock);
+    }
+
+    /**
+     * Get an iterator over the inverted list of a word and its positions
+     *
+     * @param posFileChannel positions file of the segment, null if positions are not needed
+     */
+    private PostingsIterator getPostings(PageFileChannel listsFileChannel, PageFileChannel posFileChannel, WordBlock wordBlock) {
+        return this.getPostings(listsFileChannel, posFileChannel, wordBlock, true);
+    }
+
+    /**
+     * Get an iterator over the inverted list of a word and its positions
+     *
+     * @param cached read pages through the buffer pool, merges read them without caching
+     */
+    private PostingsIterator getPostings(PageFileChannel listsFileChannel, PageFileChannel posFileChannel, WordBlock wordBlock, boolean cached) {
+        long listBlockOffset = (long) wordBlock.listsPageNum * PageFileChannel.PAGE_SIZE + wordBlock.listOffset;
+        PostingsIterator.ListReader positionsReader = posFileChannel == null ? null
+                : (offset, length) -> this.readSlice(posFileChannel, offset, length, cached);
+        return new PostingsIterator(wordBlock, this.compressor,
+                (offset, length) -> this.readSlice(listsFileChannel, listBlockOffset + offset, length, cached), positionsReader);
+    }
+
+    /**
+     * Get inverted list from segment into a reusable list block
+     *
+     * @param cached read pages through the buffer pool, merges read them without caching
+     */
+    private ListBlock getListBlockFromSegment(PageFileChannel listsFileChannel, WordBlock wordBlock, ListBlock listBlock, boolean cached) {
+        if (wordBlock == null) {
+            listBlock.invertedList.clear();
+            listBlock.globalOffsets.clear();
+            listBlock.sizeList.clear();
+            return listBlock;
         }
-        return filteredWordsBlocks;
+
+        // Lists of several blocks are decoded block by block
+        if (wordBlock.skipLength > 0) {
+            this.getPostings(listsFileChannel, null, wordBlock, cached).decodeAll(listBlock);
+            return listBlock;
+        }
+
+        // Read encoded inverted list, global offsets and size list at once
+        int length = wordBlock.listLength + wordBlock.globalOffsetLength + wordBlock.sizeLength;
+        long globalOffset = (long) wordBlock.listsPageNum * PageFileChannel.PAGE_SIZE + wordBlock.listOffset;
+        ByteBuffer bytes = this.readSlice(listsFileChannel, globalOffset, length, cached);
+
+        // Decode inverted list
+        this.compressor.decode(bytes, 0, wordBlock.listLength, listBlock.invertedList);
+        // Decode global offsets
+        this.compressor.decode(bytes, wordBlock.listLength, wordBlock.globalOffsetLength, listBlock.globalOffsets);
+        // Decode size list
+        this.naiveCompressor.decode(bytes, wordBlock.listLength + wordBlock.globalOffsetLength, wordBlock.sizeLength, listBlock.sizeList);
+
+        return listBlock;
     }
 
     /**
      * Performs a single keyword search on the inverted index.
      * You could assume the analyzer won't convert the keyword into multiple tokens.
      * If the keyword is empty, it should not return anything.
+     * <p>
+     * Callers that only need doc ids read them with ResultIterator.nextDocId(), which never opens document stores.
      *
      * @param keyword keyword, cannot be null.
-     * @return a iterator of documents matching the query
+     * @return a lazy iterator of documents matching the query, which must be closed if not read to the end: until
+     * then it keeps its segments open and on disk, even once they are merged away
      */
-    public Iterator<Document> searchQuery(String keyword) {
+    public ResultIterator searchQuery(String keyword) {
         Preconditions.checkNotNull(keyword);
-        ArrayList<Document> doc = new ArrayList<>();
 
-        //1. stemming the keyword
-        List<String> keywords = this.analyzer.analyze(keyword);
-        if (keywords == null || keywords.size() == 0 || keywords.get(0).equals(""))
-            return doc.iterator();
+        String term = this.analyzeKeyword(keyword);
+        if (term == null)
+            return ResultIterator.empty();
 
-        keyword = keywords.get(0);
+        return this.openResult(this.keywordMatcher(term));
+    }
 
-        int i = 0;
-        //traverse all segments
-        while (true) {
-            // the numbers are consecutive thus could stop when i cannot be accessed
-            if (!Files.exists(basePath.resolve("segment" + i + "_words"))) {
-                break;
-            } else {
-                DocumentStore documentStore = getDocumentStore(i, "");
+    /**
+     * Counts documents matching a single keyword, without reading any document.
+     * In segments without deletes the count is the document frequency of the dictionary entry.
+     *
+     * @param keyword keyword, cannot be null.
+     * @return number of documents searchQuery() would return
+     */
+    public int countQuery(String keyword) {
+        Preconditions.checkNotNull(keyword);
+
+        String term = this.analyzeKeyword(keyword);
+        if (term == null)
+            return 0;
+
+        return this.countMatches((SegmentReader segment, LiveDocs liveDocs) -> {
+            List<WordBlock> wordBlocks = this.getWordBlocksOfAll(segment, Collections.singletonList(term));
+            if (wordBlocks == null) {
+                return 0;
+            }
+            // No list is read if nothing in the segment is deleted
+            if (!liveDocs.hasDeletions()) {
+                return wordBlocks.get(0).getNumDocuments();
+            }
+            return this.countLive(this.getPostings(segment.listsChannel, wordBlocks.get(0))::nextDoc, liveDocs);
+        });
+    }
 
-                // Read word list
-                PageFileChannel wordsChannel = getSegmentChannel(i, "words");
-                PageFileChannel listChannel = getSegmentChannel(i, "lists");
+    /**
+     * Performs an AND boolean search on the inverted index.
+     *
+     * @param keywords a list of keywords in the AND query
+     * @return a lazy iterator of documents matching the query, which must be closed if not read to the end: until
+     * then it keeps its segments open and on disk, even once they are merged away
+     */
+    public ResultIterator searchAndQuery(List<String> keywords) {
+        Preconditions.checkNotNull(keywords);
+
+        List<String> analyzed = this.analyzeAndKeywords(keywords);
+        if (analyzed.size() == 0)
+            return ResultIterator.empty();
 
-                // Get all word blocks
-                List<WordBlock> words = this.getWordBlocksFromSegment(wordsChannel, i);
-                // Filter word blocks
-                List<WordBlock> filteredWords = this.filterWordBlock(words, Arrays.asList(keyword));
-                filteredWords = this.filterDeletedWordBlocks(filteredWords);
+        // Intersect the lists of each segment as the caller moves forward
+        return this.openResult(this.andMatcher(analyzed));
+    }
 
-                for (WordBlock wordBlock : filteredWords) {
-                    ListBlock listBlock = this.getListBlockFromSegment(listChannel, wordBlock);
+    /**
+     * Counts documents matching an AND query from the inverted lists, without reading any document.
+     * Lists that are all dense in a segment are intersected as bitmaps.
+     *
+     * @param keywords a list of keywords in the AND query
+     * @return number of documents searchAndQuery() would return
+     */
+    public int countAndQuery(List<String> keywords) {
+        Preconditions.checkNotNull(keywords);
 
-                    for (int docId : listBlock.invertedList) {
-                        doc.add(documentStore.getDocument(docId));
-                    }
-                }
+        List<String> analyzed = this.analyzeAndKeywords(keywords);
+        if (analyzed.size() == 0)
+            return 0;
 
-                listChannel.close();
-                wordsChannel.close();
-                documentStore.close();
+        return this.countMatches((SegmentReader segment, LiveDocs liveDocs) -> {
+            List<WordBlock> wordBlocks = this.getWordBlocksOfAll(segment, analyzed);
+            if (wordBlocks == null) {
+                return 0;
             }
-            i++;
-        }
+            if (wordBlocks.size() == 1 && !liveDocs.hasDeletions()) {
+                return wordBlocks.get(0).getNumDocuments();
+            }
+            List<PostingsIterator> postings = this.getPostingsByRarity(segment.listsChannel, null, wordBlocks);
+            // The rarest list is the first one, others are at least as dense
+            if (this.isDense(segment, postings.get(0).getWordBlock())) {
+                return this.countLive(this.getDocBits(postings, segment.info.numDocuments, true), liveDocs);
+            }
+            return this.countLive(() -> this.nextCommonDoc(postings), liveDocs);
+        });
+    }
+
+    /**
+     * Performs an OR boolean search on the inverted index.
+     *
+     * @param keywords a list of keywords in the OR query
+     * @return a lazy iterator of documents matching the query, which must be closed if not read to the end: until
+     * then it keeps its segments open and on disk, even once they are merged away
+     */
+    public ResultIterator searchOrQuery(List<String> keywords) {
+        Preconditions.checkNotNull(keywords);
 
-        return doc.iterator();
+        List<String> analyzed = this.analyzeOrKeywords(keywords);
+        // If analyze is empty, return
+        if (analyzed.size() == 0) {
+            return ResultIterator.empty();
+        }
 
+        // Union the lists of each segment with a heap, documents are read as the caller moves forward
+        return this.openResult(this.orMatcher(analyzed));
     }
 
     /**
-     * Performs an AND boolean search on the inverted index.
+     * Counts documents matching an OR query from the inverted lists, without reading any document.
+     * If any list is dense in a segment, the lists are united as a bitmap instead of through a heap.
      *
-     * @param keywords a list of keywords in the AND query
-     * @return a iterator of documents matching the query
+     * @param keywords a list of keywords in the OR query
+     * @return number of documents searchOrQuery() would return
      */
-    public Iterator<Document> searchAndQuery(List<String> keywords) {
+    public int countOrQuery(List<String> keywords) {
         Preconditions.checkNotNull(keywords);
 
-        ArrayList<Document> doc = new ArrayList<>();
-        //analyze key words
-        ArrayList<String> analyzed = new ArrayList<>();
-        for (String keyword : keywords) {
-            List<String> result = this.analyzer.analyze(keyword);
-            if (result != null && result.size() > 0 && !result.get(0).equals(""))
-                analyzed.addAll(result);
-            else
-                return doc.iterator();
+        List<String> analyzed = this.analyzeOrKeywords(keywords);
+        if (analyzed.size() == 0) {
+            return 0;
         }
 
-        int i = 0;
-        //traverse all segments
-        while (true) {
-            if (!Files.exists(basePath.resolve("segment" + i + "_words"))) {
-                break;
-            } else {
-                //open docDB for this segment
-                DocumentStore documentStore = this.getDocumentStore(i, "");
+        return this.countMatches((SegmentReader segment, LiveDocs liveDocs) -> {
+            List<WordBlock> wordBlocks = this.getWordBlocksFromSegment(segment.wordsChannel, segment.info.id, analyzed);
+            if (wordBlocks.isEmpty()) {
+                return 0;
+            }
+            if (wordBlocks.size() == 1 && !liveDocs.hasDeletions()) {
+                return wordBlocks.get(0).getNumDocuments();
+            }
+            boolean dense = false;
+            List<PostingsIterator> postings = new ArrayList<>(wordBlocks.size());
+            for (WordBlock wordBlock : wordBlocks) {
+                dense = dense || this.isDense(segment, wordBlock);
+                postings.add(this.getPostings(segment.listsChannel, wordBlock));
+            }
+            if (dense) {
+                return this.countLive(this.getDocBits(postings, segment.info.numDocuments, false), liveDocs);
+            }
+            return this.countLive(new DisjunctionIterator(postings)::nextDoc, liveDocs);
+        });
+    }
 
-                // Read word list: only read those in analyzed lists
-                PageFileChannel wordsChannel = this.getSegmentChannel(i, "words");
+    /**
+     * Performs a phrase search on a positional index.
+     * Phrase search means the document must contain the consecutive sequence of keywords in exact order.
+     * <p>
+     * You could assume the analyzer won't convert each keyword into multiple tokens.
+     * Throws UnsupportedOperationException if the inverted index is not a positional index.
+     *
+     * @param phrase, a consecutive sequence of keywords
+     * @return a lazy iterator of documents matching the query, which must be closed if not read to the end: until
+     * then it keeps its segments open and on disk, even once they are merged away
+     */
+    public ResultIterator searchPhraseQuery(List<String> phrase) {
+        if (this.supportPosition == false)
+            throw new UnsupportedOperationException();
 
-                // Get all word blocks
-                List<WordBlock> wordBlocks = this.getWordBlocksFromSegment(wordsChannel, i);
+        Preconditions.checkNotNull(phrase);
 
-                // Filter word blocks
-                List<WordBlock> filteredWordBlocks = this.filterWordBlock(wordBlocks, analyzed);
-                filteredWordBlocks = this.filterDeletedWordBlocks(filteredWordBlocks);
+        // Analyze phrase words
+        ArrayList<String> analyzed = this.getAnalyzed(phrase);
 
-                // And query exists some words not in this segment
-                if (filteredWordBlocks.size() != analyzed.size()) {
-                    documentStore.close();
-                    wordsChannel.close();
-                    i++;
-                    continue;
-                }
+        // Return null if no words left.
+        if (analyzed.size() == 0)
+            return ResultIterator.empty();
 
-                // Retrieve the lists and merge with basic
-                ArrayList<Integer> intersection = null;
-                // Sort the words' list ; merge the list from short list to longer list
-                filteredWordBlocks.sort(Comparator.comparingInt(o -> o.listLength));
-
-                PageFileChannel listChannel = getSegmentChannel(i, "lists");
-                for (WordBlock wordBlock : filteredWordBlocks) {
-                    // Get inverted list
-                    ListBlock listBlock = this.getListBlockFromSegment(listChannel, wordBlock);
-
-                    if (intersection == null) {
-                        intersection = new ArrayList<>(listBlock.invertedList);
-                    } else {
-                        // Find intersection: by binary search
-                        ArrayList<Integer> result = new ArrayList<>();
-                        // Lowerbound for list being searched; the ids are sorted in posting list
-                        int lowbound = 0;
-                        for (Integer target : intersection) {
-                            int left = lowbound, right = listBlock.invertedList.size() - 1;
-                            while (left < right) {
-                                int mid = (left + right) / 2;
-                                //Integer comparision
-                                if (listBlock.invertedList.get(mid).compareTo(target) < 0)
-                                    left = mid + 1;
-                                else    //postList[mid] >= target
-                                    right = mid;
-                            }
-                            // Equals: add the number to new ArrayList
-                            if (listBlock.invertedList.get(right).compareTo(target) == 0) {
-                                result.add(target);
-                                lowbound = right + 1;   //raise the search range's lower bound
-                            }
-                        }
-                        // Update intersection
-                        intersection = result;
-                    }
-                }
-                //read doc
-                for (int docId : intersection) {
-                    doc.add(documentStore.getDocument(docId));
-                }
-                documentStore.close();
-                wordsChannel.close();
-                listChannel.close();
-            }
-            i++;
+        // Match the phrase in each segment as the caller moves forward
+        return this.openResult(this.phraseMatcher(analyzed));
+    }
+
+    /**
+     * Counts documents matching a phrase on a positional index, without reading any document.
+     * Throws UnsupportedOperationException if the inverted index is not a positional index.
+     *
+     * @param phrase, a consecutive sequence of keywords
+     * @return number of documents searchPhraseQuery() would return
+     */
+    public int countPhraseQuery(List<String> phrase) {
+        if (this.supportPosition == false)
+            throw new UnsupportedOperationException();
+
+        Preconditions.checkNotNull(phrase);
+
+        ArrayList<String> analyzed = this.getAnalyzed(phrase);
+        if (analyzed.size() == 0)
+            return 0;
+
+        ResultIterator.MatcherFactory matcherFactory = this.phraseMatcher(analyzed);
+        return this.countMatches((SegmentReader segment, LiveDocs liveDocs) -> {
+            IntSupplier matcher = matcherFactory.open(segment, liveDocs);
+            return matcher == null ? 0 : this.countLive(matcher, liveDocs);
+        });
+    }
+
+    /**
+     * Analyze the keyword of a single keyword query
+     *
+     * @return the term, null if nothing is left
+     */
+    private String analyzeKeyword(String keyword) {
+        List<String> keywords = this.analyzer.analyze(keyword);
+        if (keywords == null || keywords.size() == 0 || keywords.get(0).equals(""))
+            return null;
+        return keywords.get(0);
+    }
+
+    /**
+     * Analyze keywords of an AND query
+     *
+     * @return the terms, empty if any keyword has nothing left since no document could match
+     */
+    private List<String> analyzeAndKeywords(List<String> keywords) {
+        ArrayList<String> analyzed = new ArrayList<>();
+        for (String keyword : keywords) {
+            List<String> result = this.analyzer.analyze(keyword);
+            if (result != null && result.size() > 0 && !result.get(0).equals(""))
+                analyzed.addAll(result);
+            else
+                return Collections.emptyList();
         }
-
-        return doc.iterator();
+        return analyzed;
     }
 
     /**
-     * Performs an OR boolean search on the inverted index.
-     *
-     * @param keywords a list of keywords in the OR query
-     * @return a iterator of documents matching the query
+     * Analyze keywords of an OR query, keywords with nothing left are dropped
      */
-    public Iterator<Document> searchOrQuery(List<String> keywords) {
-        Preconditions.checkNotNull(keywords);
-
-        List<Document> doc = new ArrayList<>();
-        // Analyze key words
+    private List<String> analyzeOrKeywords(List<String> keywords) {
         List<String> analyzed = new ArrayList<>();
         for (String keyword : keywords) {
             analyzed.addAll(this.analyzer.analyze(keyword));
         }
 
         // Filter empty string
-        analyzed = analyzed.stream()
+        return analyzed.stream()
                 .filter((String keyword) -> !keyword.equals(""))
                 .collect(Collectors.toList());
+    }
 
-        // If analyze is empty, return
-        if (analyzed.size() == 0) {
-            return doc.iterator();
+    /**
+     * Look up word blocks of all terms in a segment
+     *
+     * @return the word blocks, null if some term is not in the segment
+     */
+    private List<WordBlock> getWordBlocksOfAll(SegmentReader segment, List<String> terms) {
+        // Some words surely not in this segment
+        if (!this.mightContainAll(segment, terms)) {
+            return null;
         }
 
-        int i = 0;
-        while (true) {
-            if (!Files.exists(basePath.resolve("segment" + i + "_words"))) {
-                break;
-            } else {
-                //open docDB for this segment
-                DocumentStore documentStore = this.getDocumentStore(i, "");
-
-                //1. read word list of segment
-                PageFileChannel wordsChannel = this.getSegmentChannel(i, "words");
-
-                // Get word blocks
-                List<WordBlock> wordBlocks = this.getWordBlocksFromSegment(wordsChannel, i);
+        // Look up word blocks: only read those in analyzed lists
+        List<WordBlock> wordBlocks = this.getWordBlocksFromSegment(segment.wordsChannel, segment.info.id, terms);
 
-                // Filter word blocks
-                List<WordBlock> filteredWordBlocks = this.filterWordBlock(wordBlocks, analyzed);
-                filteredWordBlocks = this.filterDeletedWordBlocks(filteredWordBlocks);
-
-                // Retrieve the lists and merge with basic
-                TreeSet<Integer> union = new TreeSet<>();
-                PageFileChannel listChannel = this.getSegmentChannel(i, "lists");
-                for (WordBlock wordBlock : filteredWordBlocks) {
-                    // Get inverted list
-                    ListBlock listBlock = this.getListBlockFromSegment(listChannel, wordBlock);
-
-                    // Use set to do union
-                    union.addAll(listBlock.invertedList);
-                }
-
-                // Retrieve the documents to List<Document>
-                for (int docId : union) {
-                    doc.add(documentStore.getDocument(docId));
-                }
-
-                // Close channels
-                listChannel.close();
-                wordsChannel.close();
-                documentStore.close();
-            }
-            i++;
+        // Some words are not in this segment
+        if (wordBlocks.size() != new HashSet<>(terms).size()) {
+            return null;
         }
-        return doc.iterator();
+        return wordBlocks;
     }
 
     /**
-     * Performs a phrase search on a positional index.
-     * Phrase search means the document must contain the consecutive sequence of keywords in exact order.
-     * <p>
-     * You could assume the analyzer won't convert each keyword into multiple tokens.
-     * Throws UnsupportedOperationException if the inverted index is not a positional index.
-     *
-     * @param phrase, a consecutive sequence of keywords
-     * @return a iterator of documents matching the query
+     * Matcher of the documents containing a term
      */
-    public Iterator<Document> searchPhraseQuery(List<String> phrase) {
-        if (this.supportPosition == false)
-            throw new UnsupportedOperationException();
-
-        Preconditions.checkNotNull(phrase);
-
-        List<Document> documents = new ArrayList<>();
-
-        // Analyze phrase words
-        ArrayList<String> analyzed = this.getAnalyzed(phrase);
-
-        // Return null if no words left.
-        if (analyzed.size() == 0)
-            return documents.iterator();
+    private ResultIterator.MatcherFactory keywordMatcher(String term) {
+        return (SegmentReader segment, LiveDocs liveDocs) -> {
+            List<WordBlock> wordBlocks = this.getWordBlocksOfAll(segment, Collections.singletonList(term));
+            if (wordBlocks == null) {
+                return null;
+            }
+            return this.getPostings(segment.listsChannel, wordBlocks.get(0))::nextDoc;
+        };
+    }
 
-        int i = 0;
-        // Traverse all segments
-        while (true) {
-            if (!Files.exists(basePath.resolve("segment" + i + "_words"))) {
-                break;
-            } else {
-                //open docDB for this segment
-                DocumentStore documentStore = this.getDocumentStore(i, "");
+    /**
+     * Matcher of the documents containing all terms
+     */
+    private ResultIterator.MatcherFactory andMatcher(List<String> terms) {
+        return (SegmentReader segment, LiveDocs liveDocs) -> {
+            List<WordBlock> wordBlocks = this.getWordBlocksOfAll(segment, terms);
+            if (wordBlocks == null) {
+                return null;
+            }
 
-                // Read word list: only read those in analyzed lists
-                PageFileChannel wordsChannel = this.getSegmentChannel(i, "words");
+            // Leapfrog over the lists, skipping blocks of longer lists that the rarest list jumps over
+            List<PostingsIterator> postings = this.getPostingsByRarity(segment.listsChannel, null, wordBlocks);
+            return () -> this.nextCommonDoc(postings);
+        };
+    }
 
-                // Get all word blocks
-                List<WordBlock> wordBlocks = this.getWordBlocksFromSegment(wordsChannel, i);
+    /**
+     * Matcher of the documents containing any of the terms
+     */
+    private ResultIterator.MatcherFactory orMatcher(List<String> terms) {
+        return (SegmentReader segment, LiveDocs liveDocs) -> {
+            List<WordBlock> wordBlocks = this.getWordBlocksFromSegment(segment.wordsChannel, segment.info.id, terms);
+            if (wordBlocks.isEmpty()) {
+                return null;
+            }
+            List<PostingsIterator> postings = new ArrayList<>(wordBlocks.size());
+            for (WordBlock wordBlock : wordBlocks) {
+                postings.add(this.getPostings(segment.listsChannel, wordBlock));
+            }
+            return new DisjunctionIterator(postings)::nextDoc;
+        };
+    }
 
-                // Filter word blocks
-                List<WordBlock> filteredWordBlocks = this.filterWordBlock(wordBlocks, analyzed);
-                filteredWordBlocks = this.filterDeletedWordBlocks(filteredWordBlocks);
+    /**
+     * Matcher of the documents containing the terms as a phrase
+     */
+    private ResultIterator.MatcherFactory phraseMatcher(List<String> terms) {
+        return (SegmentReader segment, LiveDocs liveDocs) -> {
+            List<WordBlock> wordBlocks = this.getWordBlocksOfAll(segment, terms);
+            if (wordBlocks == null) {
+                return null;
+            }
 
-                // Jump to next round if Phrase exists some words not in this segment
-                if (filteredWordBlocks.size() != analyzed.size()) {
-                    documentStore.close();
-                    wordsChannel.close();
-                    i++;
-                    continue;
+            // 2. Intersect the lists, the iterators of all words stay on each doc id in the intersection
+            List<PostingsIterator> postings = this.getPostingsByRarity(segment.listsChannel, segment.positionsChannel, wordBlocks);
+            // Iterator of each phrase word
+            PostingsIterator[] phrasePostings = new PostingsIterator[terms.size()];
+            for (int i = 0; i < terms.size(); i++) {
+                for (PostingsIterator postingsIterator : postings) {
+                    if (postingsIterator.getWordBlock().word.equals(terms.get(i))) {
+                        phrasePostings[i] = postingsIterator;
+                    }
                 }
+            }
 
-                // 2. Use And Method to get a docID list
-                // Retrieve the lists and merge with basic
-                ArrayList<Integer> intersection = null;
-
-                // Sort the words' list ; merge the list from short list to longer list
-                filteredWordBlocks.sort(Comparator.comparingInt(o -> o.listLength));
-                PageFileChannel listChannel = getSegmentChannel(i, "lists");
-                for (WordBlock wordBlock : filteredWordBlocks) {
-                    // Get inverted list
-                    ListBlock listBlock = this.getListBlockFromSegment(listChannel, wordBlock);
-                    List<Integer> invertedList = listBlock.invertedList;
-
-                    if (intersection == null) {
-                        intersection = new ArrayList<>(invertedList);
-                    } else {
-                        // Find intersection: by binary search
-                        ArrayList<Integer> result = new ArrayList<>();
-                        // Lowerbound for list being searched; the ids are sorted in posting list
-                        int lowbound = 0;
-                        for (Integer target : intersection) {
-                            int left = lowbound, right = invertedList.size() - 1;
-                            while (left < right) {
-                                int mid = (left + right) / 2;
-                                //Integer comparision
-                                if (invertedList.get(mid).compareTo(target) < 0)
-                                    left = mid + 1;
-                                else    //postList[mid] >= target
-                                    right = mid;
-                            }
-                            // Equals: add the number to new ArrayList
-                            if (invertedList.get(right).compareTo(target) == 0) {
-                                result.add(target);
-                                lowbound = right + 1;   //raise the search range's lower bound
-                            }
+            // 3. Check if docId has valid phrases
+            // Position lists and cursors of the phrase words, reused for each document
+            IntList[] positionLists = new IntList[terms.size()];
+            int[] positionCursors = new int[terms.size()];
+            return () -> {
+                for (int docId = this.nextCommonDoc(postings); docId != PostingsIterator.NO_MORE_DOCS; docId = this.nextCommonDoc(postings)) {
+                    // Deleted documents need no position check
+                    if (!liveDocs.isLive(docId)) {
+                        continue;
+                    }
+                    // Positions of each word in this docId, words without positions (which is impossible but just in case) are left out
+                    int numLists = 0;
+                    for (PostingsIterator postingsIterator : phrasePostings) {
+                        IntList positions = postingsIterator.positions();
+                        if (positions.size() > 0) {
+                            positionLists[numLists++] = positions;
                         }
-                        // Update intersection
-                        intersection = result;
+                    }
+                    if (numLists > 0 && this.matchPhrase(positionLists, positionCursors, numLists)) {
+                        return docId;
                     }
                 }
+                return PostingsIterator.NO_MORE_DOCS;
+            };
+        };
+    }
 
-                // 3. Validate processed docID
-                if (intersection == null) {
-                    documentStore.close();
-                    wordsChannel.close();
-                    listChannel.close();
-                    return documents.iterator();
-                }
-                // Organize words into Hashmap. ensure the sequence of words in phrase
-                Map<String, WordBlock> filteredWordBlocksMap = new HashMap<>();
-                for (WordBlock wordBlock : filteredWordBlocks) {
-                    filteredWordBlocksMap.put(wordBlock.word, wordBlock);
-                }
+    /**
+     * Sum counts of all segments of the current reader
+     *
+     * @param counter counts matches in a segment, given its documents not deleted as seen by the reader
+     */
+    private int countMatches(ToIntBiFunction<SegmentReader, LiveDocs> counter) {
+        IndexReader reader = this.acquireReader();
+        try {
+            int count = 0;
+            for (int segmentCount : this.forEachSegment(reader, counter::applyAsInt)) {
+                count += segmentCount;
+            }
+            return count;
+        } finally {
+            reader.decRef();
+        }
+    }
 
-                // Check if docId has valid phrases
-                PageFileChannel positionalChannel = this.getSegmentChannel(i, "positions");
-                List<Integer> validDocIds = new ArrayList<>();
-                for (Integer docId : intersection) {
-                    // Store current valid phrase positions
-                    List<Integer> validPosition = null;
-                    // For each word, find the docId's positional list
-                    for (String word : analyzed) {
-                        ListBlock listBlock = this.getListBlockFromSegment(listChannel, filteredWordBlocksMap.get(word));
-
-                        // Read position list for this word in this docId
-                        List<Integer> offsetList = listBlock.globalOffsets;
-                        int index = listBlock.invertedList.indexOf(docId);
-                        List<Integer> position = this.getPositionList(positionalChannel, offsetList, index);
-
-                        // Continue If no position in this document( which is impossible but just in case)
-                        if (position == null || position.size() == 0)
-                            continue;
-
-                        // Update validPosition
-                        if (validPosition == null)
-                            validPosition = new ArrayList<>(position);
-                        else {
-                            List<Integer> newValid = new ArrayList<>();
-                            int leftBound = 0;
-                            // find every pair of consecutive position
-                            for (int positionA : validPosition) {    // positionA : previous word
-                                // Binary search
-                                int left = leftBound, right = position.size() - 1;
-                                while (left < right) {
-                                    int mid = (left + right + 1) / 2; //right bias
-                                    if (position.get(mid) <= positionA) {
-                                        left = mid;
-                                    } else {
-                                        right = mid - 1;
-                                    }
-                                }
-                                // Add valid position
-                                if (left == leftBound && position.get(left) == positionA + 1) {
-                                    newValid.add(position.get(left));
-                                    leftBound = left;
-                                } else if (left < position.size() - 1 && position.get(left + 1) == positionA + 1) {  //position.get(left) <= A
-                                    newValid.add(position.get(left + 1));
-                                    leftBound = left + 1;
-                                } else {
-                                    if (position.get(left) <= positionA)
-                                        leftBound += 1;
-                                }
-                            }
-                            // update the positions
-                            validPosition = newValid;
-                        }
-                        // Break check loop for this docID when no valid position remains
-                        if (validPosition.size() == 0)
-                            break;
-                    }
+    /**
+     * Run a task on each segment of a reader, in parallel on the query pool if there is one
+     *
+     * @param task given a segment and its documents not deleted as seen by the reader
+     * @return results in segment order
+     */
+    private <T> List<T> forEachSegment(IndexReader reader, BiFunction<SegmentReader, LiveDocs, T> task) {
+        return this.forEachSegment(reader, this.queryPool, task);
+    }
 
-                    if (validPosition != null && validPosition.size() > 0)
-                        validDocIds.add(docId);
-                }
+    /**
+     * Run a task on each segment of a reader, in parallel on the given query pool if it is not null
+     */
+    private <T> List<T> forEachSegment(IndexReader reader, ForkJoinPool queryPool, BiFunction<SegmentReader, LiveDocs, T> task) {
+        List<T> results = new ArrayList<>(reader.segments.size());
+        if (queryPool == null) {
+            for (SegmentReader segment : reader.segments) {
+                results.add(task.apply(segment, reader.getLiveDocs(segment.info.id)));
+            }
+            return results;
+        }
 
-                //read doc
-                for (int docId : validDocIds) {
-                    documents.add(documentStore.getDocument(docId));
-                }
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(reader.segments.size());
+        try {
+            for (SegmentReader segment : reader.segments) {
+                LiveDocs liveDocs = reader.getLiveDocs(segment.info.id);
+                tasks.add(queryPool.submit(() -> task.apply(segment, liveDocs)));
+            }
+            for (ForkJoinTask<T> segmentTask : tasks) {
+                results.add(segmentTask.join());
+            }
+        } finally {
+            // The reader must not be released while some task still reads its segments
+            for (ForkJoinTask<T> segmentTask : tasks) {
+                segmentTask.quietlyJoin();
+            }
+        }
+        return results;
+    }
 
-                documentStore.close();
-                wordsChannel.close();
-                listChannel.close();
-                positionalChannel.close();
+    /**
+     * Count doc ids of a matcher that are not deleted
+     */
+    private int countLive(IntSupplier matcher, LiveDocs liveDocs) {
+        int count = 0;
+        for (int docId = matcher.getAsInt(); docId != PostingsIterator.NO_MORE_DOCS; docId = matcher.getAsInt()) {
+            if (liveDocs.isLive(docId)) {
+                count++;
             }
-            i++;
         }
+        return count;
+    }
 
-        return documents.iterator();
+    /**
+     * Count doc ids of a bitmap that are not deleted
+     */
+    private int countLive(BitSet docs, LiveDocs liveDocs) {
+        liveDocs.clearDeleted(docs);
+        return docs.cardinality();
+    }
+
+    /**
+     * Whether the list of a word block has at least one document in DENSE_LIST_RATIO of its segment
+     */
+    private boolean isDense(SegmentReader segment, WordBlock wordBlock) {
+        return (long) wordBlock.getNumDocuments() * DENSE_LIST_RATIO >= segment.info.numDocuments;
+    }
+
+    /**
+     * Decode lists into one bitmap of doc ids
+     *
+     * @param all true for doc ids in all lists, false for doc ids in any list
+     */
+    private BitSet getDocBits(List<PostingsIterator> postings, int numDocuments, boolean all) {
+        BitSet result = new BitSet(numDocuments);
+        // Lists of an intersection after the first are decoded apart, then kept where already in the result
+        BitSet bits = all ? new BitSet(numDocuments) : result;
+        for (int i = 0; i < postings.size(); i++) {
+            PostingsIterator postingsIterator = postings.get(i);
+            BitSet target = i == 0 ? result : bits;
+            if (all && i > 0) {
+                bits.clear();
+            }
+            for (int docId = postingsIterator.nextDoc(); docId != PostingsIterator.NO_MORE_DOCS; docId = postingsIterator.nextDoc()) {
+                target.set(docId);
+            }
+            if (all && i > 0) {
+                result.and(bits);
+            }
+        }
+        return result;
     }
 
     /**
@@ -1281,6 +2109,8 @@ public class InvertedIndexManager {
      * <p>
      * Each element is a pair of <Document, Double (TF-IDF Score)>.
      * <p>
+     * Scores are given by the similarity of the index, TF-IDF unless another one is set by setSimilarity().
+     * <p>
      * If parameter `topK` is null, then returns all the matching documents.
      * <p>
      * Unlike Boolean Query and Phrase Query where order of the documents doesn't matter,
@@ -1290,39 +2120,51 @@ public class InvertedIndexManager {
      * @return a iterator of ordered documents matching the query
      */
     public Iterator<Pair<Document, Double>> searchTfIdf(List<String> keywords, Integer topK) {
-        PriorityQueue<Pair<Double, DocID>> priorityQueue = new PriorityQueue<>((o1, o2) -> {
-            double res = o1.getLeft() - o2.getLeft();
-            if (res == 0)
-                return 0;
-            else return res > 0 ? 1 : -1;   // Make head of queue always the smallest element
-        });
+        // Head of heap is always the smallest score. It is the reusable heap of this thread, unless segments are scored
+        // on the query pool: while joining them the thread may run tasks of other queries, and so reset its heap
+        ForkJoinPool queryPool = this.queryPool;
+        ScoreHeap scoreHeap = queryPool == null ? this.scoreHeap.get() : new ScoreHeap();
+        scoreHeap.reset(topK);
 
         // Analyze phrase words
         ArrayList<String> analyzed = this.getAnalyzed(keywords);
         Set<String> uniqueTerms = new HashSet<>(analyzed);
 
-        // Pass 1: get each word's document frequency; and overall document num
-        Map<String, Integer> documentFrequency = new HashMap<>();    // Map(word, documentAmount)
-        int globalDocNum = this.tfidfPass1(uniqueTerms,documentFrequency);
+        // All passes read the same segments
+        IndexReader reader = this.acquireReader();
+        try {
+            // Term statistics: overall document num and length from segment metadata, each word's document frequency from the dictionary of each segment
+            int globalDocNum = reader.getNumDocuments();
+            double averageLength = reader.getAverageLength();
+            Map<String, Integer> queryFrequency = new HashMap<>();    // Map(word, occurrences in query)
+            for (String term : analyzed) {
+                queryFrequency.merge(term, 1, Integer::sum);
+            }
 
-        // Part 1.5: Calculate query's tf-idf vector
-        Map<String, Double> queryVector = new HashMap<>();    // Map < term, tfidf >
-        for (String term : analyzed) {
-            double origin = queryVector.getOrDefault(term, 0.0);     // Get oldVal : Term may duplicates
-            double newVal = origin + globalDocNum / (double) documentFrequency.getOrDefault(term, 0);  // usually doc freq is not 0
-            queryVector.put(term, newVal);
-        }
+            // Part 1.5: Build scorer of each term, weights constant for the query are computed once here
+            Similarity similarity = this.similarity;
+            Map<String, Similarity.TermScorer> scorers = new HashMap<>();
+            for (String term : uniqueTerms) {
+                int documentFrequency = reader.getDocumentFrequency(term, this::countDocumentFrequency);
+                // Words in no segment score nothing
+                if (documentFrequency > 0) {
+                    scorers.put(term, similarity.scorer(queryFrequency.get(term), documentFrequency, globalDocNum, averageLength));
+                }
+            }
 
-        // Pass 2: get each doc's term frequency, get tf-idf, then multiply with queue vector element by element and do cumulation
-        tfidfPass2(uniqueTerms,globalDocNum, documentFrequency, queryVector, priorityQueue, topK);
+            // Score: get each doc's term frequency and length, then sum up parts of its terms
+            this.scoreDocuments(reader, queryPool, similarity, scorers, averageLength, scoreHeap);
 
-        // End 3: Get ordered docIDs from PriorityQueue heap
-        List<Pair<Double, DocID>> topDocs = this.priorityQueue2OrderedList(priorityQueue,topK);
+            // End 3: Order documents in heap by score
+            scoreHeap.sortDescending();
 
-        // End 4: Read Documents from stores
-        List<Pair<Document, Double>> result = this.retrieveScoredDocuments(topDocs);
+            // End 4: Read Documents from stores
+            List<Pair<Document, Double>> result = this.retrieveScoredDocuments(reader, scoreHeap);
 
-        return result.iterator();
+            return result.iterator();
+        } finally {
+            reader.decRef();
+        }
     }
 
     /**
@@ -1341,149 +2183,200 @@ public class InvertedIndexManager {
         return analyzed;
     }
 
-    /** Accumulate words' document Frequency through all segments
-     * used by search TfIdf
-     * Words are analyzed
-     * @param uniqueTerms
-     * @param documentFrequency
-     * @return totalDocNum
+    /**
+     * Count documents containing an analyzed word in a segment, from its dictionary entry only
      */
-    private int tfidfPass1(Set<String> uniqueTerms, Map<String, Integer> documentFrequency ){
-        int totalDocNum = 0;
-        int segNum = 0;
-        while (true) {
-            if (!Files.exists(basePath.resolve("segment" + segNum + "_words"))) {
-                break;
-            } else {
-                totalDocNum += this.getNumDocuments(segNum);
-                // Open words list, search word
-                PageFileChannel wordPage = this.getSegmentChannel(segNum, "words");
-                PageFileChannel listPage = this.getSegmentChannel(segNum, "lists");
-
-                List<WordBlock> wordBlockList = this.getWordBlocksFromSegment(wordPage, segNum);
-                // For analyzed words : accumulate document size.
-                for (WordBlock wordBlock : wordBlockList) {
-                    if (uniqueTerms.contains(wordBlock.word)) {
-                        ListBlock listBlock = this.getListBlockFromSegment(listPage, wordBlock);
-                        int originDocNum = documentFrequency.getOrDefault(wordBlock.word, 0);
-                        documentFrequency.put(wordBlock.word, originDocNum + listBlock.invertedList.size());
-                    }
+    private int countDocumentFrequency(SegmentReader segment, String term) {
+        // Words surely not in this segment need no lookup
+        if (!segment.meta.mightContain(term)) {
+            return 0;
+        }
+        WordBlock wordBlock = this.getWordBlockFromSegment(segment.wordsChannel, segment.info.id, term);
+        return wordBlock == null ? 0 : wordBlock.getNumDocuments();
+    }
+
+    /** Score documents one at a time over the lists of all terms, keeping the best in the score heap.
+     * A document containing some terms scores at most the similarity's bound over their max scores.
+     * Once the heap is full, the terms with the smallest max scores whose bound can't beat the heap's
+     * smallest score are optional (MaxScore): candidates only come from the other lists, optional lists
+     * are advanced to them, skipping their blocks in between.
+     * With a query pool, segments are scored in parallel into heaps of their own, merged afterwards.
+     * Used by searchTfIdf
+     * @param reader
+     * @param queryPool pool scoring segments in parallel, null to score them in this thread
+     * @param similarity
+     * @param termScorers scorer of each term found in the index
+     * @param averageLength length of documents of segments without norms
+     * @param scoreHeap
+     */
+    private void scoreDocuments(IndexReader reader,
+                                ForkJoinPool queryPool,
+                                Similarity similarity,
+                                Map<String, Similarity.TermScorer> termScorers,
+                                double averageLength,
+                                ScoreHeap scoreHeap)
+    {
+        int defaultLength = (int) Math.round(averageLength);
+        if (queryPool == null) {
+            ScoreBuffers buffers = this.scoreBuffers.get();
+            buffers.ensureCapacity(termScorers.size());
+            try {
+                for (SegmentReader segment : reader.segments) {
+                    LiveDocs liveDocs = reader.getLiveDocs(segment.info.id);
+                    this.scoreSegment(segment, liveDocs, similarity, termScorers, defaultLength, buffers, scoreHeap);
                 }
-                // close pages.
-                wordPage.close();
-                listPage.close();
+            } finally {
+                buffers.clear();
+            }
+            return;
+        }
+
+        // Each segment keeps its own best documents, merged in segment order so that the result doesn't depend on scheduling
+        List<ScoreHeap> segmentHeaps = this.forEachSegment(reader, queryPool, (SegmentReader segment, LiveDocs liveDocs) -> {
+            ScoreHeap segmentHeap = new ScoreHeap();
+            segmentHeap.reset(scoreHeap.getMaxSize());
+            ScoreBuffers buffers = new ScoreBuffers();
+            buffers.ensureCapacity(termScorers.size());
+            this.scoreSegment(segment, liveDocs, similarity, termScorers, defaultLength, buffers, segmentHeap);
+            return segmentHeap;
+        });
+        for (ScoreHeap segmentHeap : segmentHeaps) {
+            for (int i = 0; i < segmentHeap.size(); i++) {
+                scoreHeap.offer(segmentHeap.getScore(i), segmentHeap.getSegmentId(i), segmentHeap.getDocId(i));
             }
-            segNum++;
         }
-        return totalDocNum;
     }
 
-    /** Pass 2: Get each doc's term frequency, get tf-idf,
-     *          Then multiply with queue vector element by element and do cumulation
-     * Used by searchTfIdf
-     * @param uniqueTerms
-     * @param globalDocNum
-     * @param documentFrequency
-     * @param queryVector
-     * @param priorityQueue
-     * @param topK
-     */
-    private void tfidfPass2(Set<String> uniqueTerms,
-                            int globalDocNum,
-                            Map<String, Integer> documentFrequency,
-                            Map<String, Double> queryVector,
-                            PriorityQueue<Pair<Double, DocID>> priorityQueue,
-                            Integer topK)
+    /**
+     * Score documents of a segment into the score heap, see scoreDocuments()
+     */
+    private void scoreSegment(SegmentReader segment,
+                              LiveDocs liveDocs,
+                              Similarity similarity,
+                              Map<String, Similarity.TermScorer> termScorers,
+                              int defaultLength,
+                              ScoreBuffers buffers,
+                              ScoreHeap scoreHeap)
     {
-        int segNum = 0;
+        PostingsIterator[] postings = buffers.postings;
+        Similarity.TermScorer[] scorers = buffers.scorers;
+        double[] maxScores = buffers.maxScores;
+        int[] byMaxScore = buffers.byMaxScore;
+        double[] boundSums = buffers.boundSums;
+        boolean[] present = buffers.present;
+        int segmentId = segment.info.id;
+        Norms norms = segment.norms;
+        boolean vectorNorms = norms != null && norms.hasVectorNorms();
+
+        // Terms of this segment, scores are summed up in this order
+        List<WordBlock> wordBlockList = this.getWordBlocksFromSegment(segment.wordsChannel, segmentId, termScorers.keySet());
+        int numTerms = wordBlockList.size();
+        for (int i = 0; i < numTerms; i++) {
+            WordBlock wordBlock = wordBlockList.get(i);
+            postings[i] = this.getPostings(segment.listsChannel, wordBlock);
+            postings[i].nextDoc();
+            scorers[i] = termScorers.get(wordBlock.word);
+            maxScores[i] = scorers[i].maxScore();
+        }
+
+        // Terms by max score (insertion sort, queries are short), and sum of max scores of the first n of them
+        for (int i = 0; i < numTerms; i++) {
+            int k = i;
+            while (k > 0 && maxScores[byMaxScore[k - 1]] > maxScores[i]) {
+                byMaxScore[k] = byMaxScore[k - 1];
+                k--;
+            }
+            byMaxScore[k] = i;
+        }
+        for (int k = 0; k < numTerms; k++) {
+            boundSums[k + 1] = boundSums[k] + maxScores[byMaxScore[k]];
+        }
+
         while (true) {
-            if (!Files.exists(basePath.resolve("segment" + segNum + "_words"))) {
+            // Terms [0, numOptional) can't bring a document into the heap by themselves
+            double threshold = scoreHeap.threshold();
+            int numOptional = 0;
+            while (numOptional < numTerms && similarity.bound(boundSums[numOptional + 1]) <= threshold) {
+                numOptional++;
+            }
+            // Next candidate: the smallest doc id of the other terms
+            int docId = PostingsIterator.NO_MORE_DOCS;
+            for (int k = numOptional; k < numTerms; k++) {
+                docId = Math.min(docId, postings[byMaxScore[k]].docId());
+            }
+            if (docId == PostingsIterator.NO_MORE_DOCS) {
                 break;
-            } else {
-                PageFileChannel wordPage = this.getSegmentChannel(segNum, "words");
-                PageFileChannel listPage = this.getSegmentChannel(segNum, "lists");
-
-                Map<DocID, Double> dotProductAccumulator = new HashMap<>();
-                Map<DocID, Double> vectorLengthAccumulator = new HashMap<>();
-                Map<DocID, Double> scores = new HashMap<>();
-
-                // Accumulate doc info
-                List<WordBlock> wordBlockList = this.getWordBlocksFromSegment(wordPage, segNum);
-                for (WordBlock wordBlock : wordBlockList) {
-                    if (uniqueTerms.contains(wordBlock.word)) {
-                        String term = wordBlock.word;
-                        ListBlock listBlock = this.getListBlockFromSegment(listPage, wordBlock);
-
-                        // For each docID, accumulate the product
-                        for (int index = 0; index < listBlock.invertedList.size(); index++) {
-                            int docId = listBlock.invertedList.get(index);
-                            int positionListSize = listBlock.sizeList.get(index);
-                            // Calc tfidf
-                            double tfidf = positionListSize * (globalDocNum / (double) documentFrequency.getOrDefault(term, 0));
-                            // Update doc * query ; Update (doc)^2
-                            DocID curDoc = new DocID(segNum, docId);
-                            double oldProduct = dotProductAccumulator.getOrDefault(curDoc, 0.0);
-                            dotProductAccumulator.put(curDoc, oldProduct + tfidf * queryVector.get(term));
-                            double oldLength = vectorLengthAccumulator.getOrDefault(curDoc, 0.0);
-                            vectorLengthAccumulator.put(curDoc, oldLength + tfidf * tfidf);
-                        }
-                    }
+            }
+            int docLength = norms == null ? defaultLength : norms.getLength(docId);
+
+            // Score parts of the other terms, moving them past the candidate
+            Arrays.fill(present, 0, numTerms, false);
+            double presentSum = 0;
+            for (int k = numOptional; k < numTerms; k++) {
+                int i = byMaxScore[k];
+                if (postings[i].docId() == docId) {
+                    this.scoreTerm(buffers, i, docLength);
+                    presentSum += maxScores[i];
+                    postings[i].nextDoc();
                 }
-
-                // Conclude scores for documents:
-                for (DocID docId : dotProductAccumulator.keySet()) {
-                    double sc = dotProductAccumulator.get(docId) / Math.sqrt(vectorLengthAccumulator.get(docId));
-                    scores.put(docId, sc);
-                    priorityQueue.add(new Pair<>(sc, docId));
-                    // Keep queue size in range of K // if topK == null , skip polling
-                    if (topK != null && priorityQueue.size() > topK) {
-                        priorityQueue.poll();
-                    }
+            }
+            if (!liveDocs.isLive(docId)) {
+                continue;
+            }
+            // Optional terms, the largest first, until the candidate can't make it into the heap
+            boolean competitive = true;
+            for (int k = numOptional - 1; k >= 0; k--) {
+                if (similarity.bound(presentSum + boundSums[k + 1]) <= threshold) {
+                    competitive = false;
+                    break;
+                }
+                int i = byMaxScore[k];
+                if (postings[i].advance(docId) == docId) {
+                    this.scoreTerm(buffers, i, docLength);
+                    presentSum += maxScores[i];
                 }
+            }
+            if (!competitive) {
+                continue;
+            }
 
-                wordPage.close();
-                listPage.close();
+            // Conclude score for the document, with its norm over query terms if the segment has no vector norms
+            double scoreSum = 0.0;
+            int squaredNorm = 0;
+            for (int i = 0; i < numTerms; i++) {
+                if (present[i]) {
+                    scoreSum += buffers.scores[i];
+                    squaredNorm += buffers.freqs[i] * buffers.freqs[i];
+                }
             }
-            segNum++;
+            double documentNorm = vectorNorms ? norms.getNorm(docId) : Math.sqrt(squaredNorm);
+            scoreHeap.offer(similarity.combine(scoreSum, documentNorm), segmentId, docId);
         }
     }
 
     /**
-     * Used by searchTfIdf
+     * Record score parts of the i-th term for the current document of its list
      */
-    private List<Pair<Double, DocID>> priorityQueue2OrderedList(PriorityQueue<Pair<Double, DocID>> priorityQueue, Integer topK){
-        List<Pair<Double, DocID>> topDocs = new ArrayList<>();
-        while (!priorityQueue.isEmpty()) {
-            Pair<Double, DocID> pair = priorityQueue.poll();
-            if (topK == null || priorityQueue.size() < topK )            // discard pair that is not topK
-                topDocs.add(pair);
-        }
-        return topDocs;
+    private void scoreTerm(ScoreBuffers buffers, int i, int docLength) {
+        int freq = buffers.postings[i].freq();
+        buffers.present[i] = true;
+        buffers.scores[i] = buffers.scorers[i].score(freq, docLength);
+        buffers.freqs[i] = freq;
     }
 
     /**
      * This function is used by searchTfIdf.
-     * @param topDocs
+     * @param reader
+     * @param scoreHeap documents sorted by descending score
      * @return
      */
-    private List<Pair<Document, Double>> retrieveScoredDocuments(List<Pair<Double, DocID>> topDocs){
+    private List<Pair<Document, Double>> retrieveScoredDocuments(IndexReader reader, ScoreHeap scoreHeap){
         List<Pair<Document, Double>> result = new ArrayList<>();
-        DocumentStore documentStore = null;
-        int docSeg = -1;
-        for (int i = topDocs.size() - 1; i >= 0 ; i--) {
-            Pair<Double, DocID> pair = topDocs.get(i);
-            int seg = pair.getRight().segmentID;
-            // Open this segment's corresponding document store
-            if(docSeg != seg) {
-                if(documentStore != null)
-                    documentStore.close();
-                documentStore = this.getDocumentStore(seg, "");
-            }
-            int locID = pair.getRight().localID;
-            result.add(new Pair<>(documentStore.getDocument(locID), pair.getLeft()));
-        }
-        if(documentStore != null)
-            documentStore.close();
+        for (int i = 0; i < scoreHeap.size(); i++) {
+            // This segment's corresponding document store is already open
+            DocumentStore documentStore = reader.getSegment(scoreHeap.getSegmentId(i)).getDocumentStore();
+            result.add(new Pair<>(documentStore.getDocument(scoreHeap.getDocId(i)), scoreHeap.getScore(i)));
+        }
 
         return result;
     }
@@ -1492,10 +2385,10 @@ public class InvertedIndexManager {
      * Returns the total number of documents within the given segment.
      */
     public int getNumDocuments(int segmentNum) {
-        DocumentStore documentStore = this.getDocumentStore(segmentNum, "");
-        int result = (int) documentStore.size();
-        documentStore.close();
-        return result;
+        if (segmentNum < 0 || segmentNum >= this.getNumSegments()) {
+            return 0;
+        }
+        return this.manifest.segments.get(segmentNum).numDocuments;
     }
 
     /**
@@ -1503,28 +2396,23 @@ public class InvertedIndexManager {
      * The token should be already analyzed by the analyzer. The analyzer shouldn't be applied again.
      */
     public int getDocumentFrequency(int segmentNum, String token) {
-        // open words list, search word -> [word] : get posting list size (No. of doc)
-        PageFileChannel wordPage = this.getSegmentChannel(segmentNum, "words");
-        PageFileChannel listPage = this.getSegmentChannel(segmentNum, "lists");
-
-        List<WordBlock> wordBlockList = this.getWordBlocksFromSegment(wordPage, segmentNum);
-        // Search for token
-        for (WordBlock wordBlock : wordBlockList) {
-            if (wordBlock.word.equals(token)) {
-                // Read posting list and get size
-                ListBlock listBlock = this.getListBlockFromSegment(listPage, wordBlock);
-                // close pages.
-                wordPage.close();
-                listPage.close();
-                return listBlock.invertedList.size();
-            }
+        if (segmentNum < 0 || segmentNum >= this.getNumSegments()) {
+            return 0;
         }
+        IndexReader reader = this.acquireReader();
+        try {
+            SegmentReader segment = reader.segments.get(segmentNum);
+            // search word -> [word] : get posting list size (No. of doc)
+            WordBlock wordBlock = this.getWordBlockFromSegment(segment.wordsChannel, segment.info.id, token);
+            if (wordBlock != null) {
+                // Dictionary entry holds the size of the posting list
+                return wordBlock.getNumDocuments();
+            }
 
-        // close pages.
-        wordPage.close();
-        listPage.close();
-
-        return 0;
+            return 0;
+        } finally {
+            reader.decRef();
+        }
     }
 
     /**
@@ -1532,9 +2420,19 @@ public class InvertedIndexManager {
      */
     public Iterator<Document> documentIterator() {
         List<Document> documents = new ArrayList<>();
-        // Append local segment documents in whole list
-        for (int segmentNum = 0; segmentNum < this.numSegments; segmentNum++) {
-            documents.addAll(this.getIndexSegment(segmentNum).getDocuments().values());
+        // Append local segment documents in whole list, all from the same live segments
+        IndexReader reader = this.acquireReader();
+        try {
+            for (SegmentReader segment : reader.segments) {
+                LiveDocs liveDocs = reader.getLiveDocs(segment.info.id);
+                for (Map.Entry<Integer, Document> entry : this.getDocumentsForTest(segment.getDocumentStore()).entrySet()) {
+                    if (liveDocs.isLive(entry.getKey())) {
+                        documents.add(entry.getValue());
+                    }
+                }
+            }
+        } finally {
+            reader.decRef();
         }
 
         return documents.iterator();
@@ -1543,11 +2441,98 @@ public class InvertedIndexManager {
     /**
      * Deletes all documents in all disk segments of the inverted index that match the query.
      *
+     * Matching documents are marked in a new generation of each segment's deleted documents bitmap,
+     * which is committed with the manifest. Merges drop them for good.
+     * Merges running in background are waited for first, so that none of them misses the deletes. Deleting takes the
+     * write lock, so it waits for adds and flushes of other threads. Queries are only held off while the manifest is
+     * committed, readers opened before keep seeing the documents.
+     *
      * @param keyword
      */
     public void deleteDocuments(String keyword) {
-        // Add to memory
-        this.deletedWords.add(keyword);
+        Preconditions.checkNotNull(keyword);
+        List<String> keywords = this.analyzer.analyze(keyword);
+        if (keywords == null || keywords.size() == 0 || keywords.get(0).equals("")) {
+            return;
+        }
+        keyword = keywords.get(0);
+
+        // No flush can start a merge that misses the deletes, nor change live segments while documents are looked up
+        synchronized (this.writeLock) {
+            this.mergeScheduler.sync();
+            List<SegmentInfo> segments;
+            synchronized (this) {
+                segments = new ArrayList<>(this.manifest.segments);
+            }
+
+            // Look up documents without holding the manager, queries keep running meanwhile
+            Map<Integer, SegmentInfo> newSegments = new HashMap<>();
+            Map<Integer, LiveDocs> newLiveDocs = new HashMap<>();
+            IndexReader reader = this.acquireReader();
+            try {
+                for (SegmentInfo segmentInfo : segments) {
+                    SegmentReader segment = reader.getSegment(segmentInfo.id);
+                    if (!segment.meta.mightContain(keyword)) {
+                        continue;
+                    }
+                    WordBlock wordBlock = this.getWordBlockFromSegment(segment.wordsChannel, segmentInfo.id, keyword);
+                    if (wordBlock == null) {
+                        continue;
+                    }
+
+                    // Mark documents of the word on a copy of current bitmap
+                    ListBlock listBlock = this.getListBlockFromSegment(segment.listsChannel, wordBlock);
+                    LiveDocs liveDocs = reader.getLiveDocs(segmentInfo.id).copy();
+                    boolean changed = false;
+                    for (int i = 0; i < listBlock.invertedList.size(); i++) {
+                        changed |= liveDocs.delete(listBlock.invertedList.get(i));
+                    }
+                    if (!changed) {
+                        continue;
+                    }
+
+                    // Write the bitmap as the next generation of the segment
+                    SegmentInfo newSegmentInfo = segmentInfo.copy();
+                    newSegmentInfo.deleteGeneration += 1;
+                    newSegmentInfo.numDeletedDocuments = liveDocs.getNumDeleted();
+                    liveDocs.write(this.basePath, newSegmentInfo.id, newSegmentInfo.deleteGeneration);
+                    SegmentManifest.syncFile(LiveDocs.getPath(this.basePath, newSegmentInfo.id, newSegmentInfo.deleteGeneration));
+                    newSegments.put(newSegmentInfo.id, newSegmentInfo);
+                    newLiveDocs.put(newSegmentInfo.id, liveDocs);
+                }
+            } finally {
+                reader.decRef();
+            }
+            if (newLiveDocs.isEmpty()) {
+                return;
+            }
+
+            // Commit new generations and publish them to readers opened from now on, running queries keep theirs
+            synchronized (this) {
+                List<SegmentInfo> committedSegments = new ArrayList<>();
+                for (SegmentInfo segmentInfo : this.manifest.segments) {
+                    committedSegments.add(newSegments.getOrDefault(segmentInfo.id, segmentInfo));
+                }
+                this.manifest.segments = committedSegments;
+                this.manifest.write(this.basePath);
+                for (SegmentInfo segmentInfo : newSegments.values()) {
+                    this.liveDocs.put(segmentInfo.id, newLiveDocs.get(segmentInfo.id));
+                    // Former generation is never read again, readers using it hold it in memory
+                    (new File(LiveDocs.getPath(this.basePath, segmentInfo.id, segmentInfo.deleteGeneration - 1).toString())).delete();
+                }
+                this.publishSegments();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of queries that skipped the given segment because its term filter ruled out a required term.
+     */
+    public int getNumSkips(int segmentNum) {
+        if (segmentNum < 0 || segmentNum >= this.getNumSegments()) {
+            return 0;
+        }
+        return this.segmentSkips.getOrDefault(this.getSegmentId(segmentNum), 0);
     }
 
     /**
@@ -1556,8 +2541,8 @@ public class InvertedIndexManager {
      *
      * @return number of index segments.
      */
-    public int getNumSegments() {
-        return this.numSegments;
+    public synchronized int getNumSegments() {
+        return this.manifest.segments.size();
     }
 
     /**
@@ -1568,31 +2553,34 @@ public class InvertedIndexManager {
      * @return in-memory data structure with all contents in the index segment, null if segmentNum don't exist.
      */
     public InvertedIndexSegmentForTest getIndexSegment(int segmentNum) {
-        PageFileChannel listsFileChannel = this.getSegmentChannel(segmentNum, "lists");
-        PageFileChannel wordsFileChannel = this.getSegmentChannel(segmentNum, "words");
-
-        Map<String, List<Integer>> invertedListsForTest = this.getInvertedListsForTest(listsFileChannel, wordsFileChannel, segmentNum);
-        Map<Integer, Document> documentsForTest = this.getDocumentsForTest(segmentNum);
-
-        listsFileChannel.close();
-        wordsFileChannel.close();
-
-        return documentsForTest.size() != 0 ?
-                new InvertedIndexSegmentForTest(invertedListsForTest, documentsForTest) : null;
+        if (segmentNum < 0 || segmentNum >= this.getNumSegments()) {
+            return null;
+        }
+        IndexReader reader = this.acquireReader();
+        try {
+            SegmentReader segment = reader.segments.get(segmentNum);
+            Map<String, List<Integer>> invertedListsForTest = this.getInvertedListsForTest(segment.listsChannel, segment.wordsChannel, segment.info.id);
+            Map<Integer, Document> documentsForTest = this.getDocumentsForTest(segment.getDocumentStore());
+
+            return documentsForTest.size() != 0 ?
+                    new InvertedIndexSegmentForTest(invertedListsForTest, documentsForTest) : null;
+        } finally {
+            reader.decRef();
+        }
     }
 
     /**
      * Get inverted lists from segment
      */
-    private Map<String, List<Integer>> getInvertedListsForTest(PageFileChannel listsFileChannel, PageFileChannel wordsFileChannel, int segmentNum) {
+    private Map<String, List<Integer>> getInvertedListsForTest(PageFileChannel listsFileChannel, PageFileChannel wordsFileChannel, int segmentId) {
         Map<String, List<Integer>> invertedListsForTest = new HashMap<>();
 
-        List<WordBlock> wordBlocks = this.getWordBlocksFromSegment(wordsFileChannel, segmentNum);
+        List<WordBlock> wordBlocks = this.getWordBlocksFromSegment(wordsFileChannel, segmentId);
 
         for (WordBlock wordBlock : wordBlocks) {
             ListBlock listBlock = this.getListBlockFromSegment(listsFileChannel, wordBlock);
 
-            invertedListsForTest.put(wordBlock.word, listBlock.invertedList);
+            invertedListsForTest.put(wordBlock.word, listBlock.invertedList.toList());
         }
 
         return invertedListsForTest;
@@ -1601,16 +2589,14 @@ public class InvertedIndexManager {
     /**
      * Get documents from segment
      */
-    private Map<Integer, Document> getDocumentsForTest(int segmentNum) {
+    private Map<Integer, Document> getDocumentsForTest(DocumentStore documentStore) {
         Map<Integer, Document> documentsForTest = new HashMap<>();
 
-        DocumentStore documentStore = this.getDocumentStore(segmentNum, "");
         long documentSize = documentStore.size();
         for (int id = 0; id < documentSize; id++) {
             documentsForTest.put(id, documentStore.getDocument(id));
         }
 
-        documentStore.close();
         return documentsForTest;
     }
 
@@ -1625,60 +2611,130 @@ public class InvertedIndexManager {
      * @return in-memory data structure with all contents in the index segment, null if segmentNum don't exist.
      */
     public PositionalIndexSegmentForTest getIndexSegmentPositional(int segmentNum) {
-        PageFileChannel listsFileChannel = this.getSegmentChannel(segmentNum, "lists");
-        PageFileChannel wordsFileChannel = this.getSegmentChannel(segmentNum, "words");
-        PageFileChannel posFileChannel = this.getSegmentChannel(segmentNum, "positions");
+        if (segmentNum < 0 || segmentNum >= this.getNumSegments()) {
+            return null;
+        }
+        IndexReader reader = this.acquireReader();
+        try {
+            SegmentReader segment = reader.segments.get(segmentNum);
+            int segmentId = segment.info.id;
+            PageFileChannel listsFileChannel = segment.listsChannel;
+            PageFileChannel wordsFileChannel = segment.wordsChannel;
+            PageFileChannel posFileChannel = segment.positionsChannel;
+
+            // Get all word blocks
+            List<WordBlock> wordBlocks = this.getWordBlocksFromSegment(wordsFileChannel, segmentId);
+
+            Map<String, List<Integer>> invertedListsForTest = new HashMap<>();
+            Table<String, Integer, List<Integer>> positionsListsForTest = HashBasedTable.create();
+
+            for (WordBlock wordBlock : wordBlocks) {
+                ListBlock listBlock = this.getListBlockFromSegment(listsFileChannel, wordBlock);
+                for (int i = 0; i < listBlock.invertedList.size(); i++) {
+                    // Get document Id
+                    int docId = listBlock.invertedList.get(i);
+                    // Decode position list
+                    List<Integer> positionList = this.getPositionList(posFileChannel, listBlock.globalOffsets, i, new IntList()).toList();
+
+                    // Add to table
+                    positionsListsForTest.put(wordBlock.word, docId, positionList);
+                }
+                invertedListsForTest.put(wordBlock.word, listBlock.invertedList.toList());
+            }
 
-        // Get all word blocks
-        List<WordBlock> wordBlocks = this.getWordBlocksFromSegment(wordsFileChannel, segmentNum);
+            Map<Integer, Document> documentsForTest = this.getDocumentsForTest(segment.getDocumentStore());
 
-        Map<String, List<Integer>> invertedListsForTest = new HashMap<>();
-        Table<String, Integer, List<Integer>> positionsListsForTest = HashBasedTable.create();
+            return documentsForTest.size() != 0 ?
+                    new PositionalIndexSegmentForTest(invertedListsForTest, documentsForTest, positionsListsForTest) : null;
+        } finally {
+            reader.decRef();
+        }
+    }
 
+    /**
+     * Get iterators over the inverted lists of words, the rarest first
+     *
+     * @param posFileChannel positions file of the segment, null if positions are not needed
+     */
+    private List<PostingsIterator> getPostingsByRarity(PageFileChannel listsFileChannel, PageFileChannel posFileChannel,
+                                                       List<WordBlock> wordBlocks) {
+        List<PostingsIterator> postings = new ArrayList<>(wordBlocks.size());
         for (WordBlock wordBlock : wordBlocks) {
-            ListBlock listBlock = this.getListBlockFromSegment(listsFileChannel, wordBlock);
-            for (int i = 0; i < listBlock.invertedList.size(); i++) {
-                // Get document Id
-                int docId = listBlock.invertedList.get(i);
-                // Decode position list
-                List<Integer> positionList = this.getPositionList(posFileChannel, listBlock.globalOffsets, i);
+            postings.add(this.getPostings(listsFileChannel, posFileChannel, wordBlock));
+        }
+        postings.sort(Comparator.comparingInt(PostingsIterator::size));
+        return postings;
+    }
 
-                // Add to table
-                positionsListsForTest.put(wordBlock.word, docId, positionList);
+    /**
+     * Move all iterators to the next doc id in all of their lists.
+     * The first iterator leads, the others advance to its doc id and send it further when they jump over it.
+     *
+     * @return the doc id, NO_MORE_DOCS once any list is exhausted
+     */
+    private int nextCommonDoc(List<PostingsIterator> postings) {
+        PostingsIterator lead = postings.get(0);
+        int target = lead.nextDoc();
+        int i = 1;
+        while (target != PostingsIterator.NO_MORE_DOCS && i < postings.size()) {
+            int docId = postings.get(i).advance(target);
+            if (docId == target) {
+                i++;
+            } else {
+                // Another list has nothing between target and docId
+                target = lead.advance(docId);
+                i = 1;
             }
-            invertedListsForTest.put(wordBlock.word, listBlock.invertedList);
         }
+        return target;
+    }
 
-        listsFileChannel.close();
-        wordsFileChannel.close();
-        posFileChannel.close();
-
-        Map<Integer, Document> documentsForTest = this.getDocumentsForTest(segmentNum);
-
-        return documentsForTest.size() != 0 ?
-                new PositionalIndexSegmentForTest(invertedListsForTest, documentsForTest, positionsListsForTest) : null;
+    /**
+     * Whether words are at consecutive positions, the i-th word at the phrase start plus i.
+     * Position lists are merged in a single forward pass: each cursor moves to where the phrase start puts its word,
+     * and the start moves past any word found further.
+     *
+     * @param positionLists position lists of the first numLists words, in phrase order
+     * @param cursors reusable cursors, one per word
+     */
+    private boolean matchPhrase(IntList[] positionLists, int[] cursors, int numLists) {
+        Arrays.fill(cursors, 0, numLists, 0);
+        int start = positionLists[0].get(0);
+        int i = 0;
+        while (true) {
+            IntList positions = positionLists[i];
+            int target = start + i;
+            while (cursors[i] < positions.size() && positions.get(cursors[i]) < target) {
+                cursors[i]++;
+            }
+            if (cursors[i] == positions.size()) {
+                return false;
+            }
+            int position = positions.get(cursors[i]);
+            if (position == target) {
+                if (++i == numLists) {
+                    return true;
+                }
+            } else {
+                // No phrase starts before this word's position allows, check from the first word again
+                start = position - i;
+                i = 0;
+            }
+        }
     }
 
-    private List<Integer> getPositionList(PageFileChannel posFileChannel, List<Integer> globalOffsets, int currentIndex) {
+    /**
+     * Decode position list of the n-th document of an inverted list
+     */
+    private IntList getPositionList(PageFileChannel posFileChannel, IntList globalOffsets, int currentIndex, IntList positionList) {
         // Calculate position list meta
         int globalOffset = globalOffsets.get(currentIndex);
-        int pageNum = globalOffset / PageFileChannel.PAGE_SIZE;
-        int posOffset = globalOffset % PageFileChannel.PAGE_SIZE;
         // Get position list length
         int posLength = globalOffsets.get(currentIndex + 1) - globalOffsets.get(currentIndex);
         // Get position list
-        byte[] encodedPositionList = new byte[posLength];
-        ByteBuffer posReadBuffer = posFileChannel.readPage(pageNum);
-        posReadBuffer.position(posOffset);
-        for (int j = 0; j < posLength; j++) {
-            if (posReadBuffer.position() >= posReadBuffer.capacity()) {
-                // Read next page
-                pageNum += 1;
-                posReadBuffer = posFileChannel.readPage(pageNum);
-            }
-            encodedPositionList[j] = posReadBuffer.get();
-        }
+        ByteBuffer encodedPositionList = this.readSlice(posFileChannel, globalOffset, posLength);
         // Decode position list
-        return this.compressor.decode(encodedPositionList);
+        this.compressor.decode(encodedPositionList, 0, posLength, positionList);
+        return positionList;
     }
 }
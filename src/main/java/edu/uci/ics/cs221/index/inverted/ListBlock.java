@@ -1,18 +1,9 @@
 package edu.uci.ics.cs221.index.inverted;
 
-import java.util.List;
+import edu.uci.ics.cs221.index.positional.IntList;
 
 public class ListBlock {
-    public byte[] encodedInvertedList = null;
-    public byte[] encodedGlobalOffsets = null;
-    public byte[] encodedSizeList = null;
-    public List<Integer> invertedList = null;
-    public List<Integer> globalOffsets = null;
-    public List<Integer> sizeList = null;
-
-    public ListBlock(int listLength, int globalOffsetLength, int sizeLength) {
-        this.encodedInvertedList = new byte[listLength];
-        this.encodedGlobalOffsets = new byte[globalOffsetLength];
-        this.encodedSizeList = new byte[sizeLength];
-    }
+    public IntList invertedList = new IntList();
+    public IntList globalOffsets = new IntList();
+    public IntList sizeList = new IntList();
 }
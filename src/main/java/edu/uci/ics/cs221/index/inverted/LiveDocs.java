@@ -0,0 +1,150 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+/**
+ * Bitmap of the deleted documents of a segment, one bit per document id.
+ * <p>
+ * Deletes never change segment files. Each delete writes a new generation of the bitmap to
+ * `segment{id}_deletes{generation}`, which becomes visible once the manifest records that generation.
+ * A bitmap is never modified once it is in use by a reader, delete works on a copy.
+ */
+public class LiveDocs {
+    private static final int MAGIC = 0x44454c53;
+    private static final int FORMAT = 1;
+
+    private final int numDocuments;
+    // Set bit: document is deleted
+    private final BitSet deleted;
+    private int numDeleted = 0;
+
+    /**
+     * Bitmap of a segment with no deleted document
+     */
+    public LiveDocs(int numDocuments) {
+        this(numDocuments, new BitSet());
+    }
+
+    private LiveDocs(int numDocuments, BitSet deleted) {
+        this.numDocuments = numDocuments;
+        this.deleted = deleted;
+        this.numDeleted = deleted.cardinality();
+    }
+
+    /**
+     * Get path of a generation of the bitmap of a segment
+     */
+    public static Path getPath(Path basePath, int segmentId, int generation) {
+        return basePath.resolve("segment" + segmentId + "_deletes" + generation);
+    }
+
+    /**
+     * Whether the file is a generation of the bitmap of a segment
+     */
+    public static boolean isPathOf(Path path, int segmentId) {
+        return path.getFileName().toString().startsWith("segment" + segmentId + "_deletes");
+    }
+
+    /**
+     * Read the bitmap of a segment at the generation recorded in the manifest
+     *
+     * @return bitmap, with no deleted document if the segment never had deletes
+     */
+    public static LiveDocs read(Path basePath, SegmentInfo segmentInfo) {
+        if (segmentInfo.deleteGeneration == 0) {
+            return new LiveDocs(segmentInfo.numDocuments);
+        }
+
+        Path path = getPath(basePath, segmentInfo.id, segmentInfo.deleteGeneration);
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(path));
+             DataInputStream input = new DataInputStream(inputStream)) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT) {
+                throw new IllegalStateException(path + " is not a supported deletes file");
+            }
+            int numDocuments = input.readInt();
+            long[] words = new long[input.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = input.readLong();
+            }
+            return new LiveDocs(numDocuments, BitSet.valueOf(words));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the bitmap as a generation of the segment
+     */
+    public void write(Path basePath, int segmentId, int generation) {
+        long[] words = this.deleted.toLongArray();
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(getPath(basePath, segmentId, generation)));
+             DataOutputStream output = new DataOutputStream(outputStream)) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT);
+            output.writeInt(this.numDocuments);
+            output.writeInt(words.length);
+            for (long word : words) {
+                output.writeLong(word);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Copy of the bitmap that could be modified
+     */
+    public LiveDocs copy() {
+        return new LiveDocs(this.numDocuments, (BitSet) this.deleted.clone());
+    }
+
+    public boolean isLive(int docId) {
+        return !this.deleted.get(docId);
+    }
+
+    /**
+     * Remove deleted documents from a set of doc ids
+     */
+    public void clearDeleted(BitSet docs) {
+        docs.andNot(this.deleted);
+    }
+
+    /**
+     * Mark a document as deleted
+     *
+     * @return false if it was already deleted
+     */
+    public boolean delete(int docId) {
+        Preconditions.checkElementIndex(docId, this.numDocuments);
+        if (this.deleted.get(docId)) {
+            return false;
+        }
+        this.deleted.set(docId);
+        this.numDeleted++;
+        return true;
+    }
+
+    public boolean hasDeletions() {
+        return this.numDeleted > 0;
+    }
+
+    public int getNumDeleted() {
+        return this.numDeleted;
+    }
+
+    public int getNumLive() {
+        return this.numDocuments - this.numDeleted;
+    }
+}
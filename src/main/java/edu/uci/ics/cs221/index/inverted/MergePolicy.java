@@ -0,0 +1,34 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses which segments to merge after a flush.
+ */
+public interface MergePolicy {
+    /**
+     * Find merges among the given segments.
+     * A merged segment takes the place of the first of its segments, so the segments of a merge must be neighbours.
+     *
+     * @param segments neighbouring live segments that are not being merged, in live order
+     * @return segments of each merge, every segment is in at most one merge, empty if nothing should be merged
+     */
+    List<List<SegmentInfo>> findMerges(List<SegmentInfo> segments);
+
+    /**
+     * Find merges bringing the index down to at most maxNumSegments segments.
+     * It is called again after the returned merges are done, until it returns no merge.
+     * By default the last segments are merged into one.
+     *
+     * @param segments all live segments, in live order
+     * @return segments of each merge, neighbours like for findMerges(), empty once there are at most maxNumSegments segments
+     */
+    default List<List<SegmentInfo>> findForcedMerges(List<SegmentInfo> segments, int maxNumSegments) {
+        List<List<SegmentInfo>> merges = new ArrayList<>();
+        if (segments.size() > maxNumSegments) {
+            merges.add(new ArrayList<>(segments.subList(maxNumSegments - 1, segments.size())));
+        }
+        return merges;
+    }
+}
@@ -0,0 +1,18 @@
+package edu.uci.ics.cs221.index.inverted;
+
+/**
+ * Runs merges chosen by the merge policy of an index.
+ */
+public interface MergeScheduler {
+    /**
+     * Called after each flush. Runs merges from InvertedIndexManager.findMerges() with InvertedIndexManager.executeMerge(),
+     * either before returning or in background. Once merges are committed, findMerges() is asked again, since merged
+     * segments may be merged further, until it finds none.
+     */
+    void merge(InvertedIndexManager manager);
+
+    /**
+     * Wait for all merges started by this scheduler to be done
+     */
+    void sync();
+}
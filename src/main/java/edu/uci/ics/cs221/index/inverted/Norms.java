@@ -0,0 +1,151 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Per-document norms of a segment, stored in `segment{id}_norms` and kept in memory while the segment is open.
+ * <p>
+ * For each document it holds the number of tokens, and the squared length of its term frequency vector over all of its
+ * terms. The vector leaves out idf: document frequencies of a segment change as segments are merged, term frequencies
+ * don't, so the squared length is an exact integer that merge copies like the number of tokens.
+ * Norms are written by flush, and copied for live documents by merge.
+ * They never change afterwards, deleted documents keep their norms until they are merged away.
+ */
+public class Norms {
+    private static final int MAGIC = 0x4e4f524d;
+    private static final int FORMAT = 3;
+    // Former formats: lengths followed by a quantized TF-IDF vector length per document, which is left unread, and
+    // lengths only
+    private static final int FORMAT_IDF_NORMS = 1;
+    private static final int FORMAT_LENGTHS = 2;
+
+    private final int[] lengths;
+    // Null if the segment was written in a format without them
+    private final int[] squaredNorms;
+    private final long totalLength;
+
+    public Norms(int[] lengths, int[] squaredNorms) {
+        this.lengths = lengths;
+        this.squaredNorms = squaredNorms;
+        long totalLength = 0;
+        for (int length : lengths) {
+            totalLength += length;
+        }
+        this.totalLength = totalLength;
+    }
+
+    /**
+     * Get path of the norms file of a segment
+     */
+    public static Path getPath(Path basePath, int segmentId) {
+        return basePath.resolve("segment" + segmentId + "_norms");
+    }
+
+    /**
+     * Read norms of a segment
+     *
+     * @return norms, null if the segment was written without them
+     */
+    public static Norms read(Path basePath, int segmentId) {
+        Path path = getPath(basePath, segmentId);
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(path));
+             DataInputStream input = new DataInputStream(inputStream)) {
+            if (input.readInt() != MAGIC) {
+                throw new IllegalStateException(path + " is not a supported norms file");
+            }
+            int format = input.readInt();
+            if (format != FORMAT && format != FORMAT_IDF_NORMS && format != FORMAT_LENGTHS) {
+                throw new IllegalStateException(path + " is not a supported norms file");
+            }
+            int numDocuments = input.readInt();
+            int[] lengths = new int[numDocuments];
+            for (int i = 0; i < numDocuments; i++) {
+                lengths[i] = input.readInt();
+            }
+            if (format != FORMAT) {
+                return new Norms(lengths, null);
+            }
+            int[] squaredNorms = new int[numDocuments];
+            for (int i = 0; i < numDocuments; i++) {
+                squaredNorms[i] = input.readInt();
+            }
+            return new Norms(lengths, squaredNorms);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write norms of a segment, in the format with lengths only if there are no vector norms
+     */
+    public void write(Path basePath, int segmentId) {
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(getPath(basePath, segmentId)));
+             DataOutputStream output = new DataOutputStream(outputStream)) {
+            output.writeInt(MAGIC);
+            output.writeInt(this.squaredNorms == null ? FORMAT_LENGTHS : FORMAT);
+            output.writeInt(this.lengths.length);
+            for (int length : this.lengths) {
+                output.writeInt(length);
+            }
+            if (this.squaredNorms != null) {
+                for (int squaredNorm : this.squaredNorms) {
+                    output.writeInt(squaredNorm);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int getNumDocuments() {
+        return this.lengths.length;
+    }
+
+    /**
+     * Number of tokens of a document
+     */
+    public int getLength(int docId) {
+        return this.lengths[docId];
+    }
+
+    /**
+     * Number of tokens of all documents of the segment
+     */
+    public long getTotalLength() {
+        return this.totalLength;
+    }
+
+    /**
+     * Whether the segment has the length of the term frequency vector of each document
+     */
+    public boolean hasVectorNorms() {
+        return this.squaredNorms != null;
+    }
+
+    /**
+     * Sum of the squared frequencies of all terms of a document
+     */
+    public int getSquaredNorm(int docId) {
+        return this.squaredNorms[docId];
+    }
+
+    /**
+     * Length of the term frequency vector of a document
+     */
+    public double getNorm(int docId) {
+        return Math.sqrt(this.squaredNorms[docId]);
+    }
+}
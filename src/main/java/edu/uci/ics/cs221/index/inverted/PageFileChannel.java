@@ -6,9 +6,11 @@ import com.google.common.base.Verify;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.WRITE;
@@ -45,13 +47,22 @@ public class PageFileChannel implements AutoCloseable {
      * These counter values will be used to monitor your implementation's disk IO performance.
      * In test cases, read/write counter values will be also checked whether they are in a reasonable range.
      */
-    public static int readCounter = 0;
-    public static int writeCounter = 0;
+    private static final AtomicInteger readCounter = new AtomicInteger();
+    private static final AtomicInteger writeCounter = new AtomicInteger();
+
+    /**
+     * Buffer pool hit and miss counters in number of pages.
+     * A miss also counts as a read, a hit doesn't touch the file.
+     */
+    private static final AtomicInteger hitCounter = new AtomicInteger();
+    private static final AtomicInteger missCounter = new AtomicInteger();
 
     private FileChannel fileChannel;
+    private Path path;
 
-    private PageFileChannel(FileChannel fileChannel) {
+    private PageFileChannel(FileChannel fileChannel, Path path) {
         this.fileChannel = fileChannel;
+        this.path = path;
     }
 
     /**
@@ -67,7 +78,7 @@ public class PageFileChannel implements AutoCloseable {
                 Files.createFile(path);
             }
             Verify.verify(!Files.isDirectory(path));
-            return new PageFileChannel(FileChannel.open(path, READ, WRITE));
+            return new PageFileChannel(FileChannel.open(path, READ, WRITE), path.toAbsolutePath().normalize());
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
@@ -81,7 +92,7 @@ public class PageFileChannel implements AutoCloseable {
      */
     public ByteBuffer readPage(int pageNum) {
         try {
-            readCounter++;
+            countRead();
             ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
             this.fileChannel.read(buffer, pageNum * PAGE_SIZE);
             buffer.rewind();
@@ -91,6 +102,34 @@ public class PageFileChannel implements AutoCloseable {
         }
     }
 
+    /**
+     * Reads a page from file into the given byteBuffer, which must have capacity = PAGE_SIZE.
+     *
+     * @param pageNum, page number (starts from 0)
+     * @param byteBuffer, buffer to fill, rewound after reading
+     */
+    public void readPage(int pageNum, ByteBuffer byteBuffer) {
+        try {
+            Preconditions.checkArgument(byteBuffer.capacity() == PAGE_SIZE);
+            countRead();
+            byteBuffer.clear();
+            long position = (long) pageNum * PAGE_SIZE;
+            while (byteBuffer.hasRemaining()) {
+                int read = this.fileChannel.read(byteBuffer, position + byteBuffer.position());
+                if (read < 0) {
+                    break;
+                }
+            }
+            // Bytes beyond end of file read as 0, like a newly allocated page
+            while (byteBuffer.hasRemaining()) {
+                byteBuffer.put((byte) 0);
+            }
+            byteBuffer.rewind();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * Read all pages in this file into a ByteBuffer.
      *
@@ -117,7 +156,7 @@ public class PageFileChannel implements AutoCloseable {
             Preconditions.checkArgument(byteBuffer.capacity() == PAGE_SIZE);
             byteBuffer.rewind();
             this.fileChannel.write(byteBuffer, pageNum * PAGE_SIZE);
-            writeCounter++;
+            countWrite();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
@@ -147,6 +186,28 @@ public class PageFileChannel implements AutoCloseable {
         }
     }
 
+    /**
+     * Maps the whole file into memory for reading.
+     * Reads through the mapping are served by the OS page cache and are not counted as page reads.
+     * The file must not grow after it is mapped, and must be smaller than 2GB.
+     *
+     * @return read-only buffer over all bytes of the file
+     */
+    public MappedByteBuffer map() {
+        try {
+            return this.fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, this.fileChannel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the normalized path of the file.
+     */
+    public Path getPath() {
+        return this.path;
+    }
+
     /**
      * Gets the number of pages of the file.
      * @return number of pages of the file
@@ -175,8 +236,54 @@ public class PageFileChannel implements AutoCloseable {
      * Resets read/write counters, for testing purposes.
      */
     public static void resetCounters() {
-        readCounter = 0;
-        writeCounter = 0;
+        readCounter.set(0);
+        writeCounter.set(0);
+        hitCounter.set(0);
+        missCounter.set(0);
+    }
+
+    /**
+     * Pages read from files since the last reset
+     */
+    public static int getReadCounter() {
+        return readCounter.get();
+    }
+
+    /**
+     * Pages written to files since the last reset
+     */
+    public static int getWriteCounter() {
+        return writeCounter.get();
+    }
+
+    /**
+     * Pages served by the buffer pool since the last reset
+     */
+    public static int getHitCounter() {
+        return hitCounter.get();
+    }
+
+    /**
+     * Pages the buffer pool read from files since the last reset
+     */
+    public static int getMissCounter() {
+        return missCounter.get();
+    }
+
+    static void countRead() {
+        readCounter.incrementAndGet();
+    }
+
+    static void countWrite() {
+        writeCounter.incrementAndGet();
+    }
+
+    static void countHit() {
+        hitCounter.incrementAndGet();
+    }
+
+    static void countMiss() {
+        missCounter.incrementAndGet();
     }
 
 }
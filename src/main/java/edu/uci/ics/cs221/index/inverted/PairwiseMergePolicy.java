@@ -0,0 +1,30 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges all segments pair-wise (0+1, 2+3, ...) once there are DEFAULT_MERGE_THRESHOLD of them.
+ */
+public class PairwiseMergePolicy implements MergePolicy {
+
+    @Override
+    public List<List<SegmentInfo>> findMerges(List<SegmentInfo> segments) {
+        if (segments.size() < InvertedIndexManager.DEFAULT_MERGE_THRESHOLD) {
+            return new ArrayList<>();
+        }
+        return pairUp(segments);
+    }
+
+    /**
+     * Pair up neighbouring segments, an odd segment left is not merged
+     */
+    public static List<List<SegmentInfo>> pairUp(List<SegmentInfo> segments) {
+        List<List<SegmentInfo>> merges = new ArrayList<>();
+        for (int leftIndex = 0, rightIndex = 1; rightIndex < segments.size(); leftIndex += 2, rightIndex += 2) {
+            merges.add(Arrays.asList(segments.get(leftIndex), segments.get(rightIndex)));
+        }
+        return merges;
+    }
+}
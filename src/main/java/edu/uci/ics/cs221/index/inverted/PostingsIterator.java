@@ -0,0 +1,305 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import com.google.common.base.Preconditions;
+import edu.uci.ics.cs221.index.positional.Compressor;
+import edu.uci.ics.cs221.index.positional.IntList;
+import edu.uci.ics.cs221.index.positional.NaiveCompressor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Walks the inverted list of a word in doc id order, decoding only the blocks it lands in.
+ * <p>
+ * Inverted lists are stored in blocks of BLOCK_SIZE doc ids, each encoded on its own. Global offsets are stored in
+ * blocks too, block n holding offsets of its documents plus the end offset of its last document. Lists with more
+ * than one block are followed by a skip table with the last doc id and the end of each block, so that
+ * advance() jumps over blocks without reading them.
+ * <p>
+ * On a positional index it walks positions along with doc ids: positions() decodes the position list of the current
+ * document only, reading the positions file forward as the iterator moves.
+ * <p>
+ * List block layout: [inverted list][global offsets][size list][skip table]
+ */
+public class PostingsIterator {
+
+    /**
+     * Number of doc ids in a block of an inverted list.
+     */
+    public static final int BLOCK_SIZE = 128;
+
+    /**
+     * Doc id once the iterator is exhausted.
+     */
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /**
+     * Ints per block in the skip table: last doc id, end of inverted block, end of global offsets block
+     */
+    public static final int SKIP_ENTRY_INTS = 3;
+
+    /**
+     * Reads bytes of the list block of a word, indexed from the start of the list block,
+     * or bytes of the positions file indexed from its start.
+     * The returned buffer is indexed from 0 and only needs to be valid until the next read.
+     */
+    public interface ListReader {
+        ByteBuffer read(int offset, int length);
+    }
+
+    private static final Compressor naiveCompressor = new NaiveCompressor();
+
+    private final WordBlock wordBlock;
+    private final Compressor compressor;
+    private final ListReader reader;
+    // Null if the index is not positional
+    private final ListReader positionsReader;
+    private final int numDocuments;
+    private final int numBlocks;
+    // Skip table, a single block list has a last doc id of NO_MORE_DOCS
+    private final IntList lastDocIds = new IntList();
+    private final IntList blockEnds = new IntList();
+    private final IntList offsetBlockEnds = new IntList();
+
+    // Decoded doc ids of the current block
+    private final IntList docIds = new IntList();
+    private int block = -1;
+    private int indexInBlock = -1;
+    private int docId = -1;
+    // Sizes and global offsets of the current block, decoded when asked for
+    private final IntList sizes = new IntList();
+    private final IntList globalOffsets = new IntList();
+    private int sizesBlock = -1;
+    private int offsetsBlock = -1;
+    // Positions of the document at positionsIndex in the list, decoded when asked for
+    private final IntList positions = new IntList();
+    private int positionsIndex = -1;
+
+    public PostingsIterator(WordBlock wordBlock, Compressor compressor, ListReader reader) {
+        this(wordBlock, compressor, reader, null);
+    }
+
+    /**
+     * @param positionsReader reads the positions file of the segment, null if the index is not positional
+     */
+    public PostingsIterator(WordBlock wordBlock, Compressor compressor, ListReader reader, ListReader positionsReader) {
+        this.wordBlock = wordBlock;
+        this.compressor = compressor;
+        this.reader = reader;
+        this.positionsReader = positionsReader;
+        this.numDocuments = wordBlock.getNumDocuments();
+        if (wordBlock.skipLength == 0) {
+            this.numBlocks = this.numDocuments == 0 ? 0 : 1;
+            this.lastDocIds.add(NO_MORE_DOCS);
+            this.blockEnds.add(wordBlock.listLength);
+            this.offsetBlockEnds.add(wordBlock.globalOffsetLength);
+        } else {
+            this.numBlocks = wordBlock.skipLength / (SKIP_ENTRY_INTS * Integer.BYTES);
+            // Skip table ends the list block
+            int skipOffset = wordBlock.getListBlockLength() - wordBlock.skipLength;
+            ByteBuffer skipTable = reader.read(skipOffset, wordBlock.skipLength);
+            for (int i = 0; i < this.numBlocks; i++) {
+                int entry = i * SKIP_ENTRY_INTS * Integer.BYTES;
+                this.lastDocIds.add(skipTable.getInt(entry));
+                this.blockEnds.add(skipTable.getInt(entry + Integer.BYTES));
+                this.offsetBlockEnds.add(skipTable.getInt(entry + 2 * Integer.BYTES));
+            }
+        }
+    }
+
+    /**
+     * Word block of the list
+     */
+    public WordBlock getWordBlock() {
+        return this.wordBlock;
+    }
+
+    /**
+     * Number of documents in the list
+     */
+    public int size() {
+        return this.numDocuments;
+    }
+
+    /**
+     * Current doc id, -1 before the first nextDoc() or advance(), NO_MORE_DOCS once exhausted
+     */
+    public int docId() {
+        return this.docId;
+    }
+
+    /**
+     * Move to the next document
+     *
+     * @return its doc id, NO_MORE_DOCS if there is none
+     */
+    public int nextDoc() {
+        if (this.docId == NO_MORE_DOCS) {
+            return NO_MORE_DOCS;
+        }
+        if (this.block >= 0 && this.indexInBlock + 1 < this.docIds.size()) {
+            this.indexInBlock++;
+            this.docId = this.docIds.get(this.indexInBlock);
+            return this.docId;
+        }
+        if (this.block + 1 >= this.numBlocks) {
+            return this.exhaust();
+        }
+        this.loadBlock(this.block + 1);
+        this.indexInBlock = 0;
+        this.docId = this.docIds.get(0);
+        return this.docId;
+    }
+
+    /**
+     * Move to the first document whose doc id is at least target, blocks ending before target are not decoded.
+     * Doesn't move back if the current doc id is already at least target.
+     *
+     * @return its doc id, NO_MORE_DOCS if there is none
+     */
+    public int advance(int target) {
+        if (this.docId >= target) {
+            return this.docId;
+        }
+        // Skip blocks whose last doc id is before target
+        int targetBlock = Math.max(this.block, 0);
+        while (targetBlock < this.numBlocks && this.lastDocIds.get(targetBlock) < target) {
+            targetBlock++;
+        }
+        if (targetBlock >= this.numBlocks) {
+            return this.exhaust();
+        }
+        int start = 0;
+        if (targetBlock != this.block) {
+            this.loadBlock(targetBlock);
+        } else {
+            start = this.indexInBlock + 1;
+        }
+        // Binary search in the block
+        int left = start, right = this.docIds.size();
+        while (left < right) {
+            int mid = (left + right) >>> 1;
+            if (this.docIds.get(mid) < target) {
+                left = mid + 1;
+            } else {
+                right = mid;
+            }
+        }
+        if (left >= this.docIds.size()) {
+            // Only a single block list has no last doc id to skip by
+            return this.exhaust();
+        }
+        this.indexInBlock = left;
+        this.docId = this.docIds.get(left);
+        return this.docId;
+    }
+
+    /**
+     * Index of the current document in the whole list
+     */
+    public int index() {
+        return this.block * BLOCK_SIZE + this.indexInBlock;
+    }
+
+    /**
+     * Size of the position list of the current document, that is the term frequency
+     */
+    public int freq() {
+        if (this.sizesBlock != this.block) {
+            int start = this.block * BLOCK_SIZE;
+            int length = this.docIds.size() * Integer.BYTES;
+            ByteBuffer bytes = this.reader.read(this.wordBlock.listLength + this.wordBlock.globalOffsetLength + start * Integer.BYTES, length);
+            naiveCompressor.decode(bytes, 0, length, this.sizes);
+            this.sizesBlock = this.block;
+        }
+        return this.sizes.get(this.indexInBlock);
+    }
+
+    /**
+     * Global offset of the position list of the current document in the positions file
+     */
+    public int positionsStart() {
+        this.loadGlobalOffsets();
+        return this.globalOffsets.get(this.indexInBlock);
+    }
+
+    /**
+     * Global offset right after the position list of the current document
+     */
+    public int positionsEnd() {
+        this.loadGlobalOffsets();
+        return this.globalOffsets.get(this.indexInBlock + 1);
+    }
+
+    /**
+     * Positions of the word in the current document, in increasing order.
+     * The list is reused, it is only valid until the iterator moves.
+     */
+    public IntList positions() {
+        Preconditions.checkState(this.positionsReader != null, "index is not positional");
+        int index = this.index();
+        if (this.positionsIndex != index) {
+            int start = this.positionsStart();
+            int length = this.positionsEnd() - start;
+            this.compressor.decode(this.positionsReader.read(start, length), 0, length, this.positions);
+            this.positionsIndex = index;
+        }
+        return this.positions;
+    }
+
+    /**
+     * Decode the whole list, block by block
+     */
+    public void decodeAll(ListBlock listBlock) {
+        listBlock.invertedList.clear();
+        listBlock.globalOffsets.clear();
+        listBlock.sizeList.clear();
+        if (this.numBlocks == 0) {
+            return;
+        }
+        ByteBuffer bytes = this.reader.read(0, this.wordBlock.listLength + this.wordBlock.globalOffsetLength + this.wordBlock.sizeLength);
+        int blockStart = 0;
+        int offsetBlockStart = this.wordBlock.listLength;
+        for (int i = 0; i < this.numBlocks; i++) {
+            this.compressor.decode(bytes, blockStart, this.blockEnds.get(i) - blockStart, this.docIds);
+            listBlock.invertedList.addAll(this.docIds);
+            blockStart = this.blockEnds.get(i);
+
+            int offsetBlockEnd = this.wordBlock.listLength + this.offsetBlockEnds.get(i);
+            this.compressor.decode(bytes, offsetBlockStart, offsetBlockEnd - offsetBlockStart, this.globalOffsets);
+            // Each block repeats the end offset of its last document, which is the start of the next block
+            if (!listBlock.globalOffsets.isEmpty() && !this.globalOffsets.isEmpty()) {
+                listBlock.globalOffsets.removeLast();
+            }
+            listBlock.globalOffsets.addAll(this.globalOffsets);
+            offsetBlockStart = offsetBlockEnd;
+        }
+        naiveCompressor.decode(bytes, this.wordBlock.listLength + this.wordBlock.globalOffsetLength, this.wordBlock.sizeLength, listBlock.sizeList);
+        // Blocks decoded here are not the current block any more
+        this.block = -1;
+        this.offsetsBlock = -1;
+        this.positionsIndex = -1;
+        this.docId = -1;
+    }
+
+    private int exhaust() {
+        this.docId = NO_MORE_DOCS;
+        return NO_MORE_DOCS;
+    }
+
+    private void loadBlock(int block) {
+        int blockStart = block == 0 ? 0 : this.blockEnds.get(block - 1);
+        ByteBuffer bytes = this.reader.read(blockStart, this.blockEnds.get(block) - blockStart);
+        this.compressor.decode(bytes, 0, this.blockEnds.get(block) - blockStart, this.docIds);
+        this.block = block;
+    }
+
+    private void loadGlobalOffsets() {
+        if (this.offsetsBlock != this.block) {
+            int blockStart = this.block == 0 ? 0 : this.offsetBlockEnds.get(this.block - 1);
+            int length = this.offsetBlockEnds.get(this.block) - blockStart;
+            ByteBuffer bytes = this.reader.read(this.wordBlock.listLength + blockStart, length);
+            this.compressor.decode(bytes, 0, length, this.globalOffsets);
+            this.offsetsBlock = this.block;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import com.google.common.base.Preconditions;
+import edu.uci.ics.cs221.storage.Document;
+
+import edu.uci.ics.cs221.index.positional.IntList;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+
+/**
+ * Documents matching a query, found segment by segment as the caller moves forward.
+ * <p>
+ * Doc ids of a segment come from a matcher opened when the iterator reaches the segment, deleted documents are
+ * skipped, and a document is only read from the store by next(). Callers needing only ids use nextDocId(), which
+ * reads no document. The iterator holds a reference on its index reader, so that segments stay open even if they
+ * are merged away meanwhile. The reference is released once the iterator is exhausted, callers that stop early
+ * should close it. The reference is kept by a ReaderRelease apart from the iterator, so that the index can still
+ * release it after a caller dropped the iterator without closing it.
+ */
+public class ResultIterator implements Iterator<Document>, AutoCloseable {
+    /**
+     * Opens the matcher of a segment, giving doc ids in increasing order and then NO_MORE_DOCS
+     */
+    public interface MatcherFactory {
+        /**
+         * @param liveDocs documents of the segment not deleted as seen by the reader
+         * @return the matcher, null if nothing in the segment can match
+         */
+        IntSupplier open(SegmentReader segment, LiveDocs liveDocs);
+    }
+
+    /**
+     * Releases the reader of an iterator once, either when the iterator is closed or after it became unreachable.
+     * It must not refer to the iterator.
+     */
+    public static class ReaderRelease implements Runnable {
+        private final IndexReader reader;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        // Run once the reader is released
+        private volatile Runnable onRelease = null;
+
+        private ReaderRelease(IndexReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public void run() {
+            if (this.reader != null && this.released.compareAndSet(false, true)) {
+                this.reader.decRef();
+                if (this.onRelease != null) {
+                    this.onRelease.run();
+                }
+            }
+        }
+    }
+
+    private final IndexReader reader;
+    private final ReaderRelease readerRelease;
+    private final MatcherFactory matcherFactory;
+
+    private int segmentIndex = -1;
+    private SegmentReader segment = null;
+    private LiveDocs liveDocs = null;
+    // Gives doc ids of the current segment in increasing order, then NO_MORE_DOCS
+    private IntSupplier matcher = null;
+    // Doc id found by hasNext(), -1 if none
+    private int nextDocId = -1;
+    // Read by prefetch tasks, which stop once the iterator is released
+    private volatile boolean released = false;
+    // Live doc ids matched in each segment by prefetch(), null if segments are matched as the caller moves forward
+    private List<ForkJoinTask<IntList>> segmentTasks = null;
+
+    /**
+     * Takes over one reference of the reader
+     */
+    public ResultIterator(IndexReader reader, MatcherFactory matcherFactory) {
+        this.reader = reader;
+        this.readerRelease = new ReaderRelease(reader);
+        this.matcherFactory = matcherFactory;
+    }
+
+    /**
+     * Iterator of no documents, holding no reader
+     */
+    public static ResultIterator empty() {
+        ResultIterator result = new ResultIterator(null, null);
+        result.released = true;
+        return result;
+    }
+
+    public void onRelease(Runnable onRelease) {
+        this.readerRelease.onRelease = onRelease;
+    }
+
+    public ReaderRelease getReaderRelease() {
+        return this.readerRelease;
+    }
+
+    /**
+     * Match all segments in parallel on a pool. Matches are still given in segment order, documents are still
+     * read by next() only, but doc ids of all matches are kept in memory.
+     */
+    public synchronized void prefetch(ForkJoinPool pool) {
+        if (this.released || this.segmentTasks != null) {
+            return;
+        }
+        this.segmentTasks = new ArrayList<>(this.reader.segments.size());
+        for (SegmentReader segment : this.reader.segments) {
+            LiveDocs liveDocs = this.reader.getLiveDocs(segment.info.id);
+            this.segmentTasks.add(pool.submit(() -> this.matchAll(segment, liveDocs)));
+        }
+    }
+
+    /**
+     * Live doc ids matched in a segment, until the iterator is released
+     */
+    private IntList matchAll(SegmentReader segment, LiveDocs liveDocs) {
+        IntList docIds = new IntList();
+        IntSupplier matcher = this.matcherFactory.open(segment, liveDocs);
+        if (matcher == null) {
+            return docIds;
+        }
+        for (int docId = matcher.getAsInt(); docId != PostingsIterator.NO_MORE_DOCS && !this.released; docId = matcher.getAsInt()) {
+            if (liveDocs.isLive(docId)) {
+                docIds.add(docId);
+            }
+        }
+        return docIds;
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        if (this.released) {
+            return false;
+        }
+        try {
+            while (this.nextDocId < 0) {
+                // Move to the next segment once this one has no more matches
+                if (this.matcher == null) {
+                    if (++this.segmentIndex >= this.reader.segments.size()) {
+                        this.release();
+                        return false;
+                    }
+                    this.segment = this.reader.segments.get(this.segmentIndex);
+                    this.liveDocs = this.reader.getLiveDocs(this.segment.info.id);
+                    if (this.segmentTasks == null) {
+                        this.matcher = this.matcherFactory.open(this.segment, this.liveDocs);
+                    } else {
+                        IntList docIds = this.segmentTasks.get(this.segmentIndex).join();
+                        int[] cursor = new int[1];
+                        this.matcher = () -> cursor[0] < docIds.size() ? docIds.get(cursor[0]++) : PostingsIterator.NO_MORE_DOCS;
+                    }
+                    continue;
+                }
+                int docId = this.matcher.getAsInt();
+                if (docId == PostingsIterator.NO_MORE_DOCS) {
+                    this.matcher = null;
+                } else if (this.liveDocs.isLive(docId)) {
+                    this.nextDocId = docId;
+                }
+            }
+            return true;
+        } catch (RuntimeException e) {
+            this.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized Document next() {
+        int docId = this.nextDocId();
+        return this.segment.getDocumentStore().getDocument(docId);
+    }
+
+    /**
+     * Move to the next match without reading its document, nor opening the document store of its segment
+     *
+     * @return id of the matched document within its segment, see getSegmentId()
+     */
+    public synchronized int nextDocId() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int docId = this.nextDocId;
+        this.nextDocId = -1;
+        return docId;
+    }
+
+    /**
+     * Get id of the segment of the last match
+     */
+    public synchronized int getSegmentId() {
+        Preconditions.checkState(this.segment != null, "no current match");
+        return this.segment.info.id;
+    }
+
+    /**
+     * Stop iterating and release the reader, the iterator has no more documents afterwards
+     */
+    @Override
+    public synchronized void close() {
+        this.release();
+    }
+
+    private void release() {
+        if (!this.released) {
+            this.released = true;
+            this.matcher = null;
+            this.segment = null;
+            this.liveDocs = null;
+            // Segments must not be released while some prefetch task still reads them
+            if (this.segmentTasks != null) {
+                for (ForkJoinTask<IntList> segmentTask : this.segmentTasks) {
+                    segmentTask.quietlyJoin();
+                }
+            }
+            this.readerRelease.run();
+        }
+    }
+}
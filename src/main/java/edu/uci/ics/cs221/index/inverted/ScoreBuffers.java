@@ -0,0 +1,46 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import java.util.Arrays;
+
+/**
+ * Per term arrays used while scoring a segment, indexed by the position of the term in the query.
+ * One instance is kept per thread and grown to the largest query seen, so that ranking allocates nothing per query.
+ */
+public class ScoreBuffers {
+    public PostingsIterator[] postings = new PostingsIterator[0];
+    public Similarity.TermScorer[] scorers = new Similarity.TermScorer[0];
+    public double[] maxScores = new double[0];
+    // Terms by ascending max score
+    public int[] byMaxScore = new int[0];
+    // Sum of max scores of the first n terms by max score, numTerms + 1 values
+    public double[] boundSums = new double[1];
+    // Parts of the score of the current document
+    public boolean[] present = new boolean[0];
+    public double[] scores = new double[0];
+    public int[] freqs = new int[0];
+
+    /**
+     * Make room for a query of numTerms terms
+     */
+    public void ensureCapacity(int numTerms) {
+        if (numTerms <= this.postings.length) {
+            return;
+        }
+        this.postings = new PostingsIterator[numTerms];
+        this.scorers = new Similarity.TermScorer[numTerms];
+        this.maxScores = new double[numTerms];
+        this.byMaxScore = new int[numTerms];
+        this.boundSums = new double[numTerms + 1];
+        this.present = new boolean[numTerms];
+        this.scores = new double[numTerms];
+        this.freqs = new int[numTerms];
+    }
+
+    /**
+     * Drop iterators and scorers of the last query, so that they don't keep its pages reachable
+     */
+    public void clear() {
+        Arrays.fill(this.postings, null);
+        Arrays.fill(this.scorers, null);
+    }
+}
@@ -0,0 +1,147 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Bounded min-heap of scored documents on primitive arrays, so that ranking never boxes a score or allocates a DocID.
+ * <p>
+ * The root is the smallest score kept. Once the heap holds maxSize documents, a document only gets in with a
+ * larger score than the root, and takes its place. sortDescending() turns the heap into a list from the best.
+ */
+public class ScoreHeap {
+    private double[] scores = new double[16];
+    private int[] segmentIds = new int[16];
+    private int[] docIds = new int[16];
+    private int size = 0;
+    private int maxSize = Integer.MAX_VALUE;
+
+    /**
+     * Empty the heap for a new query
+     *
+     * @param maxSize maximum number of documents kept, null for all of them
+     */
+    public void reset(Integer maxSize) {
+        Preconditions.checkArgument(maxSize == null || maxSize >= 0, "maxSize must not be negative");
+        this.size = 0;
+        this.maxSize = maxSize == null ? Integer.MAX_VALUE : maxSize;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Maximum number of documents kept, Integer.MAX_VALUE for all of them
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Smallest score a document needs to get in, negative infinity while the heap is not full
+     */
+    public double threshold() {
+        if (this.size < this.maxSize) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        // Nothing gets into a heap of size 0
+        return this.size == 0 ? Double.POSITIVE_INFINITY : this.scores[0];
+    }
+
+    /**
+     * Add a document if it is among the best maxSize so far
+     *
+     * @return whether it got in
+     */
+    public boolean offer(double score, int segmentId, int docId) {
+        if (this.size < this.maxSize) {
+            this.ensureCapacity(this.size + 1);
+            this.set(this.size, score, segmentId, docId);
+            this.siftUp(this.size++);
+            return true;
+        }
+        if (this.size == 0 || score <= this.scores[0]) {
+            return false;
+        }
+        // Replace the smallest
+        this.set(0, score, segmentId, docId);
+        this.siftDown(0, this.size);
+        return true;
+    }
+
+    /**
+     * Sort documents by descending score, in place. The heap is no longer a heap afterwards, only reset() it.
+     */
+    public void sortDescending() {
+        // Heap sort: the root is moved behind the shrinking heap, smallest scores end up last
+        for (int end = this.size - 1; end > 0; end--) {
+            this.swap(0, end);
+            this.siftDown(0, end);
+        }
+    }
+
+    public double getScore(int index) {
+        return this.scores[index];
+    }
+
+    public int getSegmentId(int index) {
+        return this.segmentIds[index];
+    }
+
+    public int getDocId(int index) {
+        return this.docIds[index];
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (this.scores[parent] <= this.scores[index]) {
+                break;
+            }
+            this.swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index, int size) {
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && this.scores[child + 1] < this.scores[child]) {
+                child++;
+            }
+            if (this.scores[index] <= this.scores[child]) {
+                break;
+            }
+            this.swap(index, child);
+            index = child;
+        }
+    }
+
+    private void set(int index, double score, int segmentId, int docId) {
+        this.scores[index] = score;
+        this.segmentIds[index] = segmentId;
+        this.docIds[index] = docId;
+    }
+
+    private void swap(int i, int j) {
+        double score = this.scores[i];
+        int segmentId = this.segmentIds[i];
+        int docId = this.docIds[i];
+        this.set(i, this.scores[j], this.segmentIds[j], this.docIds[j]);
+        this.set(j, score, segmentId, docId);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.scores.length) {
+            int length = Math.max(capacity, this.scores.length * 2);
+            this.scores = Arrays.copyOf(this.scores, length);
+            this.segmentIds = Arrays.copyOf(this.segmentIds, length);
+            this.docIds = Arrays.copyOf(this.docIds, length);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package edu.uci.ics.cs221.index.inverted;
+
+/**
+ * Description of a live segment as recorded in the manifest
+ */
+public class SegmentInfo {
+    // Unique generation id, segment files are named by it
+    public int id = 0;
+    public int numDocuments = 0;
+    public int numTerms = 0;
+    public long wordsFileSize = 0;
+    public long listsFileSize = 0;
+    public long positionsFileSize = 0;
+    // Generation of the deleted documents bitmap, 0 if no document was ever deleted
+    public int deleteGeneration = 0;
+    public int numDeletedDocuments = 0;
+
+    public SegmentInfo(int id, int numDocuments, int numTerms) {
+        this.id = id;
+        this.numDocuments = numDocuments;
+        this.numTerms = numTerms;
+    }
+
+    /**
+     * Copy of this description, changed by delete before it is committed
+     */
+    public SegmentInfo copy() {
+        SegmentInfo segmentInfo = new SegmentInfo(this.id, this.numDocuments, this.numTerms);
+        segmentInfo.wordsFileSize = this.wordsFileSize;
+        segmentInfo.listsFileSize = this.listsFileSize;
+        segmentInfo.positionsFileSize = this.positionsFileSize;
+        segmentInfo.deleteGeneration = this.deleteGeneration;
+        segmentInfo.numDeletedDocuments = this.numDeletedDocuments;
+        return segmentInfo;
+    }
+
+    /**
+     * Size of the postings of the segment on disk, used to choose segments to merge
+     */
+    public long getSizeInBytes() {
+        return this.listsFileSize + this.positionsFileSize;
+    }
+
+    @Override
+    public String toString() {
+        return "Id: " + this.id + "; " +
+                "NumDocuments: " + this.numDocuments + "; " +
+                "NumTerms: " + this.numTerms + "; " +
+                "WordsFileSize: " + this.wordsFileSize + "; " +
+                "ListsFileSize: " + this.listsFileSize + "; " +
+                "PositionsFileSize: " + this.positionsFileSize + "; " +
+                "DeleteGeneration: " + this.deleteGeneration + "; " +
+                "NumDeletedDocuments: " + this.numDeletedDocuments;
+    }
+}
@@ -0,0 +1,178 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Versioned list of the live segments of an index.
+ * The manifest is the commit point of flush and merge: segment files that it doesn't list are garbage.
+ */
+public class SegmentManifest {
+    public static final String FILE_NAME = "manifest";
+    private static final int MAGIC = 0x4d494e49;
+    private static final int FORMAT = 2;
+    // Format before segments had deleted documents
+    private static final int FORMAT_NO_DELETES = 1;
+    // Files of segments and their document stores
+    private static final Pattern SEGMENT_FILE = Pattern.compile("(segment|store)\\d+_.*");
+
+    // Incremented on every write
+    public long version = 0;
+    // Next unused segment id
+    public int nextSegmentId = 0;
+    // Live segments in order
+    public List<SegmentInfo> segments = new ArrayList<>();
+
+    /**
+     * Read the manifest in the given folder
+     *
+     * @return manifest, null if the folder has none
+     */
+    public static SegmentManifest read(Path basePath) {
+        Path path = basePath.resolve(FILE_NAME);
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try (InputStream inputStream = Files.newInputStream(path);
+             DataInputStream input = new DataInputStream(inputStream)) {
+            if (input.readInt() != MAGIC) {
+                throw new IllegalStateException(path + " is not a supported manifest");
+            }
+            int format = input.readInt();
+            if (format != FORMAT && format != FORMAT_NO_DELETES) {
+                throw new IllegalStateException(path + " is not a supported manifest");
+            }
+            SegmentManifest manifest = new SegmentManifest();
+            manifest.version = input.readLong();
+            manifest.nextSegmentId = input.readInt();
+            int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                SegmentInfo segmentInfo = new SegmentInfo(input.readInt(), input.readInt(), input.readInt());
+                segmentInfo.wordsFileSize = input.readLong();
+                segmentInfo.listsFileSize = input.readLong();
+                segmentInfo.positionsFileSize = input.readLong();
+                if (format >= FORMAT) {
+                    segmentInfo.deleteGeneration = input.readInt();
+                    segmentInfo.numDeletedDocuments = input.readInt();
+                }
+                manifest.segments.add(segmentInfo);
+            }
+            return manifest;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Check if the given folder has segment files although it has no manifest.
+     * Indexes written before manifests existed look like that, their segments must not be overwritten.
+     */
+    public static boolean hasSegmentFiles(Path basePath) {
+        File[] files = basePath.toFile().listFiles(file -> SEGMENT_FILE.matcher(file.getName()).matches());
+        return files != null && files.length > 0;
+    }
+
+    /**
+     * Force all files of a segment to disk. Called before the manifest listing the segment is written, so that a
+     * manifest surviving a crash never names segment data that did not.
+     */
+    public static void syncSegmentFiles(Path basePath, int segmentId) {
+        Pattern segmentFile = Pattern.compile("(segment|store)" + segmentId + "_.*");
+        File[] files = basePath.toFile().listFiles(file -> file.isFile() && segmentFile.matcher(file.getName()).matches());
+        if (files == null) {
+            throw new UncheckedIOException(new IOException("cannot list " + basePath));
+        }
+        for (File file : files) {
+            syncFile(file.toPath());
+        }
+    }
+
+    /**
+     * Force a file to disk
+     */
+    public static void syncFile(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Force the entries of a folder to disk, so that files created or renamed in it survive a crash
+     */
+    private static void syncDirectory(Path basePath) {
+        try (FileChannel channel = FileChannel.open(basePath, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Some platforms can't open folders, renames there are as durable as the file system makes them
+            if (Files.isDirectory(basePath) && System.getProperty("os.name").startsWith("Windows")) {
+                return;
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Atomically replace the manifest in the given folder with this one.
+     * Files of new segments must have been forced to disk by syncSegmentFiles() first.
+     */
+    public void write(Path basePath) {
+        Path path = basePath.resolve(FILE_NAME);
+        Path tempPath = basePath.resolve(FILE_NAME + "_tmp");
+        this.version += 1;
+        // Entries of new segment files become durable before the manifest naming them
+        syncDirectory(basePath);
+
+        try (FileOutputStream outputStream = new FileOutputStream(tempPath.toFile());
+             DataOutputStream output = new DataOutputStream(outputStream)) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT);
+            output.writeLong(this.version);
+            output.writeInt(this.nextSegmentId);
+            output.writeInt(this.segments.size());
+            for (SegmentInfo segmentInfo : this.segments) {
+                output.writeInt(segmentInfo.id);
+                output.writeInt(segmentInfo.numDocuments);
+                output.writeInt(segmentInfo.numTerms);
+                output.writeLong(segmentInfo.wordsFileSize);
+                output.writeLong(segmentInfo.listsFileSize);
+                output.writeLong(segmentInfo.positionsFileSize);
+                output.writeInt(segmentInfo.deleteGeneration);
+                output.writeInt(segmentInfo.numDeletedDocuments);
+            }
+            output.flush();
+            // Make sure content is on disk before it becomes visible
+            outputStream.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        try {
+            try {
+                Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // The commit is durable once the rename is
+        syncDirectory(basePath);
+    }
+}
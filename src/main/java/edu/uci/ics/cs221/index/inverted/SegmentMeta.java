@@ -0,0 +1,114 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * Small per-segment metadata kept in memory while the segment is open, stored in `segment{id}_meta`.
+ * It is written before the segment is committed to the manifest and never changes afterwards.
+ */
+public class SegmentMeta {
+    private static final int MAGIC = 0x4d455441;
+    private static final int FORMAT = 1;
+
+    // Terms of the segment, null if the segment has no meta file
+    public BloomFilter<CharSequence> termFilter = null;
+
+    /**
+     * Get path of the meta file of a segment
+     */
+    public static Path getPath(Path basePath, int segmentId) {
+        return basePath.resolve("segment" + segmentId + "_meta");
+    }
+
+    /**
+     * Build meta of a segment with the given terms
+     *
+     * @param falsePositiveRate target false positive rate of the term filter
+     */
+    public static SegmentMeta create(Collection<String> terms, double falsePositiveRate) {
+        SegmentMeta meta = create(terms.size(), falsePositiveRate);
+        for (String term : terms) {
+            meta.addTerm(term);
+        }
+        return meta;
+    }
+
+    /**
+     * Build empty meta of a segment, terms are added one by one
+     *
+     * @param expectedTerms number of terms the term filter is sized for
+     * @param falsePositiveRate target false positive rate of the term filter
+     */
+    public static SegmentMeta create(int expectedTerms, double falsePositiveRate) {
+        SegmentMeta meta = new SegmentMeta();
+        // Filter of an empty segment still needs a positive size
+        meta.termFilter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), Math.max(expectedTerms, 1), falsePositiveRate);
+        return meta;
+    }
+
+    /**
+     * Add a term of the segment
+     */
+    public void addTerm(String term) {
+        this.termFilter.put(term);
+    }
+
+    /**
+     * Read meta of a segment
+     *
+     * @return meta, empty if the segment was written without one
+     */
+    public static SegmentMeta read(Path basePath, int segmentId) {
+        Path path = getPath(basePath, segmentId);
+        SegmentMeta meta = new SegmentMeta();
+        if (!Files.exists(path)) {
+            return meta;
+        }
+
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(path));
+             DataInputStream input = new DataInputStream(inputStream)) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT) {
+                throw new IllegalStateException(path + " is not a supported segment meta");
+            }
+            meta.termFilter = BloomFilter.readFrom(input, Funnels.stringFunnel(StandardCharsets.UTF_8));
+            return meta;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write meta of a segment
+     */
+    public void write(Path basePath, int segmentId) {
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(getPath(basePath, segmentId)));
+             DataOutputStream output = new DataOutputStream(outputStream)) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT);
+            this.termFilter.writeTo(output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Whether the segment could contain the term, false only if it surely doesn't
+     */
+    public boolean mightContain(String term) {
+        return this.termFilter == null || this.termFilter.mightContain(term);
+    }
+}
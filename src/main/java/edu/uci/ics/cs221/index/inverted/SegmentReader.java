@@ -0,0 +1,97 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import com.google.common.base.Preconditions;
+import edu.uci.ics.cs221.storage.DocumentStore;
+import edu.uci.ics.cs221.storage.MapdbDocStore;
+
+import java.nio.file.Path;
+
+/**
+ * Open files of a live segment, shared by all queries until the segment is merged away.
+ * <p>
+ * It is reference counted, files are closed when the last reference is released.
+ * Files of a segment that is no longer live are deleted at that point too.
+ */
+public class SegmentReader {
+    // Segment as it was opened. Deletes don't update it, deleted documents of each generation are held by index readers
+    public SegmentInfo info = null;
+    public PageFileChannel wordsChannel = null;
+    public PageFileChannel listsChannel = null;
+    // Null if the index is not positional
+    public PageFileChannel positionsChannel = null;
+    public SegmentMeta meta = null;
+    // Null if the segment was written without norms
+    public Norms norms = null;
+    // Held by the index manager while the segment is live, and by each index reader using it
+    private int refCount = 1;
+    // Run once files are closed, if the segment is no longer live
+    private Runnable onClose = null;
+    // Opened by the first document read, queries needing only doc ids never open it
+    private volatile DocumentStore documentStore = null;
+    private Path basePath = null;
+
+    public SegmentReader(Path basePath, SegmentInfo info, boolean supportPosition) {
+        this.info = info;
+        this.wordsChannel = PageFileChannel.createOrOpen(basePath.resolve("segment" + info.id + "_words"));
+        this.listsChannel = PageFileChannel.createOrOpen(basePath.resolve("segment" + info.id + "_lists"));
+        if (supportPosition) {
+            this.positionsChannel = PageFileChannel.createOrOpen(basePath.resolve("segment" + info.id + "_positions"));
+        }
+        this.basePath = basePath;
+        this.meta = SegmentMeta.read(basePath, info.id);
+        this.norms = Norms.read(basePath, info.id);
+    }
+
+    public synchronized void incRef() {
+        Preconditions.checkState(this.refCount > 0, "segment reader is already closed");
+        this.refCount++;
+    }
+
+    public synchronized void decRef() {
+        Preconditions.checkState(this.refCount > 0, "segment reader is already closed");
+        this.refCount--;
+        if (this.refCount == 0) {
+            this.close();
+        }
+    }
+
+    /**
+     * Get document store of the segment, opening it on first use
+     */
+    public DocumentStore getDocumentStore() {
+        // Documents are read without lock once the store is open
+        DocumentStore documentStore = this.documentStore;
+        if (documentStore != null) {
+            return documentStore;
+        }
+        synchronized (this) {
+            Preconditions.checkState(this.refCount > 0, "segment reader is already closed");
+            if (this.documentStore == null) {
+                // Committed stores are never written, read only handles don't conflict with each other
+                this.documentStore = MapdbDocStore.createOrOpenReadOnly(this.basePath.resolve("store" + this.info.id + "_").toString());
+            }
+            return this.documentStore;
+        }
+    }
+
+    /**
+     * Delete files of the segment once no one reads it
+     */
+    public void deleteOnClose(Runnable onClose) {
+        this.onClose = onClose;
+    }
+
+    private void close() {
+        this.wordsChannel.close();
+        this.listsChannel.close();
+        if (this.positionsChannel != null) {
+            this.positionsChannel.close();
+        }
+        if (this.documentStore != null) {
+            this.documentStore.close();
+        }
+        if (this.onClose != null) {
+            this.onClose.run();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import java.util.List;
+
+/**
+ * Runs merges in the flushing thread, flush returns once they are committed.
+ */
+public class SerialMergeScheduler implements MergeScheduler {
+
+    @Override
+    public void merge(InvertedIndexManager manager) {
+        // Merged segments may be merged further
+        for (List<List<SegmentInfo>> merges = manager.findMerges(); !merges.isEmpty(); merges = manager.findMerges()) {
+            for (List<SegmentInfo> segments : merges) {
+                manager.executeMerge(segments);
+            }
+        }
+    }
+
+    @Override
+    public void sync() {
+        // Merges are done when merge() returns
+    }
+}
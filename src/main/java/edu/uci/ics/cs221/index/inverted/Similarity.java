@@ -0,0 +1,55 @@
+package edu.uci.ics.cs221.index.inverted;
+
+/**
+ * Scoring model of ranked search.
+ * <p>
+ * A document's score is combine(sum of score parts, document norm), score parts being given by the term scorer of
+ * each query term the document contains. Term scorers are built once per query, so that everything
+ * constant for the query is computed before any posting is read.
+ * <p>
+ * Top K search skips documents by upper bounds: a document containing a set of terms never scores more than
+ * bound(sum of maxScore of the terms), and bound must not decrease as terms are added.
+ */
+public interface Similarity {
+
+    /**
+     * Score parts of a query term
+     */
+    interface TermScorer {
+        /**
+         * Part of the term added to the score sum of a document
+         *
+         * @param freq number of times the term is in the document
+         * @param docLength number of tokens of the document
+         */
+        double score(int freq, int docLength);
+
+        /**
+         * Part of the term added to the sum bound() is given
+         */
+        double maxScore();
+    }
+
+    /**
+     * Build scorer of a term for a query
+     *
+     * @param queryFrequency number of times the term is in the query
+     * @param documentFrequency number of documents having the term, over the index
+     * @param numDocuments number of documents in the index
+     * @param averageLength average number of tokens of documents in the index
+     */
+    TermScorer scorer(int queryFrequency, int documentFrequency, int numDocuments, double averageLength);
+
+    /**
+     * Score of a document from the sum of parts of its terms
+     *
+     * @param documentNorm length of the term frequency vector of the document over all of its terms, or over the
+     *                     query terms it contains if its segment was written without vector norms
+     */
+    double combine(double scoreSum, double documentNorm);
+
+    /**
+     * Largest score of a document whose terms have maxScore summing to maxScoreSum
+     */
+    double bound(double maxScoreSum);
+}
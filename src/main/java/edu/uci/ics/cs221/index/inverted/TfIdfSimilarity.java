@@ -0,0 +1,53 @@
+package edu.uci.ics.cs221.index.inverted;
+
+/**
+ * Cosine between the query in TF-IDF weights and a document in term frequencies, scaled by the query vector length.
+ * <p>
+ * A term weighs the sum of `numDocuments / df` over its occurrences in the query, and `tf` in a document. The document
+ * vector is normalized by its length over all of its terms, stored in the segment norms. It leaves out idf since
+ * document frequencies are only known once all segments are, at query time. The score of a document is at most the
+ * length of the query vector over its terms (Cauchy-Schwarz), which is the bound.
+ * <p>
+ * This is the default similarity.
+ */
+public class TfIdfSimilarity implements Similarity {
+
+    private static class TfIdfScorer implements TermScorer {
+        private final double queryWeight;
+
+        private TfIdfScorer(double queryWeight) {
+            this.queryWeight = queryWeight;
+        }
+
+        @Override
+        public double score(int freq, int docLength) {
+            return freq * this.queryWeight;
+        }
+
+        @Override
+        public double maxScore() {
+            return this.queryWeight * this.queryWeight;
+        }
+    }
+
+    @Override
+    public TermScorer scorer(int queryFrequency, int documentFrequency, int numDocuments, double averageLength) {
+        double idf = numDocuments / (double) documentFrequency;
+        // Added once per occurrence, rounding the same as weights summed up term by term
+        double queryWeight = 0.0;
+        for (int i = 0; i < queryFrequency; i++) {
+            queryWeight += idf;
+        }
+        return new TfIdfScorer(queryWeight);
+    }
+
+    @Override
+    public double combine(double scoreSum, double documentNorm) {
+        return scoreSum / documentNorm;
+    }
+
+    @Override
+    public double bound(double maxScoreSum) {
+        return Math.sqrt(maxScoreSum);
+    }
+}
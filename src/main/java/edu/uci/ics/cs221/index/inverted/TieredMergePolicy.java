@@ -0,0 +1,143 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges segments of similar size, so that each document is rewritten about once per tier instead of on every merge.
+ * <p>
+ * Segments are put in tiers by the size of their lists and positions files: a segment of tier n is about
+ * segmentsPerTier^n times as large as the floor size. Once segmentsPerTier neighbouring segments are of the same tier,
+ * they are merged into the next tier, at most maxMergeAtOnce segments per merge.
+ * Only neighbours are merged, since the merged segment takes the place of the first one and documents must stay in order.
+ * Merges keep live order going from larger to smaller tiers, so segments of a tier are mostly neighbours anyway.
+ * A merge never produces a segment larger than maxMergedSegmentBytes, larger segments are left alone.
+ */
+public class TieredMergePolicy implements MergePolicy {
+
+    /**
+     * The default number of segments of a tier that triggers a merge.
+     */
+    public static int DEFAULT_SEGMENTS_PER_TIER = 10;
+
+    /**
+     * The default maximum number of segments merged at once.
+     */
+    public static int DEFAULT_MAX_MERGE_AT_ONCE = 10;
+
+    /**
+     * The default size under which segments are all in the lowest tier, in number of pages.
+     */
+    public static int DEFAULT_FLOOR_SEGMENT_PAGES = 16;
+
+    /**
+     * The default maximum size of a merged segment, in bytes.
+     */
+    public static long DEFAULT_MAX_MERGED_SEGMENT_BYTES = 512L * 1024 * 1024;
+
+    private final int segmentsPerTier;
+    private final int maxMergeAtOnce;
+    private final long floorSegmentBytes;
+    private final long maxMergedSegmentBytes;
+
+    public TieredMergePolicy() {
+        this(DEFAULT_SEGMENTS_PER_TIER, DEFAULT_MAX_MERGE_AT_ONCE,
+                (long) DEFAULT_FLOOR_SEGMENT_PAGES * PageFileChannel.PAGE_SIZE, DEFAULT_MAX_MERGED_SEGMENT_BYTES);
+    }
+
+    public TieredMergePolicy(int segmentsPerTier, int maxMergeAtOnce, long floorSegmentBytes, long maxMergedSegmentBytes) {
+        Preconditions.checkArgument(segmentsPerTier >= 2, "segmentsPerTier must be at least 2");
+        Preconditions.checkArgument(maxMergeAtOnce >= 2, "maxMergeAtOnce must be at least 2");
+        Preconditions.checkArgument(floorSegmentBytes > 0, "floorSegmentBytes must be positive");
+        Preconditions.checkArgument(maxMergedSegmentBytes > 0, "maxMergedSegmentBytes must be positive");
+        this.segmentsPerTier = segmentsPerTier;
+        this.maxMergeAtOnce = maxMergeAtOnce;
+        this.floorSegmentBytes = floorSegmentBytes;
+        this.maxMergedSegmentBytes = maxMergedSegmentBytes;
+    }
+
+    /**
+     * Get tier of a segment, segments under the floor size are all in tier 0
+     */
+    public int getTier(SegmentInfo segment) {
+        double ratio = Math.max(segment.getSizeInBytes(), this.floorSegmentBytes) / (double) this.floorSegmentBytes;
+        return (int) Math.floor(Math.log(ratio) / Math.log(this.segmentsPerTier));
+    }
+
+    @Override
+    public List<List<SegmentInfo>> findMerges(List<SegmentInfo> segments) {
+        List<List<SegmentInfo>> merges = new ArrayList<>();
+        // Runs of neighbouring segments of the same tier, a segment too large to merge ends a run
+        List<SegmentInfo> run = new ArrayList<>();
+        int runTier = -1;
+        for (SegmentInfo segment : segments) {
+            int tier = segment.getSizeInBytes() >= this.maxMergedSegmentBytes ? -1 : this.getTier(segment);
+            if (tier != runTier) {
+                this.addMerges(run, merges);
+                run = new ArrayList<>();
+                runTier = tier;
+            }
+            if (tier >= 0) {
+                run.add(segment);
+            }
+        }
+        this.addMerges(run, merges);
+        return merges;
+    }
+
+    /**
+     * Split a run of segments of the same tier into merges bounded by fan-in and merged size, if the run is full
+     */
+    private void addMerges(List<SegmentInfo> run, List<List<SegmentInfo>> merges) {
+        if (run.size() < this.segmentsPerTier) {
+            return;
+        }
+        List<SegmentInfo> merge = new ArrayList<>();
+        long mergeBytes = 0;
+        for (SegmentInfo segment : run) {
+            if (merge.size() == this.maxMergeAtOnce || mergeBytes + segment.getSizeInBytes() > this.maxMergedSegmentBytes) {
+                if (merge.size() >= 2) {
+                    merges.add(merge);
+                }
+                merge = new ArrayList<>();
+                mergeBytes = 0;
+            }
+            merge.add(segment);
+            mergeBytes += segment.getSizeInBytes();
+        }
+        if (merge.size() >= 2) {
+            merges.add(merge);
+        }
+    }
+
+    /**
+     * Merge the neighbouring segments with the smallest total size, at most maxMergeAtOnce of them.
+     * Merging neighbours keeps documents in order, merged size is not bounded.
+     */
+    @Override
+    public List<List<SegmentInfo>> findForcedMerges(List<SegmentInfo> segments, int maxNumSegments) {
+        List<List<SegmentInfo>> merges = new ArrayList<>();
+        if (segments.size() <= maxNumSegments) {
+            return merges;
+        }
+
+        int mergeSize = Math.min(segments.size() - maxNumSegments + 1, this.maxMergeAtOnce);
+        int bestStart = 0;
+        long bestBytes = Long.MAX_VALUE;
+        long windowBytes = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            windowBytes += segments.get(i).getSizeInBytes();
+            if (i >= mergeSize) {
+                windowBytes -= segments.get(i - mergeSize).getSizeInBytes();
+            }
+            if (i >= mergeSize - 1 && windowBytes < bestBytes) {
+                bestBytes = windowBytes;
+                bestStart = i - mergeSize + 1;
+            }
+        }
+        merges.add(new ArrayList<>(segments.subList(bestStart, bestStart + mergeSize)));
+        return merges;
+    }
+}
@@ -1,5 +1,10 @@
 package edu.uci.ics.cs221.index.inverted;
 
+import com.google.common.base.Preconditions;
+import utils.Utils;
+
+import java.nio.ByteBuffer;
+
 public class WordBlock {
     public int wordLength = 0;
     public String word = "";
@@ -8,6 +13,8 @@ public class WordBlock {
     public int listLength = 0;
     public int globalOffsetLength = 0;
     public int sizeLength = 0;
+    // Length of the skip table after the size list, 0 if the inverted list fits in one block
+    public int skipLength = 0;
 
     public int segment = 0;
 
@@ -21,8 +28,44 @@ public class WordBlock {
         this.sizeLength = sizeLength;
     }
 
+    /**
+     * Read a word block at current position of the words buffer
+     */
+    public static WordBlock read(ByteBuffer wordsBuffer, int segment) {
+        int wordLength = wordsBuffer.getInt();
+        WordBlock wordBlock = new WordBlock(
+                wordLength, // Word length
+                Utils.sliceStringFromBuffer(wordsBuffer, wordsBuffer.position(), wordLength), // Word
+                wordsBuffer.getInt(), // Lists page num
+                wordsBuffer.getInt(),  // List offset
+                wordsBuffer.getInt(),   // List length
+                wordsBuffer.getInt(),   //  Global offset length
+                wordsBuffer.getInt()   // Size list length
+        );
+        wordBlock.skipLength = wordsBuffer.getInt(); // Skip table length
+        wordBlock.segment = segment;
+
+        return wordBlock;
+    }
+
+    /**
+     * Length of the whole list block of the word in the lists file
+     */
+    public int getListBlockLength() {
+        return this.listLength + this.globalOffsetLength + this.sizeLength + this.skipLength;
+    }
+
+    /**
+     * Number of documents in the inverted list, that is the document frequency of the word in its segment.
+     * Sizes are always written by NaiveCompressor, 4 bytes each, so the dictionary entry holds it without decoding the list.
+     */
+    public int getNumDocuments() {
+        Preconditions.checkState(this.sizeLength % Integer.BYTES == 0, "size list of %s is not made of 4 byte sizes", this.word);
+        return this.sizeLength / Integer.BYTES;
+    }
+
     public int getWordBlockCapacity() {
-        return Integer.BYTES + this.wordLength + Integer.BYTES + Integer.BYTES + Integer.BYTES + Integer.BYTES + Integer.BYTES;
+        return Integer.BYTES + this.wordLength + Integer.BYTES + Integer.BYTES + Integer.BYTES + Integer.BYTES + Integer.BYTES + Integer.BYTES;
     }
 
     @Override
@@ -32,8 +75,9 @@ public class WordBlock {
                 "ListsPageNum: " + this.listsPageNum + "; " +
                 "ListOffset: " + this.listOffset + "; " +
                 "ListLength: " + this.listLength + "; " +
-                "GlobalOffsetLength: " + this.globalOffsetLength +
-                "SizeLength: " + this.sizeLength;
+                "GlobalOffsetLength: " + this.globalOffsetLength + "; " +
+                "SizeLength: " + this.sizeLength + "; " +
+                "SkipLength: " + this.skipLength;
     }
 
     public boolean equals(Object object){
@@ -0,0 +1,66 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Walks the word blocks of a segment in sorted order, holding only one words page in memory.
+ * Used by merge to read the dictionaries of all input segments side by side.
+ */
+public class WordCursor {
+    public int segmentId = 0;
+    // Added to doc ids of this segment in the merged segment
+    public int docBase = 0;
+    // New doc id of each doc id in the merged segment, -1 if deleted. Null if the segment has no deleted documents
+    public int[] docMap = null;
+    public PageFileChannel wordsChannel = null;
+    public PageFileChannel listsChannel = null;
+    // Null if the index is not positional
+    public PageFileChannel positionsChannel = null;
+    // Word block at the cursor, null before the first next() and after the last word
+    public WordBlock current = null;
+
+    private int pageNum = -1;
+    private int numPages = 0;
+    private ByteBuffer page = null;
+    private int pageSize = 0;
+
+    public WordCursor(int segmentId, int docBase, PageFileChannel wordsChannel, PageFileChannel listsChannel, PageFileChannel positionsChannel) {
+        this.segmentId = segmentId;
+        this.docBase = docBase;
+        this.wordsChannel = wordsChannel;
+        this.listsChannel = listsChannel;
+        this.positionsChannel = positionsChannel;
+        this.numPages = wordsChannel.getNumPages();
+    }
+
+    /**
+     * Move to the next word block
+     *
+     * @return false if there are no more words
+     */
+    public boolean next() {
+        // Read next non-empty page once current one is used up
+        while (this.page == null || this.page.position() >= this.pageSize) {
+            this.pageNum += 1;
+            if (this.pageNum >= this.numPages) {
+                this.current = null;
+                return false;
+            }
+            this.page = this.wordsChannel.readPage(this.pageNum);
+            this.pageSize = this.page.getInt();
+        }
+        this.current = WordBlock.read(this.page, this.segmentId);
+        return true;
+    }
+
+    /**
+     * Close channels of the segment
+     */
+    public void close() {
+        this.wordsChannel.close();
+        this.listsChannel.close();
+        if (this.positionsChannel != null) {
+            this.positionsChannel.close();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package edu.uci.ics.cs221.index.positional;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 public interface Compressor {
@@ -25,4 +27,53 @@ public interface Compressor {
         return decode(bytes, 0, bytes.length);
     }
 
+    /**
+     * Upper bound of the number of bytes that encoding the given number of integers takes.
+     */
+    default int maxEncodedLength(int length) {
+        return length * 5;
+    }
+
+    /**
+     * Encodes the first `length` integers of an array into a byte buffer, starting at its position.
+     * The buffer must have at least `maxEncodedLength(length)` bytes remaining.
+     *
+     * @return number of bytes written
+     */
+    default int encode(int[] integers, int length, ByteBuffer dest) {
+        List<Integer> list = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            list.add(integers[i]);
+        }
+        byte[] bytes = encode(list);
+        dest.put(bytes);
+        return bytes.length;
+    }
+
+    /**
+     * Decodes part of a byte array into an int list, replacing its contents.
+     */
+    default void decode(byte[] bytes, int startOffset, int length, IntList dest) {
+        dest.clear();
+        for (int integer : decode(bytes, startOffset, length)) {
+            dest.add(integer);
+        }
+    }
+
+    /**
+     * Decodes part of a byte buffer into an int list, replacing its contents.
+     * Bytes are read by absolute index, so the position of the buffer is not changed.
+     */
+    default void decode(ByteBuffer bytes, int startOffset, int length, IntList dest) {
+        if (bytes.hasArray()) {
+            decode(bytes.array(), bytes.arrayOffset() + startOffset, length, dest);
+            return;
+        }
+        byte[] copy = new byte[length];
+        for (int i = 0; i < length; i++) {
+            copy[i] = bytes.get(startOffset + i);
+        }
+        decode(copy, 0, length, dest);
+    }
+
 }
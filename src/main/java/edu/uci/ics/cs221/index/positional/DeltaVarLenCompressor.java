@@ -1,7 +1,6 @@
 package edu.uci.ics.cs221.index.positional;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
@@ -15,56 +14,65 @@ public class DeltaVarLenCompressor implements Compressor {
         if(integers == null || integers.size() == 0)
             return new byte[0];
 
-        // Process gaps
-        int[] gaps = new int[integers.size()];
-        gaps[0] = integers.get(0);
-        for(int i = integers.size() - 1; i >= 1; i-- ) {
-            gaps[i] = integers.get(i) - integers.get(i-1);
-        }
+        IntList intList = IntList.of(integers);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(this.maxEncodedLength(intList.size()));
+        int length = this.encode(intList.getValues(), intList.size(), byteBuffer);
 
-        //Process bytes:
-        List<Byte> codes = new ArrayList<>();
-        for( int i :gaps){
-            List<Byte> encodeParts = new ArrayList<>();
-            int num = i;
-            int slice = 0;
-            while(num > 0){
-                // Get lowest 7 bit & shift num
-                slice = num & 0x7F;
-                num >>= 7;
+        byte[] result = new byte[length];
+        byteBuffer.flip();
+        byteBuffer.get(result);
+        return result;
+    }
 
-                // Put slice(7 bit) in encode array
-                if (encodeParts.size() > 0)
-                    slice += (1 << 7);
-                encodeParts.add((byte)slice);
-                slice = 0;
-            }
+    @Override
+    public List<Integer> decode(byte[] bytes, int start, int length) {
+        if(length < 0 || start + length > bytes.length)
+            return null;    //todo null or others?
 
-            // Add Num 0: haven't been processed
-            if (encodeParts.size() == 0)
-                encodeParts.add((byte)slice);
+        IntList result = new IntList();
+        this.decode(bytes, start, length, result);
+        return result.toList();
+    }
 
-            // Reverse list and add this number's code to bytes.
-            Collections.reverse(encodeParts);
-            codes.addAll(encodeParts);
-        }
+    @Override
+    public int maxEncodedLength(int length) {
+        // A 32-bit number takes at most 5 groups of 7 bits
+        return length * 5;
+    }
 
-        byte[] result = new byte[codes.size()];
-        for(int i = 0 ; i < codes.size(); i++){
-            result[i] = codes.get(i);
+    @Override
+    public int encode(int[] integers, int length, ByteBuffer dest) {
+        int start = dest.position();
+        for (int i = 0; i < length; i++) {
+            // Process gap
+            int gap = i == 0 ? integers[0] : integers[i] - integers[i - 1];
+            // Negative gap can't be encoded, it is written as 0
+            if (gap < 0) {
+                gap = 0;
+            }
+
+            // Count 7 bit groups
+            int groups = 1;
+            while (groups < 5 && (gap >>> (7 * groups)) != 0) {
+                groups++;
+            }
+            // Put higher groups first with 1 on highest bit, the last group has 0 on highest bit
+            for (int group = groups - 1; group >= 1; group--) {
+                dest.put((byte) (((gap >>> (7 * group)) & 0x7F) | 0x80));
+            }
+            dest.put((byte) (gap & 0x7F));
         }
 
-        return result;
+        return dest.position() - start;
     }
 
     @Override
-    public List<Integer> decode(byte[] bytes, int start, int length) {
-        if(length < 0 || start + length > bytes.length)
-            return null;    //todo null or others?
+    public void decode(byte[] bytes, int start, int length, IntList dest) {
+        dest.clear();
 
         // Read from variable-length bytes
-        List<Integer> result = new ArrayList<>();
         int num = 0;
+        int previous = 0;
         for(int i = start; i < start + length; i++){
             // Get unsigned number
             int newInt = bytes[i] & 0xFF;
@@ -75,18 +83,32 @@ public class DeltaVarLenCompressor implements Compressor {
             }
             // 0 on highest bit : a number ends
             else {
-                // Directly concatenate last 7 bit & push back decoded number & reset
+                // Directly concatenate last 7 bit, fill the gap & push back decoded number & reset
                 num = (num << 7) + newInt;
-                result.add(num);
+                previous += num;
+                dest.add(previous);
                 num = 0;
             }
         }
+    }
 
-        // Fill the gap
-        for(int i = 1 ; i < result.size(); i++ ){
-            result.set(i, result.get(i) + result.get(i -1));
-        }
+    @Override
+    public void decode(ByteBuffer bytes, int start, int length, IntList dest) {
+        dest.clear();
 
-        return result;
+        // Same as decoding a byte array, without copying the buffer
+        int num = 0;
+        int previous = 0;
+        for (int i = start; i < start + length; i++) {
+            int newInt = bytes.get(i) & 0xFF;
+            if (newInt > 127) {
+                num = (num << 7) + (newInt & 0x7F);
+            } else {
+                num = (num << 7) + newInt;
+                previous += num;
+                dest.add(previous);
+                num = 0;
+            }
+        }
     }
 }
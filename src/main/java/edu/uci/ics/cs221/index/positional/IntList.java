@@ -0,0 +1,113 @@
+package edu.uci.ics.cs221.index.positional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable list of primitive ints.
+ * It is used as a reusable buffer for postings and positions, so that they are never boxed.
+ */
+public class IntList {
+    private int[] values;
+    private int size = 0;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        this.values = new int[Math.max(capacity, 1)];
+    }
+
+    public static IntList of(List<Integer> integers) {
+        IntList intList = new IntList(integers.size());
+        for (int integer : integers) {
+            intList.add(integer);
+        }
+        return intList;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public int get(int index) {
+        if (index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+        return this.values[index];
+    }
+
+    public void set(int index, int value) {
+        if (index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+        this.values[index] = value;
+    }
+
+    public void add(int value) {
+        this.ensureCapacity(this.size + 1);
+        this.values[this.size++] = value;
+    }
+
+    public void addAll(IntList other) {
+        this.ensureCapacity(this.size + other.size);
+        System.arraycopy(other.values, 0, this.values, this.size, other.size);
+        this.size += other.size;
+    }
+
+    /**
+     * Remove the last value
+     */
+    public int removeLast() {
+        return this.values[--this.size];
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > this.values.length) {
+            this.values = Arrays.copyOf(this.values, Math.max(capacity, this.values.length * 2));
+        }
+    }
+
+    /**
+     * Backing array, only the first size() values are valid
+     */
+    public int[] getValues() {
+        return this.values;
+    }
+
+    public int indexOf(int value) {
+        for (int i = 0; i < this.size; i++) {
+            if (this.values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    public List<Integer> toList() {
+        List<Integer> integers = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            integers.add(this.values[i]);
+        }
+        return integers;
+    }
+
+    @Override
+    public String toString() {
+        return this.toList().toString();
+    }
+}
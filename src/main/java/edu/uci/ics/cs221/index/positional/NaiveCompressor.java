@@ -27,4 +27,35 @@ public class NaiveCompressor implements Compressor {
         return integers;
     }
 
+    @Override
+    public int maxEncodedLength(int length) {
+        return length * 4;
+    }
+
+    @Override
+    public int encode(int[] integers, int length, ByteBuffer dest) {
+        for (int i = 0; i < length; i++) {
+            dest.putInt(integers[i]);
+        }
+        return length * 4;
+    }
+
+    @Override
+    public void decode(byte[] bytes, int startOffset, int length, IntList dest) {
+        dest.clear();
+        dest.ensureCapacity(length / 4);
+        for (int i = startOffset; i + 4 <= startOffset + length; i += 4) {
+            dest.add((bytes[i] << 24) | ((bytes[i + 1] & 0xFF) << 16) | ((bytes[i + 2] & 0xFF) << 8) | (bytes[i + 3] & 0xFF));
+        }
+    }
+
+    @Override
+    public void decode(ByteBuffer bytes, int startOffset, int length, IntList dest) {
+        dest.clear();
+        dest.ensureCapacity(length / 4);
+        for (int i = startOffset; i + 4 <= startOffset + length; i += 4) {
+            dest.add(bytes.getInt(i));
+        }
+    }
+
 }
@@ -2,9 +2,7 @@ package utils;
 
 import edu.uci.ics.cs221.analysis.Analyzer;
 import edu.uci.ics.cs221.analysis.PunctuationTokenizer;
-import edu.uci.ics.cs221.index.inverted.MergedWordBlock;
 import edu.uci.ics.cs221.index.inverted.Pair;
-import edu.uci.ics.cs221.index.inverted.WordBlock;
 import edu.uci.ics.cs221.storage.Document;
 
 import java.io.File;
@@ -71,53 +69,6 @@ public class Utils {
         return fileCount;
     }
 
-    public static List<MergedWordBlock> mergeWordBlocks(List<WordBlock> list1, List<WordBlock> list2, List<String> deletedWords) {
-        List<MergedWordBlock> newList = new ArrayList<>();
-        for (WordBlock wordBlock1 : list1) {
-            // Ignore deleted words
-            if (deletedWords.contains(wordBlock1.word)) {
-                continue;
-            }
-
-            MergedWordBlock mergedWordBlock = new MergedWordBlock(true);
-            mergedWordBlock.leftWordBlock = wordBlock1;
-
-            for (WordBlock wordBlock2 : list2) {
-                if (wordBlock1.word.equals(wordBlock2.word)) {
-                    mergedWordBlock.isSingle = false;
-                    mergedWordBlock.rightWordBlock = wordBlock2;
-                    // Remove it from word block list 2
-                    list2.remove(wordBlock2);
-                    break;
-                }
-            }
-            newList.add(mergedWordBlock);
-        }
-
-        for (WordBlock wordBlock2 : list2) {
-            // Ignore deleted words
-            if (deletedWords.contains(wordBlock2.word)) {
-                continue;
-            }
-
-            boolean found = false;
-            for (WordBlock wordBlock1 : list1) {
-                if (wordBlock2.word.equals(wordBlock1.word)) {
-                    found = true;
-                    break;
-                }
-            }
-            if (!found) {
-                MergedWordBlock mergedWordBlock = new MergedWordBlock(true);
-                mergedWordBlock.rightWordBlock = wordBlock2;
-                newList.add(mergedWordBlock);
-            }
-        }
-
-        return newList;
-    }
-
-
     public static <T> List<T> intersectLists(List<T> list1, List<T> list2) {
         List<T> list = new ArrayList<T>();
 
@@ -166,16 +117,6 @@ public class Utils {
         file.renameTo(tempFile);
     }
 
-    public static void increaseDocId(int baseDocSize, List<Integer> documentIds) {
-        if (documentIds == null) {
-            return;
-        }
-        for (int i = 0; i < documentIds.size(); i++) {
-            int d = baseDocSize + documentIds.get(i);
-            documentIds.set(i, d);
-        }
-    }
-
     /**
      *
      * @param document
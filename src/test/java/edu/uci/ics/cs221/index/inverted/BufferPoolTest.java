@@ -0,0 +1,168 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.index.positional.DeltaVarLenCompressor;
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BufferPoolTest extends IndexFixture {
+    private PageFileChannel channel;
+
+    @Before
+    public void init() {
+        channel = PageFileChannel.createOrOpen(Paths.get(path, "pages"));
+        for (int i = 0; i < 4; i++) {
+            ByteBuffer page = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+            page.putInt(i);
+            channel.appendPage(page);
+        }
+        PageFileChannel.resetCounters();
+    }
+
+    @After
+    public void clean() {
+        channel.close();
+    }
+
+    /**
+     * Second pin of a page is served from memory
+     */
+    @Test
+    public void test1() {
+        BufferPool bufferPool = new BufferPool(2);
+        BufferPool.Page page = bufferPool.pin(channel, 1);
+        assertEquals(1, page.buffer.getInt());
+        bufferPool.unpin(page);
+        page = bufferPool.pin(channel, 1);
+        assertEquals(1, page.buffer.getInt());
+        bufferPool.unpin(page);
+
+        assertEquals(1, PageFileChannel.getReadCounter());
+        assertEquals(1, PageFileChannel.getMissCounter());
+        assertEquals(1, PageFileChannel.getHitCounter());
+    }
+
+    /**
+     * Pinned pages are never evicted
+     */
+    @Test
+    public void test2() {
+        BufferPool bufferPool = new BufferPool(2);
+        BufferPool.Page page0 = bufferPool.pin(channel, 0);
+        for (int i = 1; i < 4; i++) {
+            BufferPool.Page page = bufferPool.pin(channel, i);
+            assertEquals(i, page.buffer.getInt());
+            bufferPool.unpin(page);
+        }
+        assertEquals(0, page0.buffer.getInt());
+        assertEquals(2, bufferPool.size());
+
+        // Page 0 is still cached
+        PageFileChannel.resetCounters();
+        bufferPool.pin(channel, 0);
+        assertEquals(0, PageFileChannel.getReadCounter());
+    }
+
+    /**
+     * Invalidated file is read again
+     */
+    @Test
+    public void test3() {
+        BufferPool bufferPool = new BufferPool(4);
+        bufferPool.unpin(bufferPool.pin(channel, 2));
+        bufferPool.invalidate(Paths.get(path, "pages"));
+        assertEquals(0, bufferPool.size());
+
+        bufferPool.pin(channel, 2);
+        assertEquals(2, PageFileChannel.getReadCounter());
+    }
+
+    /**
+     * Repeated queries read pages from the pool
+     */
+    @Test
+    public void test4() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+        manager.addDocument(new Document("cat dog"));
+        manager.addDocument(new Document("cat bird"));
+        manager.flush();
+
+        PageFileChannel.resetCounters();
+        assertTrue(manager.searchQuery("cat").hasNext());
+        int firstReads = PageFileChannel.getReadCounter();
+        assertTrue(firstReads > 0);
+
+        PageFileChannel.resetCounters();
+        assertTrue(manager.searchQuery("cat").hasNext());
+        assertEquals(0, PageFileChannel.getReadCounter());
+        assertEquals(firstReads, PageFileChannel.getHitCounter());
+    }
+
+    /**
+     * Merges read their input segments without going through the pool
+     */
+    @Test
+    public void test5() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new DeltaVarLenCompressor());
+        for (int i = 0; i < 600; i++) {
+            manager.addDocument(new Document("cat dog " + (i % 2 == 0 ? "bird " : "fish ") + i));
+            if (i % 300 == 299) {
+                manager.flush();
+            }
+        }
+        manager.deleteDocuments("fish");
+
+        PageFileChannel.resetCounters();
+        manager.mergeAllSegments();
+        assertEquals(1, manager.getNumSegments());
+        assertTrue(PageFileChannel.getReadCounter() > 0);
+        assertEquals(0, PageFileChannel.getMissCounter());
+        assertEquals(0, PageFileChannel.getHitCounter());
+        manager.close();
+    }
+
+    /**
+     * Unpinning a page read without caching leaves the pin of the same page cached afterwards
+     */
+    @Test
+    public void test6() {
+        BufferPool bufferPool = new BufferPool(1);
+        BufferPool.Page page0 = bufferPool.pin(channel, 0);
+        BufferPool.Page uncached = bufferPool.pin(channel, 1);
+        assertFalse(uncached.isCached());
+        bufferPool.unpin(page0);
+
+        BufferPool.Page page1 = bufferPool.pin(channel, 1);
+        assertTrue(page1.isCached());
+        bufferPool.unpin(uncached);
+        // Page 1 is still pinned, page 2 can't take its frame
+        assertFalse(bufferPool.pin(channel, 2).isCached());
+        assertEquals(1, page1.buffer.getInt());
+        bufferPool.unpin(page1);
+        assertTrue(bufferPool.pin(channel, 2).isCached());
+    }
+
+    /**
+     * Pins taken before a file is invalidated don't unpin the page read again after
+     */
+    @Test
+    public void test7() {
+        BufferPool bufferPool = new BufferPool(1);
+        BufferPool.Page before = bufferPool.pin(channel, 0);
+        bufferPool.invalidate(Paths.get(path, "pages"));
+        BufferPool.Page after = bufferPool.pin(channel, 0);
+        bufferPool.unpin(before);
+
+        assertFalse(bufferPool.pin(channel, 1).isCached());
+        bufferPool.unpin(after);
+        assertTrue(bufferPool.pin(channel, 1).isCached());
+    }
+}
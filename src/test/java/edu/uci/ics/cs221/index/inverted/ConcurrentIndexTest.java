@@ -0,0 +1,119 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.index.positional.DeltaVarLenCompressor;
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentIndexTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new DeltaVarLenCompressor());
+    }
+
+    private void join(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Searchers see a growing number of documents while one writer adds, flushes and merges
+     */
+    @Test
+    public void test1() throws InterruptedException {
+        int numDocuments = 3000;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            try {
+                for (int i = 0; i < numDocuments; i++) {
+                    manager.addDocument(new Document("new york " + (i % 2 == 0 ? "even" : "odd") + " doc" + i));
+                    if (i % 250 == 249) {
+                        manager.flush();
+                    }
+                }
+                manager.flush();
+            } catch (Throwable e) {
+                errors.add(e);
+            } finally {
+                writing.set(false);
+            }
+        }));
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                try {
+                    int lastCount = 0;
+                    while (writing.get()) {
+                        // Each query sees one snapshot, and later snapshots never lose documents
+                        int count = manager.countQuery("york");
+                        assertTrue(count >= lastCount && count <= numDocuments);
+                        lastCount = count;
+
+                        int phrase = count(manager.searchPhraseQuery(Arrays.asList("new", "york")));
+                        assertTrue(phrase >= lastCount && phrase <= numDocuments);
+                        int even = manager.countAndQuery(Arrays.asList("york", "even"));
+                        int odd = manager.countOrQuery(Arrays.asList("odd"));
+                        assertTrue(even + odd <= numDocuments);
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        join(threads);
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(numDocuments, manager.countQuery("york"));
+        assertEquals(numDocuments / 2, count(manager.searchAndQuery(Arrays.asList("new", "even"))));
+    }
+
+    /**
+     * Page reads and buffer pool hits from many threads are all counted
+     */
+    @Test
+    public void test2() throws InterruptedException {
+        PageFileChannel channel = PageFileChannel.createOrOpen(Paths.get(path, "pages"));
+        for (int i = 0; i < 8; i++) {
+            channel.appendPage(ByteBuffer.allocate(PageFileChannel.PAGE_SIZE));
+        }
+        BufferPool bufferPool = new BufferPool(1024);
+        PageFileChannel.resetCounters();
+
+        int numThreads = 8;
+        int numReads = 500;
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < numReads; i++) {
+                    channel.readPage(i % 8);
+                    bufferPool.unpin(bufferPool.pin(channel, i % 8));
+                }
+            }));
+        }
+        join(threads);
+        channel.close();
+
+        // Eight misses read each page once, every other pin is a hit
+        assertEquals(numThreads * numReads + 8, PageFileChannel.getReadCounter());
+        assertEquals(8, PageFileChannel.getMissCounter());
+        assertEquals(numThreads * numReads - 8, PageFileChannel.getHitCounter());
+        assertEquals(8, bufferPool.size());
+    }
+}
@@ -0,0 +1,108 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.index.positional.DeltaVarLenCompressor;
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CountQueryTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new DeltaVarLenCompressor());
+    }
+
+    /**
+     * Documents with "all" and "even" (dense), "rare" (sparse) and "once" (in one document)
+     */
+    private void addDocuments() {
+        for (int i = 0; i < 700; i++) {
+            String text = "all" + (i % 2 == 0 ? " even" : "") + (i % 25 == 0 ? " rare" : "") + (i == 75 ? " once" : "");
+            manager.addDocument(new Document(text + " all"));
+            if (i == 399) {
+                manager.flush();
+            }
+        }
+        manager.flush();
+    }
+
+    private void assertCounts() {
+        List<List<String>> queries = Arrays.asList(
+                Arrays.asList("all"), Arrays.asList("even"), Arrays.asList("rare"), Arrays.asList("once"),
+                Arrays.asList("all", "even"), Arrays.asList("even", "rare"), Arrays.asList("rare", "once"),
+                Arrays.asList("even", "all", "even"), Arrays.asList("missing", "all"), Arrays.asList("missing"));
+        for (List<String> query : queries) {
+            assertEquals(count(manager.searchQuery(query.get(0))), manager.countQuery(query.get(0)));
+            assertEquals(count(manager.searchAndQuery(query)), manager.countAndQuery(query));
+            assertEquals(count(manager.searchOrQuery(query)), manager.countOrQuery(query));
+            assertEquals(count(manager.searchPhraseQuery(query)), manager.countPhraseQuery(query));
+        }
+    }
+
+    /**
+     * Counts from postings and bitmaps agree with the documents returned by the queries
+     */
+    @Test
+    public void test1() {
+        addDocuments();
+        assertEquals(700, manager.countQuery("all"));
+        assertEquals(350 + 14, manager.countOrQuery(Arrays.asList("even", "rare")));
+        assertEquals(14, manager.countAndQuery(Arrays.asList("even", "rare")));
+        assertEquals(1, manager.countPhraseQuery(Arrays.asList("rare", "once")));
+        assertEquals(0, manager.countAndQuery(Arrays.asList("all", "")));
+        assertCounts();
+
+        // Counts only from bitmaps, then only from posting walks
+        InvertedIndexManager.DENSE_LIST_RATIO = 1000000;
+        assertCounts();
+        InvertedIndexManager.DENSE_LIST_RATIO = 0;
+        assertCounts();
+        InvertedIndexManager.DENSE_LIST_RATIO = 8;
+    }
+
+    /**
+     * Deleted documents are not counted
+     */
+    @Test
+    public void test2() {
+        addDocuments();
+        manager.deleteDocuments("rare");
+        assertEquals(672, manager.countQuery("all"));
+        assertEquals(336, manager.countAndQuery(Arrays.asList("all", "even")));
+        assertEquals(336, manager.countOrQuery(Arrays.asList("even", "rare")));
+        assertEquals(0, manager.countQuery("once"));
+        assertCounts();
+    }
+
+    /**
+     * Counts and doc ids are read without document stores
+     */
+    @Test
+    public void test3() {
+        addDocuments();
+        manager.close();
+        new File(path, "store0_").delete();
+        new File(path, "store1_").delete();
+        assertFalse(new File(path, "store0_").exists());
+
+        assertEquals(700, manager.countQuery("all"));
+        assertEquals(364, manager.countOrQuery(Arrays.asList("even", "rare")));
+        assertEquals(14, manager.countPhraseQuery(Arrays.asList("even", "rare")));
+
+        ResultIterator ids = manager.searchAndQuery(Arrays.asList("rare", "even"));
+        int numIds = 0;
+        while (ids.hasNext()) {
+            // Doc ids are local to the segment, the second one starts at the 400th document
+            assertEquals(0, ids.nextDocId() % 50);
+            assertEquals(numIds < 8 ? 0 : 1, ids.getSegmentId());
+            numIds++;
+        }
+        assertEquals(14, numIds);
+    }
+}
@@ -0,0 +1,74 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.analysis.Analyzer;
+import edu.uci.ics.cs221.analysis.NaiveAnalyzer;
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.After;
+import org.junit.Before;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Index folder shared by the tests of a class, named after the class.
+ * <p>
+ * Thresholds are reset before each test, since tests may change them. After each test the manager is closed if the
+ * test opened one, then the folder is deleted.
+ */
+public abstract class IndexFixture {
+    protected String path = "./index/" + this.getClass().getSimpleName();
+    protected Path basePath = Paths.get(this.path);
+    protected Analyzer analyzer = new NaiveAnalyzer();
+    protected InvertedIndexManager manager = null;
+
+    @Before
+    public void resetThresholds() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 8;
+    }
+
+    @After
+    public void deleteIndex() {
+        if (this.manager != null) {
+            this.manager.close();
+            this.manager = null;
+        }
+        File dir = new File(this.path);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    protected static int count(Iterator<?> iterator) {
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+
+    protected static <T> List<T> toList(Iterator<T> iterator) {
+        List<T> list = new ArrayList<>();
+        while (iterator.hasNext()) {
+            list.add(iterator.next());
+        }
+        return list;
+    }
+
+    protected static List<String> texts(Iterator<Document> iterator) {
+        List<String> texts = new ArrayList<>();
+        while (iterator.hasNext()) {
+            texts.add(iterator.next().getText());
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,113 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IndexReaderTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+    }
+
+    /**
+     * Queries see segments published by flush after the reader is opened
+     */
+    @Test
+    public void test1() {
+        manager.addDocument(new Document("cat dog"));
+        manager.flush();
+        assertEquals(1, count(manager.searchQuery("cat")));
+
+        manager.addDocument(new Document("cat bird"));
+        manager.flush();
+        assertEquals(2, count(manager.searchQuery("cat")));
+        assertEquals(1, count(manager.searchAndQuery(Arrays.asList("cat", "bird"))));
+        assertEquals(2, count(manager.searchOrQuery(Arrays.asList("dog", "bird"))));
+        assertEquals(2, count(manager.searchTfIdf(Arrays.asList("cat"), null)));
+    }
+
+    /**
+     * Files of merged segments are deleted even if a reader had them open
+     */
+    @Test
+    public void test2() {
+        for (int i = 0; i < 4; i++) {
+            manager.addDocument(new Document("cat " + i));
+            manager.flush();
+        }
+        assertEquals(4, count(manager.searchQuery("cat")));
+        assertTrue(new File(path, "segment0_words").exists());
+
+        manager.mergeAllSegments();
+        assertFalse(new File(path, "segment0_words").exists());
+        assertFalse(new File(path, "store3_").exists());
+        assertEquals(4, count(manager.searchQuery("cat")));
+        assertEquals(2, manager.getIndexSegment(1).getDocuments().size());
+    }
+
+    /**
+     * Closed index opens its segments again on the next query
+     */
+    @Test
+    public void test3() {
+        manager.addDocument(new Document("cat dog"));
+        manager.flush();
+        assertEquals(1, manager.getDocumentFrequency(0, "dog"));
+
+        manager.close();
+        assertEquals(1, count(manager.searchQuery("dog")));
+        assertEquals(1, count(manager.documentIterator()));
+    }
+
+    /**
+     * Term statistics of a reader are not seen by the readers published after it
+     */
+    @Test
+    public void test4() {
+        manager.addDocument(new Document("cat dog"));
+        manager.addDocument(new Document("cat bird"));
+        manager.flush();
+        // Query weight of a single word query is the number of documents over its document frequency, and documents of
+        // two words have a norm of sqrt(2)
+        assertEquals(2.0 / Math.sqrt(2), manager.searchTfIdf(Arrays.asList("dog"), 1).next().getRight(), 1e-9);
+        assertEquals(2.0 / Math.sqrt(2), manager.searchTfIdf(Arrays.asList("dog"), 1).next().getRight(), 1e-9);
+
+        manager.addDocument(new Document("dog fish"));
+        manager.flush();
+        assertEquals(1.5 / Math.sqrt(2), manager.searchTfIdf(Arrays.asList("dog"), 1).next().getRight(), 1e-9);
+        assertEquals(3.0 / Math.sqrt(2), manager.searchTfIdf(Arrays.asList("fish"), 1).next().getRight(), 1e-9);
+    }
+
+    /**
+     * Document frequencies are read from cached dictionary pages: after a flush only the new segment could miss
+     */
+    @Test
+    public void test5() {
+        for (int i = 0; i < 3; i++) {
+            manager.addDocument(new Document("cat dog " + i));
+            manager.addDocument(new Document("cat bird " + i));
+            manager.flush();
+        }
+        manager.searchTfIdf(Arrays.asList("dog"), 2);
+        PageFileChannel.resetCounters();
+        manager.searchTfIdf(Arrays.asList("dog"), 2);
+        int queryHits = PageFileChannel.getHitCounter();
+        assertEquals(0, PageFileChannel.getMissCounter());
+
+        // The new segment surely has no "dog", the others still have their document frequencies
+        manager.addDocument(new Document("fish"));
+        manager.flush();
+        PageFileChannel.resetCounters();
+        assertEquals(7 / 3.0 / Math.sqrt(3), manager.searchTfIdf(Arrays.asList("dog"), 2).next().getRight(), 1e-9);
+        assertEquals(queryHits, PageFileChannel.getHitCounter());
+        assertEquals(0, PageFileChannel.getMissCounter());
+    }
+}
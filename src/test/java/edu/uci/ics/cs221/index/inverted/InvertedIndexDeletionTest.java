@@ -53,7 +53,10 @@ public class InvertedIndexDeletionTest {
         int expectedNumSegments = 1;
         InvertedIndexSegmentForTest test = index.getIndexSegment(0);
 
-        assertNull(test.getInvertedLists().get("import"));
+        // Deleted document is dropped by merge, the one added after the delete is kept
+        assertEquals(1, test.getDocuments().size());
+        assertEquals(documents[1].getText(), test.getDocuments().get(0).getText());
+        assertEquals(Arrays.asList(0), test.getInvertedLists().get("import"));
         assertEquals(expectedNumSegments, index.getNumSegments());
     }
 
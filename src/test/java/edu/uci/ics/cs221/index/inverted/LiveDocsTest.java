@@ -0,0 +1,107 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LiveDocsTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+        manager.addDocument(new Document("cat dog"));
+        manager.addDocument(new Document("cat fish"));
+        manager.flush();
+        manager.addDocument(new Document("dog bird"));
+        manager.addDocument(new Document("fish bird"));
+        manager.flush();
+    }
+
+    /**
+     * Deleted documents are hidden from every query, also through terms other than the deleted one
+     */
+    @Test
+    public void test1() {
+        manager.deleteDocuments("dog");
+
+        assertEquals(0, count(manager.searchQuery("dog")));
+        assertEquals(Arrays.asList("cat fish"), texts(manager.searchQuery("cat")));
+        assertEquals(Arrays.asList("fish bird"), texts(manager.searchAndQuery(Arrays.asList("fish", "bird"))));
+        assertEquals(0, count(manager.searchAndQuery(Arrays.asList("cat", "dog"))));
+        assertEquals(Arrays.asList("cat fish", "fish bird"),
+                texts(manager.searchOrQuery(Arrays.asList("cat", "bird"))));
+        assertEquals(2, count(manager.searchTfIdf(Arrays.asList("cat", "bird"), null)));
+        assertEquals(Arrays.asList("cat fish", "fish bird"), texts(manager.documentIterator()));
+    }
+
+    /**
+     * Deletes are persisted, each delete writes a new generation and removes the former one
+     */
+    @Test
+    public void test2() {
+        manager.deleteDocuments("dog");
+        manager.deleteDocuments("cat");
+        assertTrue(new File(path, "segment0_deletes2").exists());
+        assertFalse(new File(path, "segment0_deletes1").exists());
+        assertTrue(new File(path, "segment1_deletes1").exists());
+
+        InvertedIndexManager reopened = InvertedIndexManager.createOrOpen(path, analyzer);
+        assertEquals(0, count(reopened.searchQuery("cat")));
+        assertEquals(1, count(reopened.searchQuery("fish")));
+        assertEquals(Arrays.asList("fish bird"), texts(reopened.documentIterator()));
+        reopened.close();
+    }
+
+    /**
+     * Merge drops deleted documents, their postings and their bitmaps
+     */
+    @Test
+    public void test3() {
+        manager.deleteDocuments("cat");
+        manager.mergeAllSegments();
+
+        assertEquals(1, manager.getNumSegments());
+        assertEquals(2, manager.getNumDocuments(0));
+        InvertedIndexSegmentForTest segment = manager.getIndexSegment(0);
+        assertFalse(segment.getInvertedLists().containsKey("cat"));
+        assertEquals(Arrays.asList(0), segment.getInvertedLists().get("dog"));
+        assertEquals(Arrays.asList(0, 1), segment.getInvertedLists().get("bird"));
+        assertEquals(1, count(manager.searchQuery("fish")));
+        assertFalse(new File(path, "segment0_deletes1").exists());
+    }
+
+    /**
+     * Deleting a word no document has changes nothing
+     */
+    @Test
+    public void test4() {
+        manager.deleteDocuments("horse");
+        manager.deleteDocuments("");
+        assertEquals(4, count(manager.documentIterator()));
+        assertFalse(new File(path, "segment0_deletes1").exists());
+    }
+
+    /**
+     * Results opened before a delete keep seeing the documents it deleted, through every later delete generation
+     */
+    @Test
+    public void test5() {
+        Iterator<Document> before = manager.searchQuery("cat");
+        manager.deleteDocuments("dog");
+        Iterator<Document> between = manager.searchQuery("fish");
+        manager.deleteDocuments("cat");
+
+        assertEquals(Arrays.asList("cat dog", "cat fish"), texts(before));
+        assertEquals(Arrays.asList("cat fish", "fish bird"), texts(between));
+        assertEquals(0, count(manager.searchQuery("cat")));
+        assertEquals(Arrays.asList("fish bird"), texts(manager.searchQuery("fish")));
+        assertEquals(Arrays.asList("fish bird"), texts(manager.documentIterator()));
+    }
+}
@@ -0,0 +1,188 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MergeSchedulerTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+    }
+
+    /**
+     * Background merges give the same segments as merging in flush
+     */
+    @Test
+    public void test1() {
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 4;
+        manager.setMergeScheduler(new ConcurrentMergeScheduler(2, 2));
+        for (int i = 0; i < 4; i++) {
+            manager.addDocument(new Document("cat doc" + i));
+            manager.flush();
+        }
+        manager.mergeAllSegments();
+
+        assertEquals(1, manager.getNumSegments());
+        assertEquals(4, manager.getNumDocuments(0));
+        assertEquals(Arrays.asList(0, 1, 2, 3), manager.getIndexSegment(0).getInvertedLists().get("cat"));
+        assertEquals(Arrays.asList(2), manager.getIndexSegment(0).getInvertedLists().get("doc2"));
+    }
+
+    /**
+     * Indexing and queries go on while merges run, no document is lost or seen twice
+     */
+    @Test
+    public void test2() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 10;
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 3;
+        manager.setMergeScheduler(new ConcurrentMergeScheduler(2, 3));
+        for (int i = 0; i < 500; i++) {
+            manager.addDocument(new Document("cat doc" + i));
+            if (i % 50 == 0) {
+                int found = count(manager.searchQuery("cat"));
+                assertTrue(found <= i + 1);
+                assertEquals(found, count(manager.documentIterator()));
+            }
+        }
+        manager.close();
+
+        assertEquals(500, count(manager.searchQuery("cat")));
+        assertEquals(Arrays.asList("cat doc499"), texts(manager.searchQuery("doc499")));
+        // Background merges join neighbours only, documents stay in the order they were added
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            expected.add("cat doc" + i);
+        }
+        assertEquals(expected, texts(manager.documentIterator()));
+    }
+
+    /**
+     * Deleted documents are dropped by background merges and stay hidden
+     */
+    @Test
+    public void test3() {
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 2;
+        manager.setMergeScheduler(new ConcurrentMergeScheduler());
+        manager.addDocument(new Document("cat dog"));
+        manager.flush();
+        manager.deleteDocuments("dog");
+        manager.addDocument(new Document("cat fish"));
+        manager.flush();
+        manager.close();
+
+        assertEquals(1, manager.getNumSegments());
+        assertEquals(0, count(manager.searchQuery("dog")));
+        assertEquals(Arrays.asList("cat fish"), texts(manager.searchQuery("cat")));
+        assertEquals(1, manager.getNumDocuments(0));
+        assertEquals(Arrays.asList(0), manager.getIndexSegment(0).getInvertedLists().get("fish"));
+    }
+
+    /**
+     * A merge policy that never merges keeps all flushed segments
+     */
+    @Test
+    public void test4() {
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 2;
+        manager.setMergePolicy(segments -> new ArrayList<>());
+        for (int i = 0; i < 3; i++) {
+            manager.addDocument(new Document("cat"));
+            manager.flush();
+        }
+        assertEquals(3, manager.getNumSegments());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, manager.getNumDocuments(i));
+        }
+    }
+
+    /**
+     * Deletes and merges by hand from one thread while another flushes, no merge misses a delete
+     */
+    @Test
+    public void test5() throws InterruptedException {
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 3;
+        manager.setMergeScheduler(new ConcurrentMergeScheduler(2, 3));
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 200; i++) {
+                    manager.addDocument(new Document("cat " + (i % 2 == 0 ? "dog" : "fish") + " doc" + i));
+                    manager.flush();
+                }
+            } catch (Throwable e) {
+                errors.add(e);
+            } finally {
+                writing.set(false);
+            }
+        });
+        Thread deleter = new Thread(() -> {
+            try {
+                for (int i = 0; writing.get(); i++) {
+                    manager.deleteDocuments("dog");
+                    if (i % 2 == 0) {
+                        manager.mergeAllSegments();
+                    } else {
+                        manager.forceMerge(2);
+                    }
+                }
+            } catch (Throwable e) {
+                errors.add(e);
+            }
+        });
+        writer.start();
+        deleter.start();
+        writer.join();
+        deleter.join();
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        manager.deleteDocuments("dog");
+        manager.close();
+        assertEquals(0, count(manager.searchQuery("dog")));
+        assertEquals(100, count(manager.searchQuery("fish")));
+        assertEquals(100, count(manager.searchQuery("cat")));
+    }
+
+    /**
+     * Merges cascade: a merged segment that can be merged again is, without waiting for another flush
+     */
+    @Test
+    public void test6() {
+        // Merge the first two neighbours holding as many documents, like carries of a binary counter
+        MergePolicy policy = segments -> {
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                if (segments.get(i).numDocuments == segments.get(i + 1).numDocuments) {
+                    return Collections.singletonList(new ArrayList<>(segments.subList(i, i + 2)));
+                }
+            }
+            return new ArrayList<>();
+        };
+        for (MergeScheduler scheduler : Arrays.asList(new SerialMergeScheduler(), new ConcurrentMergeScheduler())) {
+            manager.setMergePolicy(policy);
+            manager.setMergeScheduler(scheduler);
+            for (int i = 0; i < 4; i++) {
+                manager.addDocument(new Document("cat doc" + i));
+                manager.flush();
+            }
+            // The fourth flush leaves two segments of two documents, merged into one of four
+            manager.close();
+            assertEquals(1, manager.getNumSegments());
+            assertEquals(Arrays.asList(0, 1, 2, 3), manager.getIndexSegment(0).getInvertedLists().get("cat"));
+            assertEquals(Arrays.asList(3), manager.getIndexSegment(0).getInvertedLists().get("doc3"));
+
+            deleteIndex();
+            manager = InvertedIndexManager.createOrOpen(path, analyzer);
+        }
+    }
+}
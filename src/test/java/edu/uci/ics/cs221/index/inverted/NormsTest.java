@@ -0,0 +1,160 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.index.positional.DeltaVarLenCompressor;
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NormsTest extends IndexFixture {
+    /**
+     * Flush stores the number of tokens and the squared term frequency vector length of each document
+     */
+    @Test
+    public void test1() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+        manager.addDocument(new Document("cat dog"));
+        manager.addDocument(new Document("cat cat bird"));
+        manager.flush();
+
+        Norms norms = Norms.read(basePath, 0);
+        assertEquals(2, norms.getNumDocuments());
+        assertEquals(2, norms.getLength(0));
+        assertEquals(3, norms.getLength(1));
+        assertEquals(5, norms.getTotalLength());
+        assertTrue(norms.hasVectorNorms());
+        assertEquals(2, norms.getSquaredNorm(0));
+        // cat: 2, bird: 1
+        assertEquals(5, norms.getSquaredNorm(1));
+        assertEquals(Math.sqrt(5), norms.getNorm(1), 1e-9);
+    }
+
+    /**
+     * Merge copies norms of live documents
+     */
+    @Test
+    public void test2() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+        manager.addDocument(new Document("cat dog"));
+        manager.addDocument(new Document("cat cat bird"));
+        manager.flush();
+        manager.addDocument(new Document("dog fish fish fish"));
+        manager.flush();
+        manager.deleteDocuments("bird");
+        manager.mergeAllSegments();
+
+        assertNull(Norms.read(basePath, 0));
+        assertFalse(Norms.getPath(basePath, 1).toFile().exists());
+        Norms norms = Norms.read(basePath, 2);
+        assertEquals(2, norms.getNumDocuments());
+        assertEquals(2, norms.getLength(0));
+        assertEquals(4, norms.getLength(1));
+        assertEquals(6, norms.getTotalLength());
+        assertEquals(2, norms.getSquaredNorm(0));
+        // dog: 1, fish: 3
+        assertEquals(10, norms.getSquaredNorm(1));
+    }
+
+    /**
+     * Words copied as encoded bytes by merge keep norms of the moved documents
+     */
+    @Test
+    public void test3() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new DeltaVarLenCompressor());
+        manager.addDocument(new Document("cat"));
+        manager.addDocument(new Document("cat"));
+        manager.flush();
+        manager.addDocument(new Document("dog dog"));
+        manager.addDocument(new Document("cat bird"));
+        manager.flush();
+        manager.mergeAllSegments();
+
+        Norms norms = Norms.read(basePath, 2);
+        assertEquals(4, norms.getNumDocuments());
+        assertEquals(1, norms.getLength(0));
+        assertEquals(2, norms.getLength(2));
+        assertEquals(2, norms.getLength(3));
+        assertEquals(4, norms.getSquaredNorm(2));
+        assertEquals(2, norms.getSquaredNorm(3));
+    }
+
+    /**
+     * Norms files with quantized TF-IDF vector lengths are still read, without vector norms
+     */
+    @Test
+    public void test4() throws IOException {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+        try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(Norms.getPath(basePath, 7)))) {
+            output.writeInt(0x4e4f524d);
+            output.writeInt(1);
+            output.writeInt(2);
+            output.writeInt(3);
+            output.writeInt(5);
+            output.write(new byte[]{40, 50});
+        }
+
+        Norms norms = Norms.read(basePath, 7);
+        assertEquals(2, norms.getNumDocuments());
+        assertEquals(5, norms.getLength(1));
+        assertEquals(8, norms.getTotalLength());
+        assertFalse(norms.hasVectorNorms());
+    }
+
+    /**
+     * TF-IDF normalizes documents by their norm over all of their words, not only the query words they have
+     */
+    @Test
+    public void test5() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+        manager.addDocument(new Document("cat dog bird fish"));
+        manager.addDocument(new Document("cat dog"));
+        manager.addDocument(new Document("horse"));
+        manager.flush();
+
+        Iterator<Pair<Document, Double>> result = manager.searchTfIdf(Arrays.asList("cat"), null);
+        // Query weight 3 / 2, over norms sqrt(2) and 2
+        Pair<Document, Double> first = result.next();
+        assertEquals("cat dog", first.getLeft().getText());
+        assertEquals(1.5 / Math.sqrt(2), first.getRight(), 1e-9);
+        assertEquals(0.75, result.next().getRight(), 1e-9);
+        assertFalse(result.hasNext());
+    }
+
+    /**
+     * Merging a segment without vector norms drops them, its documents are normalized over query words instead
+     */
+    @Test
+    public void test6() throws IOException {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+        manager.addDocument(new Document("cat dog bird"));
+        manager.flush();
+        manager.addDocument(new Document("cat cat fish"));
+        manager.flush();
+        // First segment as written by the format with lengths only
+        try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(Norms.getPath(basePath, 0)))) {
+            output.writeInt(0x4e4f524d);
+            output.writeInt(2);
+            output.writeInt(1);
+            output.writeInt(3);
+        }
+        manager.close();
+        manager.mergeAllSegments();
+
+        Norms norms = Norms.read(basePath, 2);
+        assertFalse(norms.hasVectorNorms());
+        assertEquals(3, norms.getLength(1));
+        // Both documents have only "cat" of the query, whatever its frequency
+        Iterator<Pair<Document, Double>> result = manager.searchTfIdf(Arrays.asList("cat", "horse"), null);
+        assertEquals(1.0, result.next().getRight(), 1e-9);
+        assertEquals(1.0, result.next().getRight(), 1e-9);
+    }
+}
@@ -0,0 +1,75 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OrUnionTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+    }
+
+    /**
+     * Documents in any of several block lists come once each, in doc id order within segments
+     */
+    @Test
+    public void test1() {
+        List<String> expected = new ArrayList<>();
+        List<String> expectedAB = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            String text = i + (i % 2 == 0 ? " a" : "") + (i % 3 == 0 ? " b" : "") + (i % 7 == 0 ? " c" : "");
+            manager.addDocument(new Document(text));
+            if (i % 2 == 0 || i % 3 == 0 || i % 7 == 0) {
+                expected.add(text);
+            }
+            if (i % 2 == 0 || i % 3 == 0) {
+                expectedAB.add(text);
+            }
+            if (i == 299) {
+                manager.flush();
+            }
+        }
+        manager.flush();
+
+        assertEquals(expected, texts(manager.searchOrQuery(Arrays.asList("a", "b", "c", "missing"))));
+        assertEquals(expectedAB, texts(manager.searchOrQuery(Arrays.asList("b", "a", "a"))));
+        assertFalse(manager.searchOrQuery(Arrays.asList("missing")).hasNext());
+    }
+
+    /**
+     * Results keep coming from the index as it was searched, even if segments are merged meanwhile
+     */
+    @Test
+    public void test2() {
+        for (int i = 0; i < 4; i++) {
+            manager.addDocument(new Document("cat " + i));
+            manager.addDocument(new Document("dog " + i));
+            manager.flush();
+        }
+
+        Iterator<Document> iterator = manager.searchOrQuery(Arrays.asList("cat", "dog"));
+        assertEquals("cat 0", iterator.next().getText());
+        manager.deleteDocuments("dog");
+        manager.mergeAllSegments();
+        assertTrue(new File(path, "segment0_words").exists());
+
+        List<String> rest = texts(iterator);
+        assertEquals(7, rest.size());
+        assertTrue(rest.contains("dog 3"));
+        // Files of merged segments go once the iterator is exhausted
+        assertFalse(new File(path, "segment0_words").exists());
+        assertEquals(Arrays.asList("cat 0", "cat 1", "cat 2", "cat 3"),
+                texts(manager.searchOrQuery(Arrays.asList("cat", "dog"))));
+    }
+}
@@ -0,0 +1,174 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.index.positional.DeltaVarLenCompressor;
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelQueryTest extends IndexFixture {
+    private ForkJoinPool pool = new ForkJoinPool(4);
+
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new DeltaVarLenCompressor());
+    }
+
+    @After
+    public void shutdownPool() {
+        pool.shutdown();
+    }
+
+    /**
+     * Six segments of documents made of the words w0 to w9, some of them deleted
+     */
+    private void addSegments() {
+        for (int i = 0; i < 1200; i++) {
+            StringBuilder text = new StringBuilder("doc" + i);
+            for (int j = 0; j < 10; j++) {
+                if (i % (j + 2) == 0) {
+                    text.append(" w").append(j);
+                }
+            }
+            text.append(i % 3 == 0 ? " w1 w2" : " w2 w1");
+            manager.addDocument(new Document(text.toString()));
+            if (i % 200 == 199) {
+                manager.flush();
+            }
+        }
+        manager.deleteDocuments("w9");
+    }
+
+    /**
+     * Boolean, phrase and count queries give the same results in the same order on the pool
+     */
+    @Test
+    public void test1() {
+        addSegments();
+        List<List<String>> queries = Arrays.asList(
+                Arrays.asList("w0"), Arrays.asList("w3", "w4"), Arrays.asList("w1", "w2"),
+                Arrays.asList("w2", "w1"), Arrays.asList("w8", "w6", "missing"));
+        List<List<String>> expected = new ArrayList<>();
+        List<Integer> expectedCounts = new ArrayList<>();
+        for (List<String> query : queries) {
+            expected.add(texts(manager.searchQuery(query.get(0))));
+            expected.add(texts(manager.searchAndQuery(query)));
+            expected.add(texts(manager.searchOrQuery(query)));
+            expected.add(texts(manager.searchPhraseQuery(query)));
+            expectedCounts.add(manager.countAndQuery(query));
+            expectedCounts.add(manager.countOrQuery(query));
+            expectedCounts.add(manager.countPhraseQuery(query));
+        }
+
+        manager.setQueryPool(pool);
+        List<List<String>> actual = new ArrayList<>();
+        List<Integer> actualCounts = new ArrayList<>();
+        for (List<String> query : queries) {
+            actual.add(texts(manager.searchQuery(query.get(0))));
+            actual.add(texts(manager.searchAndQuery(query)));
+            actual.add(texts(manager.searchOrQuery(query)));
+            actual.add(texts(manager.searchPhraseQuery(query)));
+            actualCounts.add(manager.countAndQuery(query));
+            actualCounts.add(manager.countOrQuery(query));
+            actualCounts.add(manager.countPhraseQuery(query));
+        }
+        assertEquals(expected, actual);
+        assertEquals(expectedCounts, actualCounts);
+        assertTrue(expected.get(0).size() > 0);
+    }
+
+    /**
+     * Ranked search on the pool gives the same scores, top K merged across segments
+     */
+    @Test
+    public void test2() {
+        addSegments();
+        List<String> keywords = Arrays.asList("w0", "w3", "w5", "w7", "w7");
+        List<Pair<Document, Double>> expected = toList(manager.searchTfIdf(keywords, null));
+        List<Pair<Document, Double>> expectedTop = toList(manager.searchTfIdf(keywords, 15));
+
+        manager.setQueryPool(pool);
+        List<Pair<Document, Double>> actual = toList(manager.searchTfIdf(keywords, null));
+        List<Pair<Document, Double>> actualTop = toList(manager.searchTfIdf(keywords, 15));
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getRight(), actual.get(i).getRight(), 0.0);
+        }
+        assertEquals(15, actualTop.size());
+        for (int i = 0; i < expectedTop.size(); i++) {
+            assertEquals(expectedTop.get(i).getRight(), actualTop.get(i).getRight(), 0.0);
+        }
+        // Same documents on every run
+        assertEquals(texts(actualTop.stream().map(Pair::getLeft).iterator()),
+                texts(toList(manager.searchTfIdf(keywords, 15)).stream().map(Pair::getLeft).iterator()));
+    }
+
+    /**
+     * Results matched on the pool and closed early release their reader
+     */
+    @Test
+    public void test3() {
+        addSegments();
+        manager.setQueryPool(pool);
+
+        ResultIterator result = manager.searchOrQuery(Arrays.asList("w0", "w1"));
+        assertTrue(result.hasNext());
+        manager.mergeAllSegments();
+        assertTrue(new File(path, "segment0_words").exists());
+        result.close();
+        assertFalse(result.hasNext());
+        assertFalse(new File(path, "segment0_words").exists());
+    }
+
+    /**
+     * Ranked search run by a pool worker keeps its results when the worker runs another ranked search meanwhile,
+     * here from the similarity while scoring the segments it joins
+     */
+    @Test
+    public void test4() {
+        addSegments();
+        List<String> keywords = Arrays.asList("w0", "w3", "w5");
+        List<Double> expected = scores(manager.searchTfIdf(keywords, 20));
+
+        Similarity tfIdf = new TfIdfSimilarity();
+        ThreadLocal<Boolean> nested = ThreadLocal.withInitial(() -> false);
+        manager.setSimilarity(new Similarity() {
+            public TermScorer scorer(int queryFrequency, int documentFrequency, int numDocuments, double averageLength) {
+                return tfIdf.scorer(queryFrequency, documentFrequency, numDocuments, averageLength);
+            }
+
+            public double combine(double scoreSum, double documentNorm) {
+                if (!nested.get()) {
+                    nested.set(true);
+                    assertEquals(3, toList(manager.searchTfIdf(Arrays.asList("w7"), 3)).size());
+                }
+                return tfIdf.combine(scoreSum, documentNorm);
+            }
+
+            public double bound(double maxScoreSum) {
+                return tfIdf.bound(maxScoreSum);
+            }
+        });
+        manager.setQueryPool(pool);
+        assertEquals(expected, pool.submit(() -> scores(manager.searchTfIdf(keywords, 20))).join());
+    }
+
+    private List<Double> scores(Iterator<Pair<Document, Double>> iterator) {
+        List<Double> scores = new ArrayList<>();
+        for (Pair<Document, Double> pair : toList(iterator)) {
+            scores.add(pair.getRight());
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,108 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.index.positional.DeltaVarLenCompressor;
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResultIteratorTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new DeltaVarLenCompressor());
+    }
+
+    private void addSegments() {
+        for (int i = 0; i < 4; i++) {
+            manager.addDocument(new Document("new york city " + i));
+            manager.addDocument(new Document("york new " + i));
+            manager.flush();
+        }
+    }
+
+    /**
+     * Results closed early have no more documents and let merged segments go
+     */
+    @Test
+    public void test1() {
+        addSegments();
+
+        ResultIterator and = manager.searchAndQuery(Arrays.asList("new", "york"));
+        ResultIterator phrase = manager.searchPhraseQuery(Arrays.asList("new", "york"));
+        assertEquals("new york city 0", and.next().getText());
+        assertEquals("york new 0", and.next().getText());
+        assertEquals("new york city 0", phrase.next().getText());
+
+        manager.mergeAllSegments();
+        assertTrue(new File(path, "segment0_words").exists());
+        assertEquals("new york city 1", phrase.next().getText());
+
+        and.close();
+        phrase.close();
+        assertFalse(and.hasNext());
+        assertFalse(new File(path, "segment0_words").exists());
+        // Closing twice is harmless
+        phrase.close();
+        assertEquals(4, count(manager.searchPhraseQuery(Arrays.asList("new", "york", "city"))));
+    }
+
+    /**
+     * Closing the index closes results that were left open
+     */
+    @Test
+    public void test2() {
+        addSegments();
+
+        Iterator<Document> single = manager.searchQuery("city");
+        assertTrue(single.hasNext());
+        manager.mergeAllSegments();
+        assertTrue(new File(path, "segment0_words").exists());
+
+        manager.close();
+        assertFalse(single.hasNext());
+        assertFalse(new File(path, "segment0_words").exists());
+        assertEquals(4, count(manager.searchQuery("city")));
+    }
+
+    /**
+     * Empty queries give empty results
+     */
+    @Test(expected = NoSuchElementException.class)
+    public void test3() {
+        addSegments();
+
+        assertFalse(manager.searchOrQuery(Arrays.asList("", " ")).hasNext());
+        assertFalse(manager.searchAndQuery(Arrays.asList("new", "")).hasNext());
+        manager.searchQuery("").next();
+    }
+
+    /**
+     * Results dropped without being closed let merged segments go once collected
+     */
+    @Test
+    public void test4() throws InterruptedException {
+        addSegments();
+
+        ResultIterator dropped = manager.searchAndQuery(Arrays.asList("new", "york"));
+        assertTrue(dropped.hasNext());
+        manager.mergeAllSegments();
+        assertTrue(new File(path, "segment0_words").exists());
+
+        dropped = null;
+        // Dropped results are released by the next query after the garbage collector found them
+        for (int i = 0; i < 50 && new File(path, "segment0_words").exists(); i++) {
+            System.gc();
+            Thread.sleep(20);
+            assertEquals(4, count(manager.searchQuery("city")));
+        }
+        assertFalse(new File(path, "segment0_words").exists());
+    }
+}
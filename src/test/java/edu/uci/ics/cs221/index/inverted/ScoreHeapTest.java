@@ -0,0 +1,62 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScoreHeapTest {
+
+    /**
+     * A bounded heap keeps the largest scores, sorted from the best
+     */
+    @Test
+    public void test1() {
+        ScoreHeap heap = new ScoreHeap();
+        heap.reset(3);
+        assertEquals(Double.NEGATIVE_INFINITY, heap.threshold(), 0.0);
+        assertTrue(heap.offer(1.0, 0, 1));
+        assertTrue(heap.offer(5.0, 0, 2));
+        assertTrue(heap.offer(3.0, 1, 3));
+        assertEquals(1.0, heap.threshold(), 0.0);
+        assertTrue(heap.offer(4.0, 1, 4));
+        assertFalse(heap.offer(2.0, 1, 5));
+        assertFalse(heap.offer(3.0, 1, 6));
+        assertEquals(3.0, heap.threshold(), 0.0);
+
+        heap.sortDescending();
+        assertEquals(3, heap.size());
+        assertEquals(5.0, heap.getScore(0), 0.0);
+        assertEquals(2, heap.getDocId(0));
+        assertEquals(4.0, heap.getScore(1), 0.0);
+        assertEquals(1, heap.getSegmentId(1));
+        assertEquals(3.0, heap.getScore(2), 0.0);
+        assertEquals(3, heap.getDocId(2));
+    }
+
+    /**
+     * An unbounded heap grows and sorts all of its documents, a heap of size 0 takes none
+     */
+    @Test
+    public void test2() {
+        ScoreHeap heap = new ScoreHeap();
+        heap.reset(null);
+        Random random = new Random(221);
+        for (int i = 0; i < 1000; i++) {
+            heap.offer(random.nextDouble(), 0, i);
+        }
+        heap.sortDescending();
+        assertEquals(1000, heap.size());
+        for (int i = 1; i < heap.size(); i++) {
+            assertTrue(heap.getScore(i - 1) >= heap.getScore(i));
+        }
+
+        heap.reset(0);
+        assertEquals(Double.POSITIVE_INFINITY, heap.threshold(), 0.0);
+        assertFalse(heap.offer(1.0, 0, 0));
+        assertEquals(0, heap.size());
+    }
+}
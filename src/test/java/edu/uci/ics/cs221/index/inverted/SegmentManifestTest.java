@@ -0,0 +1,116 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SegmentManifestTest extends IndexFixture {
+    /**
+     * Reopened index sees the segments written before
+     */
+    @Test
+    public void test1() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+        manager.addDocument(new Document("cat dog"));
+        manager.flush();
+        manager.addDocument(new Document("cat bird"));
+        manager.flush();
+
+        InvertedIndexManager reopened = InvertedIndexManager.createOrOpen(path, analyzer);
+        assertEquals(2, reopened.getNumSegments());
+        assertEquals(1, reopened.getNumDocuments(0));
+        assertEquals(2, count(reopened.searchQuery("cat")));
+        assertEquals(2, count(reopened.documentIterator()));
+    }
+
+    /**
+     * Flush after reopen adds a new segment instead of overwriting an old one
+     */
+    @Test
+    public void test2() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+        manager.addDocument(new Document("cat dog"));
+        manager.flush();
+
+        InvertedIndexManager reopened = InvertedIndexManager.createOrOpen(path, analyzer);
+        reopened.addDocument(new Document("fish"));
+        reopened.flush();
+
+        assertEquals(2, reopened.getNumSegments());
+        assertEquals(1, count(reopened.searchQuery("dog")));
+        assertEquals(1, count(reopened.searchQuery("fish")));
+        assertEquals(1, reopened.getDocumentFrequency(0, "dog"));
+        assertEquals(1, reopened.getDocumentFrequency(1, "fish"));
+    }
+
+    /**
+     * Merge result is persisted and merged segment files are gone
+     */
+    @Test
+    public void test3() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+        for (int i = 0; i < 3; i++) {
+            manager.addDocument(new Document("cat " + i));
+            manager.flush();
+        }
+        manager.mergeAllSegments();
+        assertEquals(2, manager.getNumSegments());
+        assertFalse(new File(path, "segment0_words").exists());
+        assertFalse(new File(path, "store1_").exists());
+
+        InvertedIndexManager reopened = InvertedIndexManager.createOrOpen(path, analyzer);
+        assertEquals(2, reopened.getNumSegments());
+        assertEquals(2, reopened.getNumDocuments(0));
+        assertEquals(1, reopened.getNumDocuments(1));
+        assertEquals(3, count(reopened.searchQuery("cat")));
+        assertTrue(reopened.getIndexSegment(2) == null);
+    }
+
+    /**
+     * Segment files without a manifest are refused rather than overwritten
+     */
+    @Test
+    public void test4() throws IOException {
+        Files.createDirectories(Paths.get(path));
+        Files.write(Paths.get(path, "segment0_words"), new byte[PageFileChannel.PAGE_SIZE]);
+        Files.write(Paths.get(path, "store0_"), new byte[0]);
+
+        try {
+            InvertedIndexManager.createOrOpen(path, analyzer);
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(new File(path, "segment0_words").exists());
+            assertEquals(PageFileChannel.PAGE_SIZE, new File(path, "segment0_words").length());
+        }
+    }
+
+    /**
+     * Committed segments have all their files on disk, syncing a missing file fails instead of passing silently
+     */
+    @Test
+    public void test5() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+        manager.addDocument(new Document("cat dog"));
+        manager.flush();
+        manager.deleteDocuments("dog");
+
+        SegmentManifest.syncSegmentFiles(Paths.get(path), 0);
+        try {
+            SegmentManifest.syncFile(Paths.get(path, "segment9_words"));
+            fail();
+        } catch (UncheckedIOException e) {
+            assertFalse(new File(path, "segment9_words").exists());
+        }
+        assertEquals(0, count(InvertedIndexManager.createOrOpen(path, analyzer).searchQuery("cat")));
+    }
+}
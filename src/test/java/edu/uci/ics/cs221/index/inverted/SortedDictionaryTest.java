@@ -0,0 +1,88 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SortedDictionaryTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+    }
+
+    /**
+     * Build a segment whose words span several pages
+     */
+    private List<String> addManyWords(int start, int count) {
+        List<String> words = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = start; i < start + count; i++) {
+            String word = "w" + (char) ('a' + i % 26) + "x" + (char) ('a' + i / 26 % 26) + "x" + (char) ('a' + i / 676);
+            words.add(word);
+            text.append(word).append(" ");
+        }
+        manager.addDocument(new Document(text.toString()));
+        return words;
+    }
+
+    /**
+     * Every word in a multi-page dictionary can be found, missing words are not
+     */
+    @Test
+    public void test1() {
+        List<String> words = addManyWords(0, 600);
+        manager.flush();
+
+        for (String word : words) {
+            Iterator<Document> iterator = manager.searchQuery(word);
+            assertTrue(iterator.hasNext());
+        }
+        assertFalse(manager.searchQuery("aaaa").hasNext());
+        assertFalse(manager.searchQuery("zzzz").hasNext());
+        assertFalse(manager.searchAndQuery(Arrays.asList(words.get(10), "zzzz")).hasNext());
+        assertTrue(manager.searchAndQuery(Arrays.asList(words.get(10), words.get(500), words.get(10))).hasNext());
+    }
+
+    /**
+     * A single keyword lookup reads one words page instead of the whole dictionary
+     */
+    @Test
+    public void test2() {
+        List<String> words = addManyWords(0, 600);
+        manager.flush();
+
+        PageFileChannel.resetCounters();
+        assertEquals(1, manager.getDocumentFrequency(0, words.get(300)));
+        // One words page, the dictionary entry holds the document frequency
+        assertEquals(1, PageFileChannel.getReadCounter());
+    }
+
+    /**
+     * Merged segments stay sorted and searchable
+     */
+    @Test
+    public void test3() {
+        List<String> left = addManyWords(0, 400);
+        manager.flush();
+        List<String> right = addManyWords(200, 400);
+        manager.flush();
+        manager.mergeAllSegments();
+
+        assertEquals(1, manager.getNumSegments());
+        assertEquals(2, manager.getDocumentFrequency(0, left.get(300)));
+        assertEquals(1, manager.getDocumentFrequency(0, left.get(0)));
+        assertEquals(1, manager.getDocumentFrequency(0, right.get(399)));
+
+        List<String> segmentWords = new ArrayList<>(manager.getIndexSegment(0).getInvertedLists().keySet());
+        assertEquals(600, segmentWords.size());
+    }
+}
@@ -75,8 +75,8 @@ public class Team1StressTest {
 
         assertEquals(iim.getNumSegments(), 1);
 
-        assertTrue(PageFileChannel.writeCounter >= 3);
-        assertTrue(PageFileChannel.readCounter >= 2);
+        assertTrue(PageFileChannel.getWriteCounter() >= 3);
+        assertTrue(PageFileChannel.getReadCounter() >= 2);
 
         InvertedIndexSegmentForTest segment = iim.getIndexSegment(0);
         Map<Integer, Document> docs = segment.getDocuments();
@@ -103,8 +103,8 @@ public class Team1StressTest {
         for (Document doc: manyDocs)
             iim.addDocument(doc);
 
-        assertTrue(PageFileChannel.writeCounter >= 11);
-        assertTrue(PageFileChannel.readCounter >= 2);
+        assertTrue(PageFileChannel.getWriteCounter() >= 11);
+        assertTrue(PageFileChannel.getReadCounter() >= 2);
 
         Iterator<Document> itr =
                 iim.searchAndQuery(Arrays.asList("GibberishThatNotInDoc", "university"));
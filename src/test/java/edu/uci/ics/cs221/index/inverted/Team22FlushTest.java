@@ -273,11 +273,11 @@ public class Team22FlushTest {
 
         // check segment number and write counter
         assertEquals(indexManager.getNumSegments(), 1);
-        assertTrue(PageFileChannel.writeCounter >= 3);
+        assertTrue(PageFileChannel.getWriteCounter() >= 3);
 
         // check segment context and read counter
         checkSegment(0, docs);
-        assertTrue(PageFileChannel.readCounter >= 3);
+        assertTrue(PageFileChannel.getReadCounter() >= 3);
     }
 
 
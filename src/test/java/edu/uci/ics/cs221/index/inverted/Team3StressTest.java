@@ -46,7 +46,7 @@ public class Team3StressTest {
         for(int i=0;i<TOTALNUM;i++){
             invertedIndexManager.addDocument(new Document(allDocuments.get(i%allDocuments.size())));
         }
-        assertTrue(PageFileChannel.writeCounter>=TOTALNUM/invertedIndexManager.DEFAULT_FLUSH_THRESHOLD);
+        assertTrue(PageFileChannel.getWriteCounter()>=TOTALNUM/invertedIndexManager.DEFAULT_FLUSH_THRESHOLD);
 
 
         try {
@@ -91,7 +91,7 @@ public class Team3StressTest {
             result1.next();
             count++;
         }
-        assertTrue(PageFileChannel.readCounter>=50);
+        assertTrue(PageFileChannel.getReadCounter()>=50);
         assertEquals(10000, count);
     }
 
@@ -107,7 +107,7 @@ public class Team3StressTest {
             result1.next();
             count++;
         }
-        assertTrue(PageFileChannel.readCounter>=100);
+        assertTrue(PageFileChannel.getReadCounter()>=100);
         assertEquals(20000, count);
 
     }
@@ -133,7 +133,7 @@ public class Team3StressTest {
             count++;
         }
         assertEquals(30000, count);
-        assertTrue(PageFileChannel.readCounter>=150);
+        assertTrue(PageFileChannel.getReadCounter()>=150);
     }
 
 
@@ -59,7 +59,7 @@ public class Team5OrSearchTest {
             counter++;
         }
         assertEquals(6, counter);
-        assertTrue(PageFileChannel.readCounter >= 5 && PageFileChannel.writeCounter >= 5);
+        assertTrue(PageFileChannel.getReadCounter() >= 5 && PageFileChannel.getWriteCounter() >= 5);
         words.clear();
 
     }
@@ -79,7 +79,7 @@ public class Team5OrSearchTest {
 
         }
         assertEquals(4, counter);
-        assertTrue(PageFileChannel.readCounter >= 5 && PageFileChannel.writeCounter >= 5);
+        assertTrue(PageFileChannel.getReadCounter() >= 5 && PageFileChannel.getWriteCounter() >= 5);
         words.clear();
 
     }
@@ -100,7 +100,7 @@ public class Team5OrSearchTest {
 
         }
         assertEquals(0, counter);
-        assertTrue(PageFileChannel.readCounter >= 5 && PageFileChannel.writeCounter >= 5);
+        assertTrue(PageFileChannel.getReadCounter() >= 5 && PageFileChannel.getWriteCounter() >= 5);
         words.clear();
 
     }
@@ -122,7 +122,7 @@ public class Team5OrSearchTest {
 
         }
         assertEquals(5, counter);
-        assertTrue(PageFileChannel.readCounter >= 5 && PageFileChannel.writeCounter >= 5);
+        assertTrue(PageFileChannel.getReadCounter() >= 5 && PageFileChannel.getWriteCounter() >= 5);
         words.clear();
 
     }
@@ -0,0 +1,70 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TermFilterTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+        manager.addDocument(new Document("cat one"));
+        manager.flush();
+        manager.addDocument(new Document("cat two"));
+        manager.flush();
+        manager.addDocument(new Document("cat dog"));
+        manager.flush();
+    }
+
+    /**
+     * Segments missing a required term are skipped without reading their pages
+     */
+    @Test
+    public void test1() {
+        assertEquals(1, count(manager.searchAndQuery(Arrays.asList("cat", "dog"))));
+        assertEquals(1, manager.getNumSkips(0));
+        assertEquals(1, manager.getNumSkips(1));
+        assertEquals(0, manager.getNumSkips(2));
+
+        PageFileChannel.resetCounters();
+        assertEquals(0, count(manager.searchQuery("fish")));
+        assertEquals(0, PageFileChannel.getReadCounter());
+        assertEquals(2, manager.getNumSkips(0));
+        assertEquals(1, manager.getNumSkips(2));
+    }
+
+    /**
+     * OR queries never skip segments
+     */
+    @Test
+    public void test2() {
+        assertEquals(2, count(manager.searchOrQuery(Arrays.asList("one", "dog"))));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, manager.getNumSkips(i));
+        }
+    }
+
+    /**
+     * Filters are persisted and rebuilt by merge
+     */
+    @Test
+    public void test3() {
+        InvertedIndexManager reopened = InvertedIndexManager.createOrOpen(path, analyzer);
+        assertEquals(1, count(reopened.searchQuery("dog")));
+        assertEquals(1, reopened.getNumSkips(0));
+
+        manager.mergeAllSegments();
+        assertEquals(2, manager.getNumSegments());
+        assertTrue(new File(path, "segment3_meta").exists());
+        assertEquals(1, count(manager.searchAndQuery(Arrays.asList("cat", "two"))));
+        assertEquals(0, manager.getNumSkips(0));
+        assertEquals(1, manager.getNumSkips(1));
+        reopened.close();
+    }
+}
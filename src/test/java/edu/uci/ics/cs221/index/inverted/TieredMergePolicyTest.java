@@ -0,0 +1,115 @@
+package edu.uci.ics.cs221.index.inverted;
+
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TieredMergePolicyTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpen(path, analyzer);
+    }
+
+    private List<SegmentInfo> segments(long... sizes) {
+        List<SegmentInfo> segments = new ArrayList<>();
+        for (int i = 0; i < sizes.length; i++) {
+            SegmentInfo segment = new SegmentInfo(i, 1, 1);
+            segment.listsFileSize = sizes[i];
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    /**
+     * Only neighbouring segments of a full tier are merged, large segments are left alone
+     */
+    @Test
+    public void test1() {
+        TieredMergePolicy policy = new TieredMergePolicy(3, 10, 100, 10000);
+        // Tier 1: 400 ; tier 0: 10, 50, 90 ; too large: 20000 ; tier 0: 30, 60 ; tier 1: 500
+        List<SegmentInfo> segments = segments(400, 10, 50, 90, 20000, 30, 60, 500);
+        List<List<SegmentInfo>> merges = policy.findMerges(segments);
+
+        assertEquals(1, merges.size());
+        assertEquals(Arrays.asList(segments.get(1), segments.get(2), segments.get(3)), merges.get(0));
+        // Three segments of tier 0, but not neighbours
+        assertTrue(policy.findMerges(segments(10, 400, 50, 90)).isEmpty());
+        assertTrue(policy.findMerges(segments(10, 20000, 50, 90)).isEmpty());
+    }
+
+    /**
+     * Merges are bounded by fan-in and by merged size
+     */
+    @Test
+    public void test2() {
+        TieredMergePolicy policy = new TieredMergePolicy(2, 3, 100, 1000);
+        List<List<SegmentInfo>> merges = policy.findMerges(segments(10, 10, 10, 10, 10));
+        assertEquals(2, merges.size());
+        assertEquals(3, merges.get(0).size());
+        assertEquals(2, merges.get(1).size());
+
+        merges = policy.findMerges(segments(150, 150, 150, 600, 600, 600));
+        for (List<SegmentInfo> merge : merges) {
+            assertTrue(merge.stream().mapToLong(SegmentInfo::getSizeInBytes).sum() <= 1000);
+        }
+    }
+
+    /**
+     * Forced merges pick the smallest neighbouring segments
+     */
+    @Test
+    public void test3() {
+        TieredMergePolicy policy = new TieredMergePolicy(10, 2, 100, 1000);
+        List<SegmentInfo> segments = segments(500, 20, 30, 400);
+        List<List<SegmentInfo>> merges = policy.findForcedMerges(segments, 2);
+        assertEquals(1, merges.size());
+        assertEquals(Arrays.asList(segments.get(1), segments.get(2)), merges.get(0));
+        assertTrue(policy.findForcedMerges(segments, 4).isEmpty());
+    }
+
+    /**
+     * Index with tiered policy keeps all documents, force merge leaves the wanted number of segments
+     */
+    @Test
+    public void test4() {
+        manager.setMergePolicy(new TieredMergePolicy(3, 2, PageFileChannel.PAGE_SIZE, Long.MAX_VALUE));
+        for (int i = 0; i < 10; i++) {
+            manager.addDocument(new Document("cat doc" + i));
+            manager.flush();
+        }
+        assertTrue(manager.getNumSegments() < 10);
+        assertEquals(10, count(manager.searchQuery("cat")));
+        // Merges of neighbours keep documents in the order they were added
+        Iterator<Document> documents = manager.documentIterator();
+        for (int i = 0; i < 10; i++) {
+            assertEquals("cat doc" + i, documents.next().getText());
+        }
+
+        manager.forceMerge(2);
+        assertEquals(2, manager.getNumSegments());
+        assertEquals(10, count(manager.searchQuery("cat")));
+        assertEquals(Arrays.asList("cat doc9"), texts(manager.searchQuery("doc9")));
+        int firstSize = manager.getNumDocuments(0);
+        assertEquals(10, firstSize + manager.getNumDocuments(1));
+        assertEquals(Arrays.asList(0), manager.getIndexSegment(1).getInvertedLists().get("doc" + firstSize));
+
+        manager.forceMerge(1);
+        assertEquals(1, manager.getNumSegments());
+        assertEquals(10, manager.getNumDocuments(0));
+        // Doc ids of the single segment follow the order documents were added
+        InvertedIndexSegmentForTest segment = manager.getIndexSegment(0);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), segment.getInvertedLists().get("cat"));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Arrays.asList(i), segment.getInvertedLists().get("doc" + i));
+            assertEquals("cat doc" + i, segment.getDocuments().get(i).getText());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package edu.uci.ics.cs221.index.positional;
+
+import edu.uci.ics.cs221.index.inverted.IndexFixture;
+import edu.uci.ics.cs221.index.inverted.InvertedIndexManager;
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlockPostingsTest extends IndexFixture {
+    private String text(int i) {
+        return "common " + (i % 2 == 0 ? "even " : "odd ") + (i % 3 == 0 ? "alpha beta" : "beta alpha") + (i % 150 == 7 ? " rare" : "");
+    }
+
+    private void addDocuments(int from, int to) {
+        for (int i = from; i < to; i++) {
+            manager.addDocument(new Document(text(i)));
+        }
+    }
+
+    private void assertQueries() {
+        assertEquals(200, texts(manager.searchAndQuery(Arrays.asList("common", "even"))).size());
+        assertEquals(Arrays.asList(text(7), text(157), text(307)), texts(manager.searchAndQuery(Arrays.asList("odd", "rare", "common"))));
+        assertEquals(0, texts(manager.searchAndQuery(Arrays.asList("even", "rare"))).size());
+
+        List<String> phrase = texts(manager.searchPhraseQuery(Arrays.asList("alpha", "beta")));
+        assertEquals(134, phrase.size());
+        for (String text : phrase) {
+            assertTrue(text.contains("alpha beta"));
+        }
+        assertEquals(Arrays.asList(text(7), text(157), text(307)), texts(manager.searchPhraseQuery(Arrays.asList("odd", "beta", "alpha", "rare"))));
+    }
+
+    /**
+     * Lists longer than a block are intersected and phrase matched across blocks
+     */
+    @Test
+    public void test1() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new DeltaVarLenCompressor());
+        addDocuments(0, 400);
+        manager.flush();
+
+        assertEquals(400, manager.getDocumentFrequency(0, "common"));
+        assertQueries();
+    }
+
+    /**
+     * Block boundaries don't depend on the compressor
+     */
+    @Test
+    public void test2() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new NaiveCompressor());
+        addDocuments(0, 400);
+        manager.flush();
+
+        assertQueries();
+    }
+
+    /**
+     * Merged lists are split into blocks again, with positions of every document
+     */
+    @Test
+    public void test3() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new DeltaVarLenCompressor());
+        addDocuments(0, 250);
+        manager.flush();
+        addDocuments(250, 400);
+        manager.flush();
+        manager.mergeAllSegments();
+
+        assertEquals(1, manager.getNumSegments());
+        PositionalIndexSegmentForTest segment = manager.getIndexSegmentPositional(0);
+        List<Integer> even = new ArrayList<>();
+        for (int i = 0; i < 400; i += 2) {
+            even.add(i);
+        }
+        assertEquals(even, segment.getInvertedLists().get("even"));
+        assertEquals(Arrays.asList(2), segment.getPositions().get("alpha", 399));
+        assertEquals(Arrays.asList(3), segment.getPositions().get("alpha", 398));
+        assertQueries();
+    }
+
+    /**
+     * Deleted documents are dropped when merging lists of several blocks
+     */
+    @Test
+    public void test4() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new DeltaVarLenCompressor());
+        addDocuments(0, 400);
+        manager.flush();
+        addDocuments(400, 401);
+        manager.flush();
+        manager.deleteDocuments("rare");
+        manager.mergeAllSegments();
+
+        assertEquals(398, texts(manager.documentIterator()).size());
+        assertEquals(0, texts(manager.searchQuery("rare")).size());
+        assertEquals(201, texts(manager.searchAndQuery(Arrays.asList("common", "even"))).size());
+        assertEquals(134, texts(manager.searchPhraseQuery(Arrays.asList("alpha", "beta"))).size());
+        assertEquals(0, texts(manager.searchPhraseQuery(Arrays.asList("odd", "beta", "alpha", "rare"))).size());
+    }
+}
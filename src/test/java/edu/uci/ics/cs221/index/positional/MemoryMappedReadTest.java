@@ -0,0 +1,60 @@
+package edu.uci.ics.cs221.index.positional;
+
+import edu.uci.ics.cs221.index.inverted.IndexFixture;
+import edu.uci.ics.cs221.index.inverted.InvertedIndexManager;
+import edu.uci.ics.cs221.index.inverted.PageFileChannel;
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class MemoryMappedReadTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new DeltaVarLenCompressor());
+        // Long lists and position lists that cross page boundaries
+        for (int i = 0; i < 500; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < 20; j++) {
+                text.append(i % 2 == 0 ? "new york city " : "york new city ");
+            }
+            manager.addDocument(new Document(text.toString()));
+        }
+        manager.flush();
+    }
+
+    /**
+     * Queries on mapped files give the same results as reading pages
+     */
+    @Test
+    public void test1() {
+        int keyword = count(manager.searchQuery("city"));
+        int and = count(manager.searchAndQuery(Arrays.asList("new", "city")));
+        int phrase = count(manager.searchPhraseQuery(Arrays.asList("new", "york", "city")));
+        assertEquals(500, keyword);
+        assertEquals(500, and);
+        assertEquals(250, phrase);
+
+        manager.setMemoryMapped(true);
+        assertEquals(keyword, count(manager.searchQuery("city")));
+        assertEquals(and, count(manager.searchAndQuery(Arrays.asList("new", "city"))));
+        assertEquals(phrase, count(manager.searchPhraseQuery(Arrays.asList("new", "york", "city"))));
+        assertEquals(0, count(manager.searchPhraseQuery(Arrays.asList("city", "city", "city"))));
+        assertEquals(500, manager.getDocumentFrequency(0, "york"));
+    }
+
+    /**
+     * Mapped files are read without page reads
+     */
+    @Test
+    public void test2() {
+        manager.setMemoryMapped(true);
+        PageFileChannel.resetCounters();
+        assertEquals(250, count(manager.searchPhraseQuery(Arrays.asList("new", "york"))));
+        assertEquals(0, PageFileChannel.getReadCounter());
+        assertEquals(0, PageFileChannel.getMissCounter());
+    }
+}
@@ -0,0 +1,56 @@
+package edu.uci.ics.cs221.index.positional;
+
+import edu.uci.ics.cs221.index.inverted.IndexFixture;
+import edu.uci.ics.cs221.index.inverted.InvertedIndexManager;
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class PhraseCursorTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new DeltaVarLenCompressor());
+    }
+
+    /**
+     * Words repeated in the phrase are matched at each of their places
+     */
+    @Test
+    public void test1() {
+        manager.addDocument(new Document("a a a b"));
+        manager.addDocument(new Document("a b a a"));
+        manager.addDocument(new Document("to be or not to be"));
+        manager.addDocument(new Document("to be or to not be"));
+        manager.flush();
+
+        assertEquals(Arrays.asList("a a a b"), texts(manager.searchPhraseQuery(Arrays.asList("a", "a", "b"))));
+        assertEquals(Arrays.asList("a a a b", "a b a a"), texts(manager.searchPhraseQuery(Arrays.asList("a", "a"))));
+        assertEquals(Arrays.asList("to be or not to be"),
+                texts(manager.searchPhraseQuery(Arrays.asList("to", "be", "or", "not", "to", "be"))));
+        assertEquals(Arrays.asList("to be or not to be", "to be or to not be"),
+                texts(manager.searchPhraseQuery(Arrays.asList("to", "be", "or"))));
+    }
+
+    /**
+     * The phrase start moves past gaps in any word, also found late in long position lists
+     */
+    @Test
+    public void test2() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            text.append(i % 2 == 0 ? "x " : "y ");
+        }
+        manager.addDocument(new Document(text + "y x z"));
+        manager.addDocument(new Document(text.toString()));
+        manager.flush();
+
+        assertEquals(1, texts(manager.searchPhraseQuery(Arrays.asList("y", "x", "z"))).size());
+        assertEquals(2, texts(manager.searchPhraseQuery(Arrays.asList("x", "y", "x", "y"))).size());
+        assertEquals(1, texts(manager.searchPhraseQuery(Arrays.asList("y", "y"))).size());
+        assertEquals(0, texts(manager.searchPhraseQuery(Arrays.asList("x", "x"))).size());
+    }
+}
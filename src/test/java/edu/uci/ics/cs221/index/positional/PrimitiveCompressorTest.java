@@ -0,0 +1,51 @@
+package edu.uci.ics.cs221.index.positional;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PrimitiveCompressorTest {
+    private int[] integers = {0, 1, 127, 128, 300, 16384, 2097152, 268435456, Integer.MAX_VALUE};
+
+    /**
+     * Encoding from int[] gives the same bytes as encoding a list
+     */
+    @Test
+    public void test1() {
+        for (Compressor compressor : Arrays.asList(new DeltaVarLenCompressor(), new NaiveCompressor())) {
+            List<Integer> list = Arrays.asList(0, 1, 127, 128, 300, 16384, 2097152, 268435456, Integer.MAX_VALUE);
+            ByteBuffer buffer = ByteBuffer.allocate(compressor.maxEncodedLength(integers.length));
+            int length = compressor.encode(integers, integers.length, buffer);
+
+            byte[] expected = compressor.encode(list);
+            assertEquals(expected.length, length);
+            assertArrayEquals(expected, Arrays.copyOf(buffer.array(), length));
+        }
+    }
+
+    /**
+     * Decoding into a reused int list replaces its contents
+     */
+    @Test
+    public void test2() {
+        for (Compressor compressor : Arrays.asList(new DeltaVarLenCompressor(), new NaiveCompressor())) {
+            ByteBuffer buffer = ByteBuffer.allocate(compressor.maxEncodedLength(integers.length) + 2);
+            // Leading bytes that are not part of the list
+            buffer.put((byte) 7).put((byte) 7);
+            int length = compressor.encode(integers, integers.length, buffer);
+
+            IntList intList = new IntList();
+            intList.add(42);
+            compressor.decode(buffer.array(), 2, length, intList);
+            assertArrayEquals(integers, intList.toArray());
+
+            compressor.decode(buffer.array(), 2, 0, intList);
+            assertEquals(0, intList.size());
+        }
+    }
+}
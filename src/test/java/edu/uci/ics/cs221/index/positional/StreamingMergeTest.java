@@ -0,0 +1,127 @@
+package edu.uci.ics.cs221.index.positional;
+
+import edu.uci.ics.cs221.index.inverted.IndexFixture;
+import edu.uci.ics.cs221.index.inverted.InvertedIndexManager;
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingMergeTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new DeltaVarLenCompressor());
+    }
+
+    /**
+     * Words only in one segment, and words in both, keep their postings and positions
+     */
+    @Test
+    public void test1() {
+        manager.addDocument(new Document("apple banana apple"));
+        manager.addDocument(new Document("cherry"));
+        manager.flush();
+        manager.addDocument(new Document("banana date"));
+        manager.addDocument(new Document("apple apple elder"));
+        manager.flush();
+        manager.mergeAllSegments();
+
+        assertEquals(1, manager.getNumSegments());
+        PositionalIndexSegmentForTest segment = manager.getIndexSegmentPositional(0);
+        assertEquals(5, segment.getInvertedLists().size());
+        assertEquals(Arrays.asList(0, 3), segment.getInvertedLists().get("apple"));
+        assertEquals(Arrays.asList(0, 2), segment.getInvertedLists().get("banana"));
+        assertEquals(Arrays.asList(1), segment.getInvertedLists().get("cherry"));
+        assertEquals(Arrays.asList(2), segment.getInvertedLists().get("date"));
+        assertEquals(Arrays.asList(0, 2), segment.getPositions().get("apple", 0));
+        assertEquals(Arrays.asList(0, 1), segment.getPositions().get("apple", 3));
+        assertEquals(Arrays.asList(2), segment.getPositions().get("elder", 3));
+        assertEquals("banana date", segment.getDocuments().get(2).getText());
+        assertTrue(manager.searchPhraseQuery(Arrays.asList("apple", "elder")).hasNext());
+    }
+
+    /**
+     * Deleted documents are dropped with their postings, words left without documents too
+     */
+    @Test
+    public void test2() {
+        manager.addDocument(new Document("apple banana"));
+        manager.addDocument(new Document("apple"));
+        manager.flush();
+        manager.addDocument(new Document("banana cherry"));
+        manager.addDocument(new Document("cherry date"));
+        manager.flush();
+        manager.deleteDocuments("banana");
+        manager.mergeAllSegments();
+
+        PositionalIndexSegmentForTest segment = manager.getIndexSegmentPositional(0);
+        assertEquals(2, segment.getDocuments().size());
+        assertEquals(3, segment.getInvertedLists().size());
+        assertFalse(segment.getInvertedLists().containsKey("banana"));
+        assertEquals(Arrays.asList(0), segment.getInvertedLists().get("apple"));
+        assertEquals(Arrays.asList(1), segment.getInvertedLists().get("cherry"));
+        assertEquals(Arrays.asList(0), segment.getPositions().get("cherry", 1));
+        assertEquals(Arrays.asList(1), segment.getPositions().get("date", 1));
+    }
+
+    /**
+     * Many words spanning pages in several merge rounds
+     */
+    @Test
+    public void test3() {
+        for (int s = 0; s < 4; s++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 700; i++) {
+                text.append("w").append(i * 4 + s).append(" common ");
+            }
+            manager.addDocument(new Document(text.toString()));
+            manager.flush();
+        }
+        manager.mergeAllSegments();
+        manager.mergeAllSegments();
+
+        assertEquals(1, manager.getNumSegments());
+        assertEquals(4, manager.getDocumentFrequency(0, "common"));
+        for (int i = 0; i < 2800; i += 97) {
+            assertEquals(1, manager.getDocumentFrequency(0, "w" + i));
+        }
+        PositionalIndexSegmentForTest segment = manager.getIndexSegmentPositional(0);
+        assertEquals(2801, segment.getInvertedLists().size());
+        assertEquals(Arrays.asList(2 * 699), segment.getPositions().get("w" + (699 * 4 + 3), 3));
+    }
+
+    /**
+     * Copied position bytes crossing pages keep their lists, with any compressor
+     */
+    @Test
+    public void test4() {
+        manager.close();
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new NaiveCompressor());
+        StringBuilder left = new StringBuilder();
+        StringBuilder right = new StringBuilder();
+        for (int i = 0; i < 1500; i++) {
+            left.append("left both ");
+            right.append("right both ");
+        }
+        manager.addDocument(new Document(left.toString()));
+        manager.flush();
+        manager.addDocument(new Document("small"));
+        manager.addDocument(new Document(right.toString()));
+        manager.flush();
+        manager.mergeAllSegments();
+
+        PositionalIndexSegmentForTest segment = manager.getIndexSegmentPositional(0);
+        assertEquals(Arrays.asList(0, 2), segment.getInvertedLists().get("both"));
+        assertEquals(Arrays.asList(2), segment.getInvertedLists().get("right"));
+        assertEquals(1500, segment.getPositions().get("left", 0).size());
+        assertEquals(1500, segment.getPositions().get("right", 2).size());
+        assertEquals(Integer.valueOf(2999), segment.getPositions().get("both", 2).get(1499));
+        assertEquals(Arrays.asList(0), segment.getPositions().get("small", 1));
+        assertTrue(manager.searchPhraseQuery(Arrays.asList("right", "both", "right")).hasNext());
+    }
+}
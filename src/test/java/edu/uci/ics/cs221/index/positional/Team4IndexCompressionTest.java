@@ -61,13 +61,13 @@ public class Team4IndexCompressionTest {
         for(int i = 0; i < 4096; i++)
             this.naiveIndexManager.addDocument(doc1);
         this.naiveIndexManager.flush();
-        int naiveCount = PageFileChannel.writeCounter;
+        int naiveCount = PageFileChannel.getWriteCounter();
 
         PageFileChannel.resetCounters();
         for(int i = 0; i < 4096; i++)
             this.dvlIndexManager.addDocument(doc1);
         this.dvlIndexManager.flush();
-        int dvlCount = PageFileChannel.writeCounter;
+        int dvlCount = PageFileChannel.getWriteCounter();
 
         assertTrue(naiveCount/(double)dvlCount > 2);
     }
@@ -89,13 +89,13 @@ public class Team4IndexCompressionTest {
         PageFileChannel.resetCounters();
         this.naiveIndexManager.addDocument(doc2);
         this.naiveIndexManager.flush();
-        int naiveCount = PageFileChannel.writeCounter;
+        int naiveCount = PageFileChannel.getWriteCounter();
 
         // DeltaVarLen Compressor
         PageFileChannel.resetCounters();
         this.dvlIndexManager.addDocument(doc2);
         this.dvlIndexManager.flush();
-        int dvlCount = PageFileChannel.writeCounter;
+        int dvlCount = PageFileChannel.getWriteCounter();
 
         assertTrue(naiveCount/(double)dvlCount < 4);
         assertTrue(naiveCount/(double)dvlCount > 1.5);
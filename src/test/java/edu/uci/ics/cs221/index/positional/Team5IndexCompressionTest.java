@@ -50,16 +50,16 @@ public class Team5IndexCompressionTest {
   // mainly test inverted list since inverted list is long but positional list is short
   @Test
   public void Test1() {
-    Assert.assertEquals(0, PageFileChannel.readCounter);
-    Assert.assertEquals(0, PageFileChannel.writeCounter);
+    Assert.assertEquals(0, PageFileChannel.getReadCounter());
+    Assert.assertEquals(0, PageFileChannel.getWriteCounter());
     for (int i = 0; i < 10000; i++)
       positional_list_naive_compressor.addDocument(new Document("cat Dot"));
     positional_list_naive_compressor.flush();
     for (int i = 0; i < positional_list_naive_compressor.getNumSegments(); i++) {
       positional_list_naive_compressor.getIndexSegmentPositional(i);
     }
-    int naive_wc = PageFileChannel.writeCounter;
-    int naive_rc = PageFileChannel.readCounter;
+    int naive_wc = PageFileChannel.getWriteCounter();
+    int naive_rc = PageFileChannel.getReadCounter();
     PageFileChannel.resetCounters();
 
     for (int i = 0; i < 10000; i++) positional_list_compressor.addDocument(new Document("cat Dot"));
@@ -67,8 +67,8 @@ public class Team5IndexCompressionTest {
     for (int i = 0; i < positional_list_compressor.getNumSegments(); i++) {
       positional_list_compressor.getIndexSegmentPositional(i);
     }
-    int compress_wc = PageFileChannel.writeCounter;
-    int compress_rc = PageFileChannel.readCounter;
+    int compress_wc = PageFileChannel.getWriteCounter();
+    int compress_rc = PageFileChannel.getReadCounter();
 
     System.out.println();
 
@@ -87,8 +87,8 @@ public class Team5IndexCompressionTest {
   // mainly test inverted list since inverted list is long but positional list is short
   @Test
   public void Test2() {
-    Assert.assertEquals(0, PageFileChannel.readCounter);
-    Assert.assertEquals(0, PageFileChannel.writeCounter);
+    Assert.assertEquals(0, PageFileChannel.getReadCounter());
+    Assert.assertEquals(0, PageFileChannel.getWriteCounter());
 
     for (int i = 0; i < 3000; i++) {
       positional_list_naive_compressor.addDocument(
@@ -102,8 +102,8 @@ public class Team5IndexCompressionTest {
     for (int i = 0; i < positional_list_naive_compressor.getNumSegments(); i++) {
       positional_list_naive_compressor.getIndexSegmentPositional(i);
     }
-    int naive_wc = PageFileChannel.writeCounter;
-    int naive_rc = PageFileChannel.readCounter;
+    int naive_wc = PageFileChannel.getWriteCounter();
+    int naive_rc = PageFileChannel.getReadCounter();
     PageFileChannel.resetCounters();
 
     for (int i = 0; i < 3000; i++) {
@@ -116,8 +116,8 @@ public class Team5IndexCompressionTest {
     for (int i = 0; i < positional_list_compressor.getNumSegments(); i++) {
       positional_list_compressor.getIndexSegmentPositional(i);
     }
-    int compress_wc = PageFileChannel.writeCounter;
-    int compress_rc = PageFileChannel.readCounter;
+    int compress_wc = PageFileChannel.getWriteCounter();
+    int compress_rc = PageFileChannel.getReadCounter();
 
     System.out.println("\033[0;32m");
     System.out.println("Naive compress write: " + naive_wc + " pages");
@@ -135,8 +135,8 @@ public class Team5IndexCompressionTest {
   @Test
   public void Test3() {
 
-    Assert.assertEquals(0, PageFileChannel.readCounter);
-    Assert.assertEquals(0, PageFileChannel.writeCounter);
+    Assert.assertEquals(0, PageFileChannel.getReadCounter());
+    Assert.assertEquals(0, PageFileChannel.getWriteCounter());
     for (int i = 0; i < 3000; i++) {
       positional_list_naive_compressor.addDocument(
           new Document("cat" + " cat" + " cat" + " and dog" + " dog" + " dog"));
@@ -157,8 +157,8 @@ public class Team5IndexCompressionTest {
     for (int i = 0; i < positional_list_naive_compressor.getNumSegments(); i++) {
       positional_list_naive_compressor.getIndexSegmentPositional(i);
     }
-    int naive_wc = PageFileChannel.writeCounter;
-    int naive_rc = PageFileChannel.readCounter;
+    int naive_wc = PageFileChannel.getWriteCounter();
+    int naive_rc = PageFileChannel.getReadCounter();
     PageFileChannel.resetCounters();
 
     for (int i = 0; i < 3000; i++) {
@@ -181,8 +181,8 @@ public class Team5IndexCompressionTest {
     for (int i = 0; i < positional_list_compressor.getNumSegments(); i++) {
       positional_list_compressor.getIndexSegmentPositional(i);
     }
-    int compress_wc = PageFileChannel.writeCounter;
-    int compress_rc = PageFileChannel.readCounter;
+    int compress_wc = PageFileChannel.getWriteCounter();
+    int compress_rc = PageFileChannel.getReadCounter();
     Assert.assertTrue(
         "naive write counter > 1.5 delta compress write count  \n Actual  naive write: "
             + naive_wc
@@ -203,8 +203,8 @@ public class Team5IndexCompressionTest {
   // mainly test positional  list since inverted  since  positional list is long
   @Test
   public void Test4() {
-    Assert.assertEquals(0, PageFileChannel.readCounter);
-    Assert.assertEquals(0, PageFileChannel.writeCounter);
+    Assert.assertEquals(0, PageFileChannel.getReadCounter());
+    Assert.assertEquals(0, PageFileChannel.getWriteCounter());
     String doc1 = "cat Dot cat Dog I can not tell the difference between cat and Dog";
     String doc2 = "cat and dog have a lot of difference";
     String doc3 = "Dog can be very different from cat";
@@ -227,8 +227,8 @@ public class Team5IndexCompressionTest {
     for (int i = 0; i < positional_list_naive_compressor.getNumSegments(); i++) {
       positional_list_naive_compressor.getIndexSegmentPositional(i);
     }
-    int naive_wc = PageFileChannel.writeCounter;
-    int naive_rc = PageFileChannel.readCounter;
+    int naive_wc = PageFileChannel.getWriteCounter();
+    int naive_rc = PageFileChannel.getReadCounter();
     PageFileChannel.resetCounters();
 
     for (int i = 0; i < 30; i++) {
@@ -240,8 +240,8 @@ public class Team5IndexCompressionTest {
     for (int i = 0; i < positional_list_compressor.getNumSegments(); i++) {
       positional_list_compressor.getIndexSegmentPositional(i);
     }
-    int compress_wc = PageFileChannel.writeCounter;
-    int compress_rc = PageFileChannel.readCounter;
+    int compress_wc = PageFileChannel.getWriteCounter();
+    int compress_rc = PageFileChannel.getReadCounter();
 
     Assert.assertTrue(naive_wc > 1.5 * compress_wc);
     System.out.println("\033[0;32m");
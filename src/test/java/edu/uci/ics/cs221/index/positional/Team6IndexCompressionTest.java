@@ -81,14 +81,14 @@ public class Team6IndexCompressionTest {
         for(int i = 0; i<100; i++)
             nonCompressManager.addDocument(sampleDoc);
         nonCompressManager.flush();
-        nonCompressWriteCounter = PageFileChannel.writeCounter;
+        nonCompressWriteCounter = PageFileChannel.getWriteCounter();
         PageFileChannel.resetCounters();
 
         //Compress manager add documents
         for(int i = 0; i<100; i++)
             compressManager.addDocument(sampleDoc);
         compressManager.flush();
-        compressWriteCounter = PageFileChannel.writeCounter;
+        compressWriteCounter = PageFileChannel.getWriteCounter();
         PageFileChannel.resetCounters();
 
         //search for phase, test the differences between read counters
@@ -99,12 +99,12 @@ public class Team6IndexCompressionTest {
         //searching the keywords using two managers for multiple times
         for(int i = 0; i<10; i++)
             nonCompressManager.searchPhraseQuery(keywords);
-        nonCompressReadCounter = PageFileChannel.readCounter;
+        nonCompressReadCounter = PageFileChannel.getReadCounter();
         PageFileChannel.resetCounters();
 
         for(int i = 0; i<10; i++)
             compressManager.searchPhraseQuery(keywords);
-        compressReadCounter = PageFileChannel.readCounter;
+        compressReadCounter = PageFileChannel.getReadCounter();
         PageFileChannel.resetCounters();
 
         assertEquals(true, compressWriteCounter/nonCompressWriteCounter < (double)2/3);
@@ -121,13 +121,13 @@ public class Team6IndexCompressionTest {
     public void test2() {
         nonCompressManager.addDocument(emptyDoc);
         nonCompressManager.flush();
-        nonCompressWriteCounter = PageFileChannel.writeCounter;
+        nonCompressWriteCounter = PageFileChannel.getWriteCounter();
         PageFileChannel.resetCounters();
 
         //Compress manager add documents
         compressManager.addDocument(emptyDoc);
         compressManager.flush();
-        compressWriteCounter = PageFileChannel.writeCounter;
+        compressWriteCounter = PageFileChannel.getWriteCounter();
         PageFileChannel.resetCounters();
 
         assertEquals(true,compressWriteCounter == nonCompressWriteCounter);
@@ -53,7 +53,7 @@ public class Team8PositionalStressTest {
         for(int i=0;i<docNum;i++){
             invertedIndexManager.addDocument(new Document(textContent.get(i%textContent.size())));
         }
-        assertTrue(PageFileChannel.writeCounter>=docNum/invertedIndexManager.DEFAULT_FLUSH_THRESHOLD);
+        assertTrue(PageFileChannel.getWriteCounter()>=docNum/invertedIndexManager.DEFAULT_FLUSH_THRESHOLD);
 
 
         try {
@@ -0,0 +1,113 @@
+package edu.uci.ics.cs221.index.ranking;
+
+import edu.uci.ics.cs221.index.inverted.BM25Similarity;
+import edu.uci.ics.cs221.index.inverted.IndexFixture;
+import edu.uci.ics.cs221.index.inverted.InvertedIndexManager;
+import edu.uci.ics.cs221.index.inverted.Pair;
+import edu.uci.ics.cs221.index.inverted.TfIdfSimilarity;
+import edu.uci.ics.cs221.index.positional.DeltaVarLenCompressor;
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BM25SimilarityTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new DeltaVarLenCompressor());
+    }
+
+    private List<Pair<Document, Double>> search(List<String> keywords, Integer topK) {
+        List<Pair<Document, Double>> result = new ArrayList<>();
+        Iterator<Pair<Document, Double>> iterator = manager.searchTfIdf(keywords, topK);
+        while (iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    /**
+     * BM25 scores use document lengths from norms and the average length of the index
+     */
+    @Test
+    public void test1() {
+        manager.addDocument(new Document("cat dog"));
+        manager.addDocument(new Document("cat cat cat bird bird"));
+        manager.flush();
+        manager.addDocument(new Document("dog fish"));
+        manager.flush();
+        manager.setSimilarity(new BM25Similarity());
+
+        List<Pair<Document, Double>> result = search(Arrays.asList("cat"), null);
+        assertEquals(2, result.size());
+        // idf = ln(1 + (3 - 2 + 0.5) / (2 + 0.5)), average length is 3
+        double idf = Math.log(1.6);
+        assertEquals("cat cat cat bird bird", result.get(0).getLeft().getText());
+        assertEquals(idf * 2.2 * 3 / (3 + 1.2 * (0.25 + 0.75 * 5 / 3)), result.get(0).getRight(), 1e-9);
+        assertEquals("cat dog", result.get(1).getLeft().getText());
+        assertEquals(idf * 2.2 / (1 + 1.2 * (0.25 + 0.75 * 2 / 3)), result.get(1).getRight(), 1e-9);
+
+        // Terms repeated in the query count once per occurrence
+        List<Pair<Document, Double>> repeated = search(Arrays.asList("cat", "cat"), 1);
+        assertEquals(2 * result.get(0).getRight(), repeated.get(0).getRight(), 1e-9);
+    }
+
+    /**
+     * Top K documents under BM25 are the first K of the full ranking
+     */
+    @Test
+    public void test2() {
+        for (int i = 0; i < 500; i++) {
+            StringBuilder text = new StringBuilder("common");
+            for (int j = 0; j < i % 9; j++) {
+                text.append(" filler");
+            }
+            if (i % 4 == 0) {
+                text.append(" medium medium");
+            }
+            if (i % 61 == 3) {
+                text.append(" rare");
+            }
+            manager.addDocument(new Document(text.toString()));
+            if (i == 250) {
+                manager.flush();
+            }
+        }
+        manager.flush();
+        manager.setSimilarity(new BM25Similarity(0.9, 0.4));
+
+        List<String> keywords = Arrays.asList("common", "medium", "rare");
+        List<Pair<Document, Double>> all = search(keywords, null);
+        List<Pair<Document, Double>> top = search(keywords, 10);
+        assertEquals(500, all.size());
+        assertEquals(10, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(all.get(i).getRight(), top.get(i).getRight(), 0.0);
+        }
+    }
+
+    /**
+     * TF-IDF is the default similarity
+     */
+    @Test
+    public void test3() {
+        manager.addDocument(new Document("cat dog"));
+        manager.addDocument(new Document("cat cat bird"));
+        manager.flush();
+
+        List<Pair<Document, Double>> byDefault = search(Arrays.asList("cat", "bird"), null);
+        manager.setSimilarity(new BM25Similarity());
+        manager.setSimilarity(new TfIdfSimilarity());
+        List<Pair<Document, Double>> tfIdf = search(Arrays.asList("cat", "bird"), null);
+        assertEquals(byDefault.size(), tfIdf.size());
+        for (int i = 0; i < tfIdf.size(); i++) {
+            assertEquals(byDefault.get(i).getRight(), tfIdf.get(i).getRight(), 0.0);
+        }
+    }
+}
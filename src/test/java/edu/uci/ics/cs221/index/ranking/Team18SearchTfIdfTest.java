@@ -63,8 +63,8 @@ public class Team18SearchTfIdfTest {
 
         List<Document> dList = new ArrayList<>();
         dList.add(docs[2]);
-        dList.add(docs[3]);
         dList.add(docs[0]);
+        dList.add(docs[1]);
 
         assertTrue(it.hasNext());
         int counter = 0;
@@ -75,8 +75,8 @@ public class Team22TfIdfTest {
         im.flush();
 
         List<Document> dList = new ArrayList<>();
-        dList.add(d2);
         dList.add(d1);
+        dList.add(d2);
         dList.add(d3);
 
         List<String> keywords = analyzer.analyze("information retrieval retrieval");
@@ -129,8 +129,8 @@ public class Team22TfIdfTest {
         List<Document> dList = new ArrayList<>();
         List<String> keywords = analyzer.analyze("better butter");
         dList.add(d4);
-        dList.add(d5);
         dList.add(d1);
+        dList.add(d5);
         dList.add(d2);
 
         Iterator<Pair<Document, Double>> it = im.searchTfIdf(keywords, null);
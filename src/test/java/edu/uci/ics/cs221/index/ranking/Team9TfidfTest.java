@@ -120,7 +120,7 @@ public class Team9TfidfTest {
         List<String> expect = new ArrayList<>();
         List<String> resDoc = new ArrayList<>();
         expect.add("mollush animal sea snail clam mussel jellyfish shell mussel");
-        expect.add("homothermal animal human bear deer monkey rabbit panda cat dog penguin dolphin");
+        expect.add("lovely animal bear deer cat dog sheep rabbit panda penguin animal");
         while (res.hasNext()) {
             Pair<Document, Double> result = res.next();
             System.out.println(result);
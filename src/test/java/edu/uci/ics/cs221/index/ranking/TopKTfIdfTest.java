@@ -0,0 +1,111 @@
+package edu.uci.ics.cs221.index.ranking;
+
+import edu.uci.ics.cs221.index.inverted.IndexFixture;
+import edu.uci.ics.cs221.index.inverted.InvertedIndexManager;
+import edu.uci.ics.cs221.index.inverted.Pair;
+import edu.uci.ics.cs221.index.positional.DeltaVarLenCompressor;
+import edu.uci.ics.cs221.storage.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TopKTfIdfTest extends IndexFixture {
+    @Before
+    public void init() {
+        manager = InvertedIndexManager.createOrOpenPositional(path, analyzer, new DeltaVarLenCompressor());
+    }
+
+    private void addDocuments(int from, int to) {
+        for (int i = from; i < to; i++) {
+            StringBuilder text = new StringBuilder("common");
+            for (int j = 0; j < i % 7; j++) {
+                text.append(" common");
+            }
+            if (i % 5 == 0) {
+                text.append(" medium");
+            }
+            if (i % 97 == 5) {
+                text.append(" rare rare");
+            }
+            text.append(" filler").append(i % 11);
+            manager.addDocument(new Document(text.toString()));
+        }
+    }
+
+    private List<Pair<Document, Double>> search(List<String> keywords, Integer topK) {
+        List<Pair<Document, Double>> result = new ArrayList<>();
+        Iterator<Pair<Document, Double>> iterator = manager.searchTfIdf(keywords, topK);
+        while (iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    /**
+     * Top K scores are the first K scores of the full ranking
+     */
+    private void assertTopK(List<String> keywords, int topK) {
+        List<Pair<Document, Double>> all = search(keywords, null);
+        List<Pair<Document, Double>> top = search(keywords, topK);
+        assertEquals(Math.min(topK, all.size()), top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(all.get(i).getRight(), top.get(i).getRight(), 0.0);
+        }
+    }
+
+    /**
+     * Documents skipped for their bounds never belong in the top K
+     */
+    @Test
+    public void test1() {
+        addDocuments(0, 600);
+        manager.flush();
+
+        assertTopK(Arrays.asList("common", "rare", "medium"), 5);
+        assertTopK(Arrays.asList("common", "rare", "medium"), 10);
+        assertTopK(Arrays.asList("common", "medium"), 20);
+        assertTopK(Arrays.asList("common"), 3);
+        assertTopK(Arrays.asList("rare", "filler3"), 50);
+    }
+
+    /**
+     * The smallest score of the queue carries over to the next segments
+     */
+    @Test
+    public void test2() {
+        addDocuments(0, 300);
+        manager.flush();
+        addDocuments(300, 600);
+        manager.flush();
+
+        assertTopK(Arrays.asList("common", "rare", "medium"), 7);
+        List<Pair<Document, Double>> top = search(Arrays.asList("common", "rare"), 7);
+        for (Pair<Document, Double> pair : top) {
+            assertTrue(pair.getLeft().getText().contains("rare"));
+        }
+        assertEquals(0, search(Arrays.asList("common"), 0).size());
+    }
+
+    /**
+     * Deleted documents are neither returned nor raise the smallest score of the queue
+     */
+    @Test
+    public void test3() {
+        addDocuments(0, 600);
+        manager.flush();
+        manager.deleteDocuments("rare");
+
+        assertTopK(Arrays.asList("common", "rare", "medium"), 10);
+        for (Pair<Document, Double> pair : search(Arrays.asList("common", "rare", "medium"), 10)) {
+            assertFalse(pair.getLeft().getText().contains("rare"));
+        }
+    }
+}